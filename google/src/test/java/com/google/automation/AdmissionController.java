@@ -0,0 +1,293 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds back new local browser sessions while the machine is short of memory or CPU
+ *
+ * Before a session starts, the controller checks that the expected footprint of one more browser fits
+ * under the memory target and that CPU utilisation is below the CPU target. The footprint is learned from
+ * the proportional set size (Pss, falling back to VmRSS) of the live sessions' process trees in /proc,
+ * so shared Chrome pages are not counted once per process. When a session cannot start, the caller waits
+ * and the time is reported in the waiting test's admissionWaitMs and the suite's admissionWaitTotalMs.
+ * One session is always admitted when none are running.
+ * Outside Linux only the session cap applies.
+ *
+ * Options:
+ *   -Dadmission.enabled=false        admit every session immediately
+ *   -Dadmission.memoryTarget=0.85    highest fraction of total memory in use after admitting a browser
+ *   -Dadmission.cpuTarget=0.90       highest CPU utilisation at which a browser may start
+ *   -Dadmission.maxSessions=n        hard cap on concurrent local sessions (default 2 x cores)
+ *   -Dadmission.browserMb=500        footprint assumed until one has been measured
+ *   -Dadmission.maxWait=seconds      admit anyway after waiting this long (default 300), so idle pooled
+ *                                    sessions cannot starve a caller forever
+ */
+public final class AdmissionController {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+    private static final AdmissionController INSTANCE = new AdmissionController();
+    private static final long POLL_MILLIS = 250;
+    private static final long MEASURE_INTERVAL_MILLIS = 2000;
+
+    private final Set<WebDriver> sessions = ConcurrentHashMap.newKeySet();
+    private final boolean procAvailable = Files.isReadable(Paths.get("/proc/meminfo"));
+    private int active;
+    private int starting;
+    private long browserBytes = Long.getLong("admission.browserMb", 500) * 1024 * 1024;
+    private long lastMeasured;
+    private long[] lastCpuTimes;
+    private double cpuUtilisation;
+
+    private long admitted;
+    private long delayed;
+    private long waitMillis;
+    private int peakActive;
+    private long concurrencyIntegral;
+    private long firstChange;
+    private long lastChange;
+
+    private AdmissionController() {
+    }
+
+    public static AdmissionController shared() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("admission.enabled"));
+    }
+
+    /**
+     * Block until another session may start; every call must be followed by started() or abandoned()
+     */
+    public void admit() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        boolean waited = false;
+        long deadline = start + Long.getLong("admission.maxWait", 300) * 1000;
+        synchronized (this) {
+            while (!canStart()) {
+                if (System.currentTimeMillis() >= deadline) {
+                    logger.warn("Admitting browser after waiting " + (System.currentTimeMillis() - start) + "ms");
+                    break;
+                }
+                if (!waited) {
+                    waited = true;
+                    logger.info(String.format("Holding new browser: %d running, %d starting, ~%d MB each, CPU %.0f%%",
+                        active, starting, browserBytes / (1024 * 1024), cpuUtilisation * 100));
+                }
+                wait(POLL_MILLIS);
+            }
+            starting++;
+            long millis = System.currentTimeMillis() - start;
+            if (waited) {
+                delayed++;
+                waitMillis += millis;
+                TestMetrics.add("admissionWaitMs", millis);
+            }
+        }
+    }
+
+    /**
+     * Count a session that started after admit()
+     */
+    public synchronized void started(WebDriver driver) {
+        starting--;
+        if (admitted == 0) {
+            firstChange = System.currentTimeMillis();
+            lastChange = firstChange;
+        }
+        recordConcurrency();
+        active++;
+        admitted++;
+        peakActive = Math.max(peakActive, active);
+        sessions.add(driver);
+    }
+
+    /**
+     * Give back an admission whose session failed to start
+     */
+    public synchronized void abandoned() {
+        starting--;
+        notifyAll();
+    }
+
+    /**
+     * Count a session that has quit
+     */
+    public synchronized void finished(WebDriver driver) {
+        if (sessions.remove(driver)) {
+            recordConcurrency();
+            active--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Start counting a new run; running sessions and the learned browser footprint are kept
+     */
+    public synchronized void reset() {
+        admitted = 0;
+        delayed = 0;
+        waitMillis = 0;
+        peakActive = active;
+        concurrencyIntegral = 0;
+        firstChange = System.currentTimeMillis();
+        lastChange = firstChange;
+    }
+
+    /**
+     * Report admissions, waits and the concurrency actually reached
+     */
+    public synchronized Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        if (admitted == 0) {
+            return stats;
+        }
+        recordConcurrency();
+        long elapsed = Math.max(1, lastChange - firstChange);
+        logger.info(String.format("Admission control: %d sessions, peak %d concurrent, mean %.2f concurrent, "
+                + "%d held for %d ms in total, ~%d MB per browser",
+            admitted, peakActive, (double) concurrencyIntegral / elapsed, delayed, waitMillis,
+            browserBytes / (1024 * 1024)));
+        stats.put("admissionSessions", admitted);
+        stats.put("admissionPeakConcurrency", (long) peakActive);
+        stats.put("admissionDelayed", delayed);
+        stats.put("admissionWaitTotalMs", waitMillis);
+        return stats;
+    }
+
+    private void recordConcurrency() {
+        long now = System.currentTimeMillis();
+        concurrencyIntegral += active * (now - lastChange);
+        lastChange = now;
+    }
+
+    private boolean canStart() {
+        if (!isEnabled()) {
+            return true;
+        }
+        int running = active + starting;
+        if (running == 0) {
+            return true;
+        }
+        int maxSessions = Integer.getInteger("admission.maxSessions", 2 * Runtime.getRuntime().availableProcessors());
+        if (running >= maxSessions) {
+            return false;
+        }
+        if (!procAvailable) {
+            return true;
+        }
+        measure();
+
+        Map<String, Long> memory = readMeminfo();
+        long total = memory.getOrDefault("MemTotal", 0L);
+        long available = memory.getOrDefault("MemAvailable", 0L);
+        double memoryTarget = Double.parseDouble(System.getProperty("admission.memoryTarget", "0.85"));
+        // Starting sessions have not allocated their memory yet
+        long expectedUsed = total - available + (long) (starting + 1) * browserBytes;
+        if (total > 0 && expectedUsed > memoryTarget * total) {
+            return false;
+        }
+        double cpuTarget = Double.parseDouble(System.getProperty("admission.cpuTarget", "0.90"));
+        return cpuUtilisation <= cpuTarget;
+    }
+
+    /**
+     * Refresh the per-browser footprint and CPU utilisation, at most every couple of seconds
+     */
+    private void measure() {
+        long now = System.currentTimeMillis();
+        if (now - lastMeasured < MEASURE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastMeasured = now;
+
+        long[] cpuTimes = readCpuTimes();
+        if (cpuTimes != null && lastCpuTimes != null) {
+            long total = cpuTimes[0] - lastCpuTimes[0];
+            long idle = cpuTimes[1] - lastCpuTimes[1];
+            cpuUtilisation = total > 0 ? (double) (total - idle) / total : 0;
+        }
+        lastCpuTimes = cpuTimes;
+
+        long measuredBytes = 0;
+        int measuredSessions = 0;
+        for (WebDriver driver : sessions) {
+            List<ProcessHandle> processes = ProcessWatchdog.shared().processes(driver);
+            if (!processes.isEmpty()) {
+                measuredBytes += processes.stream().mapToLong(AdmissionController::memoryBytes).sum();
+                measuredSessions++;
+            }
+        }
+        if (measuredSessions > 0) {
+            // Lean towards the larger value so a growing browser is not underestimated
+            long mean = measuredBytes / measuredSessions;
+            browserBytes = Math.max(mean, (browserBytes + mean) / 2);
+        }
+    }
+
+    private static Map<String, Long> readMeminfo() {
+        Map<String, Long> values = new TreeMap<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/meminfo"))) {
+                String[] parts = line.split("\\s+");
+                if (parts.length >= 2) {
+                    values.put(parts[0].replace(":", ""), Long.parseLong(parts[1]) * 1024);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Cannot read /proc/meminfo: " + e.getMessage());
+        }
+        return values;
+    }
+
+    /**
+     * Read total and idle (idle + iowait) jiffies from /proc/stat
+     */
+    private static long[] readCpuTimes() {
+        try {
+            String[] fields = Files.readAllLines(Paths.get("/proc/stat")).get(0).trim().split("\\s+");
+            long total = 0;
+            for (int i = 1; i < fields.length; i++) {
+                total += Long.parseLong(fields[i]);
+            }
+            long idle = Long.parseLong(fields[4]) + (fields.length > 5 ? Long.parseLong(fields[5]) : 0);
+            return new long[]{total, idle};
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get a process's proportional memory, falling back to its resident set size
+     */
+    static long memoryBytes(ProcessHandle process) {
+        Path proc = Paths.get("/proc", String.valueOf(process.pid()));
+        long pss = readKilobytes(proc.resolve("smaps_rollup"), "Pss:");
+        return (pss >= 0 ? pss : Math.max(0, readKilobytes(proc.resolve("status"), "VmRSS:"))) * 1024;
+    }
+
+    private static long readKilobytes(Path file, String field) {
+        try {
+            for (String line : Files.readAllLines(file)) {
+                if (line.startsWith(field)) {
+                    return Long.parseLong(line.substring(field.length()).trim().split("\\s+")[0]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // process exited or file not available
+        }
+        return -1;
+    }
+}
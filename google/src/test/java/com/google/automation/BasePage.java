@@ -0,0 +1,192 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.support.ui.WebDriverWait;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Base class for page objects
+ * Caches element references so repeated interactions do not repeat the driver lookup.
+ * The cache is cleared whenever the page navigates and an entry is dropped when it goes stale.
+ *
+ * Sessions run with a zero implicit wait. Every wait uses the timeout WaitPolicy learned for the
+ * condition on the page's site, with the page timeout as the upper bound. Element waits are pushed
+ * from the page by ElementWaits instead of polling.
+ */
+public abstract class BasePage {
+    private static final Logger logger = LoggerFactory.getLogger(BasePage.class);
+    protected static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    protected final WebDriver driver;
+    protected final Duration timeout;
+    // Host the page belongs to; wait history is kept per site
+    protected final String site;
+    private final Map<By, WebElement> elementCache = new HashMap<>();
+
+    protected BasePage(WebDriver driver, Duration timeout, String site) {
+        this.driver = driver;
+        this.timeout = timeout;
+        this.site = site;
+    }
+
+    /**
+     * Get the host of a URL, without the port, so a local server on a new port each run keeps its history
+     */
+    protected static String siteOf(String url) {
+        String host = URI.create(url).getHost();
+        return host != null ? host : url;
+    }
+
+    /**
+     * Get the page title
+     */
+    public String getTitle() {
+        return driver.getTitle();
+    }
+
+    /**
+     * Get the current URL
+     */
+    public String getCurrentUrl() {
+        return driver.getCurrentUrl();
+    }
+
+    /**
+     * Start a batch of read probes evaluated in a single round-trip
+     */
+    public ProbeBatch probe() {
+        return new ProbeBatch(driver);
+    }
+
+    /**
+     * Wait until the current URL contains the given text
+     */
+    public void waitForUrlContains(String fragment) {
+        await("url contains " + fragment, ExpectedConditions.urlContains(fragment));
+    }
+
+    /**
+     * Wait for a condition using the timeout learned for it
+     * Time spent in waits that expire is reported as the waitTimeoutMs metric, and waits that needed more
+     * than their learned timeout as waitExtensions
+     */
+    protected <T> T await(String name, Function<WebDriver, T> condition) {
+        return timedWait(name, limit -> new WebDriverWait(driver, limit).until(condition));
+    }
+
+    /**
+     * Run a wait with the learned timeout and record how long it took
+     * A wait that outlasts a learned timeout below the page timeout goes on up to the page timeout, so a
+     * timeout learned too short costs time instead of failing the test, and the longer wait is recorded.
+     */
+    private <T> T timedWait(String name, Function<Duration, T> wait) {
+        WaitPolicy policy = WaitPolicy.shared();
+        Duration limit = policy.timeoutFor(site, name, timeout);
+        long start = System.nanoTime();
+        try {
+            T result;
+            try {
+                result = wait.apply(limit);
+            } catch (TimeoutException e) {
+                Duration remaining = timeout.minusNanos(System.nanoTime() - start);
+                if (limit.compareTo(timeout) >= 0 || remaining.isNegative() || remaining.isZero()) {
+                    throw e;
+                }
+                TestMetrics.increment(TestMetrics.WAIT_EXTENSIONS);
+                logger.info("Wait for " + name + " outlasted its learned " + limit.toMillis()
+                    + "ms, waiting up to " + timeout.toMillis() + "ms");
+                result = wait.apply(remaining);
+            }
+            policy.record(site, name, (System.nanoTime() - start) / 1_000_000);
+            return result;
+        } catch (TimeoutException e) {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            // Censored at the page timeout: the condition takes at least this long, or never holds
+            policy.record(site, name, millis);
+            TestMetrics.increment(TestMetrics.WAIT_TIMEOUTS);
+            TestMetrics.add(TestMetrics.WAIT_TIMEOUT_MS, millis);
+            logger.info("Wait for " + name + " timed out after " + millis + "ms (limit " + timeout.toMillis() + "ms)");
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for an element to be present, reusing the cached reference if there is one
+     */
+    public WebElement waitForElement(By locator) {
+        WebElement cached = elementCache.get(locator);
+        if (cached != null) {
+            TestMetrics.increment(TestMetrics.ELEMENT_CACHE_HITS);
+            return cached;
+        }
+
+        WebElement element = timedWait(locator.toString(), limit -> ElementWaits.presence(driver, locator, limit));
+        elementCache.put(locator, element);
+        return element;
+    }
+
+    /**
+     * Look up an element that may legitimately be absent
+     * A single lookup with no waiting; returns null instead of throwing when nothing matches
+     */
+    public WebElement findIfPresent(By locator) {
+        WebElement cached = elementCache.get(locator);
+        if (cached != null) {
+            TestMetrics.increment(TestMetrics.ELEMENT_CACHE_HITS);
+            return cached;
+        }
+
+        TestMetrics.increment(TestMetrics.ELEMENT_LOOKUPS);
+        List<WebElement> matches = driver.findElements(locator);
+        if (matches.isEmpty()) {
+            return null;
+        }
+        elementCache.put(locator, matches.get(0));
+        return matches.get(0);
+    }
+
+    /**
+     * Run an action against a cached element, looking it up again once if the reference went stale
+     */
+    protected <T> T withElement(By locator, Function<WebElement, T> action) {
+        try {
+            return action.apply(waitForElement(locator));
+        } catch (StaleElementReferenceException e) {
+            logger.info("Cached element went stale, looking it up again: " + locator);
+            elementCache.remove(locator);
+            return action.apply(waitForElement(locator));
+        }
+    }
+
+    /**
+     * Run a void action against a cached element
+     */
+    protected void onElement(By locator, Consumer<WebElement> action) {
+        withElement(locator, element -> {
+            action.accept(element);
+            return null;
+        });
+    }
+
+    /**
+     * Drop all cached element references
+     * Must be called by every page method that causes a navigation
+     */
+    protected void invalidateCache() {
+        elementCache.clear();
+    }
+}
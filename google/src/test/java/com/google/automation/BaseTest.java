@@ -1,52 +1,260 @@
 package com.google.automation;
 
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import io.github.bonigarcia.wdm.WebDriverManager;
+import org.openqa.selenium.WebDriverException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.IHookCallBack;
+import org.testng.IHookable;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+import org.testng.annotations.AfterSuite;
+import org.testng.internal.thread.ThreadTimeoutException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Base class for UI tests providing common WebDriver setup and teardown
+ *
+ * The driver tier is chosen per test from @DriverTier or the "light" group. A light test that uses
+ * something the light driver does not support is rerun once on a full browser. Full-browser sessions are
+ * sampled by BrowserHealth after each test.
+ *
+ * Options:
+ *   -Dsession.reuse=true            keep full-browser sessions between tests; BrowserHealth retires sessions
+ *                                   that have grown past its thresholds
+ *   -Dsession.reuse.max=n           most sessions kept for reuse (default 2 x cores)
+ *   -Dsession.tabs=true             run full-browser tests in tabs of shared browsers, see TabMultiplexer
+ *   -Dsession.keep=true             keep reused sessions and shared browsers open after the suite, for the
+ *                                   next run in the same JVM (set by RunnerDaemon)
+ *   -Dcommands.mode=record|replay   record each test's WebDriver commands, or replay them without a browser,
+ *                                   see CommandLog
+ *   -Demulation.profile=name        throttle network and CPU of each session, see EmulationProfile
  */
-public class BaseTest {
+public class BaseTest implements IHookable {
     private static final Logger logger = LoggerFactory.getLogger(BaseTest.class);
     protected WebDriver driver;
+    private static DriverPool reusedSessions;
+    private DriverTier.Level tier = DriverTier.Level.FULL;
+    private boolean reused;
+    private boolean tabbed;
+    private String testName;
+    private EmulationProfile emulation;
 
     /**
-     * Setup WebDriver before each test
+     * Setup WebDriver before each test, on the tier the test method asks for
      */
-    public void setUp() {
+    public void setUp(ITestResult result, Object[] parameters) {
+        Method method = result.getMethod().getConstructorOrMethod().getMethod();
+        // With the parameters, as in BrowserStackBaseTest, so data provider rows do not share a recording
+        testName = CommandLog.testName(result.getMethod(), parameters);
+        emulation = EmulationProfile.current();
+        // Commands are recorded from a full browser, replays need no browser at all, and only Chrome can be throttled
+        tier = CommandLog.isEnabled() || emulation.isThrottled() ? DriverTier.Level.FULL : DriverTiers.tierOf(method);
+        startDriver();
+    }
+
+    /**
+     * Called whenever a new driver is in place; subclasses create their page objects here
+     */
+    protected void driverStarted() {
+    }
+
+    private static boolean isSessionReuse() {
+        return Boolean.getBoolean("session.reuse");
+    }
+
+    private static synchronized DriverPool reusedSessions() {
+        if (reusedSessions == null) {
+            reusedSessions = new DriverPool(Integer.getInteger("session.reuse.max", 2 * Runtime.getRuntime().availableProcessors()),
+                () -> DriverTiers.shared().start(DriverTier.Level.FULL));
+        }
+        return reusedSessions;
+    }
+
+    private void startDriver() {
         try {
-            // Use WebDriverManager to automatically download the correct ChromeDriver
-            WebDriverManager.chromedriver().setup();
-            ChromeOptions options = new ChromeOptions();
-            // Disable notifications and other popups
-            options.addArguments("--no-first-run");
-            options.addArguments("--no-default-browser-check");
-            options.addArguments("--disable-blink-features=AutomationControlled");
-            options.setExperimentalOption("excludeSwitches", new String[]{"enable-logging"});
-            options.setExperimentalOption("useAutomationExtension", false);
-            
-            driver = new ChromeDriver(options);
-            driver.manage().window().maximize();
-            driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
-            logger.info("WebDriver initialized successfully");
+            // Recorded and throttled tests get a browser of their own
+            boolean dedicated = CommandLog.isEnabled() || emulation.isThrottled();
+            tabbed = tier == DriverTier.Level.FULL && !dedicated && TabMultiplexer.isEnabled();
+            reused = tier == DriverTier.Level.FULL && !dedicated && !tabbed && isSessionReuse();
+            if (CommandLog.isReplaying()) {
+                driver = new ReplayWebDriver(CommandLog.file(testName));
+            } else if (tabbed) {
+                driver = TabMultiplexer.shared().openTab();
+            } else {
+                driver = reused ? reusedSessions().borrow() : DriverTiers.shared().start(tier);
+            }
+            if (CommandLog.isRecording()) {
+                CommandLog.record(driver, testName);
+            }
+            if (!CommandLog.isReplaying()) {
+                emulation.apply(driver);
+            }
+            logger.info("WebDriver initialized successfully (" + tier + " tier)");
         } catch (Exception e) {
             logger.error("Failed to initialize WebDriver", e);
             throw new RuntimeException("WebDriver initialization failed", e);
         }
+        driverStarted();
+    }
+
+    /**
+     * Run the test, falling back to a full browser when the light tier cannot run it
+     * The light attempt is invoked directly, because TestNG keeps the failure of a callback run
+     * even when a second run passes. It runs under the test's timeOut, and its exception is left on
+     * the result for TestNG to check against expectedExceptions.
+     */
+    @Override
+    public void run(IHookCallBack callBack, ITestResult testResult) {
+        if (tier != DriverTier.Level.LIGHT) {
+            callBack.runTestMethod(testResult);
+            BrowserHealth.shared().afterTest(driver, testResult);
+            return;
+        }
+        Method method = testResult.getMethod().getConstructorOrMethod().getMethod();
+        Throwable thrown;
+        try {
+            thrown = invokeLight(method, callBack.getParameters(), testResult.getMethod().getTimeOut());
+        } catch (InterruptedException e) {
+            // TestNG interrupts this hook when the test's timeOut is up, and reports the timeout itself
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (thrown == null) {
+            return;
+        }
+        if (!DriverTiers.isUnsupported(thrown)) {
+            // Marked failed as TestNG marks a callback run; TestNG then passes the test if the exception was expected
+            testResult.setThrowable(thrown);
+            testResult.setStatus(ITestResult.FAILURE);
+            return;
+        }
+        logger.info("Light tier cannot run " + method.getName() + " (" + thrown + "), rerunning on a full browser");
+        DriverTiers.shared().fellBack();
+        tearDown();
+        tier = DriverTier.Level.FULL;
+        startDriver();
+        callBack.runTestMethod(testResult);
+        BrowserHealth.shared().afterTest(driver, testResult);
+    }
+
+    /**
+     * Invoke the test body on the light tier and return what it threw, or null when it passed
+     * With a timeOut the body runs in a thread of its own, which is interrupted when the time is up.
+     */
+    private Throwable invokeLight(Method method, Object[] parameters, long timeOut) throws InterruptedException {
+        if (timeOut <= 0) {
+            return invokeBody(method, parameters);
+        }
+        ITestResult current = Reporter.getCurrentTestResult();
+        FutureTask<Throwable> body = new FutureTask<>(() -> {
+            Reporter.setCurrentTestResult(current);
+            return invokeBody(method, parameters);
+        });
+        Thread thread = new Thread(body, "light-tier-" + method.getName());
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            return body.get(timeOut, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return new ThreadTimeoutException("Method " + method.getDeclaringClass().getName() + "." + method.getName()
+                + "() didn't finish within the time-out " + timeOut);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Test invocation failed", e.getCause());
+        } finally {
+            body.cancel(true);
+        }
+    }
+
+    private Throwable invokeBody(Method method, Object[] parameters) {
+        try {
+            method.invoke(this, parameters);
+            return null;
+        } catch (InvocationTargetException e) {
+            return e.getCause();
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Test invocation failed", e);
+        }
     }
 
     /**
      * Quit WebDriver after each test
      */
     public void tearDown() {
-        if (driver != null) {
+        if (driver != null && CommandLog.isReplaying()) {
             driver.quit();
-            logger.info("WebDriver closed successfully");
+            driver = null;
+        } else if (driver != null && tabbed) {
+            // Closes the tab, the shared browser stays up
+            driver.quit();
+            driver = null;
+        } else if (driver != null && reused) {
+            releaseReusedSession();
+        } else if (driver != null) {
+            if (DriverTiers.shared().quit(tier, driver)) {
+                logger.info("WebDriver closed successfully");
+            } else {
+                logger.warn("WebDriver did not quit cleanly, browser processes were killed");
+            }
+            driver = null;
+        }
+    }
+
+    /**
+     * Give a reused session back for the next test, or replace it if the browser is gone
+     */
+    private void releaseReusedSession() {
+        try {
+            driver.getWindowHandle();
+            reusedSessions().release(driver);
+        } catch (WebDriverException e) {
+            logger.warn("Reused session is no longer usable, replacing it", e);
+            reusedSessions().invalidate(driver);
+        }
+        driver = null;
+    }
+
+    /**
+     * Start sessions for reuse ahead of the first test
+     */
+    static void warmUp(int sessions) throws InterruptedException {
+        List<WebDriver> started = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            started.add(reusedSessions().borrow());
+        }
+        for (WebDriver session : started) {
+            reusedSessions().release(session);
+        }
+    }
+
+    /**
+     * Quit the sessions kept for reuse and the browsers shared by tabs, unless they are kept for the next run
+     */
+    @AfterSuite(alwaysRun = true)
+    public void closeReusedSessions() {
+        if (!Boolean.getBoolean("session.keep")) {
+            closeSessions();
+        }
+    }
+
+    /**
+     * Quit the sessions kept for reuse and the browsers shared by tabs
+     */
+    static void closeSessions() {
+        synchronized (BaseTest.class) {
+            if (reusedSessions != null) {
+                reusedSessions.close();
+                reusedSessions = null;
+            }
         }
+        TabMultiplexer.shared().close();
     }
 }
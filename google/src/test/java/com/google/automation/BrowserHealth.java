@@ -0,0 +1,239 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chromium.HasCdp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Samples Chrome's own performance counters after each test and retires sessions that have grown too large
+ *
+ * After a test, Performance.getMetrics is read through CDP and the JS heap, DOM node count, layout count
+ * and script time are attached to the test result. Samples are kept per session, so when a session is
+ * reused (DriverPool, -Dsession.reuse=true) the growth from one test to the next shows up as a trend in the
+ * suite summary. A reused session whose heap or node count crosses a threshold is quit instead of being
+ * handed to the next test. Sessions without CDP (remote, HtmlUnit) are not sampled.
+ *
+ * Options:
+ *   -Dhealth.enabled=false          do not sample
+ *   -Dhealth.maxHeapMb=256          retire a reused session above this JS heap size
+ *   -Dhealth.maxNodes=20000         retire a reused session above this DOM node count
+ */
+public final class BrowserHealth {
+    private static final Logger logger = LoggerFactory.getLogger(BrowserHealth.class);
+    private static final BrowserHealth INSTANCE = new BrowserHealth();
+    public static final String ATTRIBUTE = "browserHealth";
+    public static final String HEAP_KB = "heapUsedKb";
+    public static final String NODES = "domNodes";
+    public static final String LAYOUTS = "layoutCount";
+    public static final String SCRIPT_MS = "scriptMs";
+
+    // Sessions are weak keys, so state goes away with the driver
+    private final Map<WebDriver, Session> sessions = new WeakHashMap<>();
+    private Trend heapTrend = new Trend();
+    private Trend nodeTrend = new Trend();
+    private long samples;
+    private long peakHeapKb;
+    private long peakNodes;
+    private long retired;
+
+    /**
+     * Samples of one session
+     */
+    private static class Session {
+        private int tests;
+        private Map<String, Long> last = Collections.emptyMap();
+        private Fit heap = new Fit();
+        private Fit nodes = new Fit();
+    }
+
+    /**
+     * Sums for a least-squares fit of a counter against the number of tests one session has run
+     */
+    private static class Fit {
+        private long n;
+        private double sumX;
+        private double sumY;
+        private double sumXY;
+        private double sumXX;
+
+        void add(long x, long y) {
+            n++;
+            sumX += x;
+            sumY += y;
+            sumXY += (double) x * y;
+            sumXX += (double) x * x;
+        }
+
+        // Sums of products of deviations from this session's own means
+        double sxy() {
+            return n == 0 ? 0 : sumXY - sumX * sumY / n;
+        }
+
+        double sxx() {
+            return n == 0 ? 0 : sumXX - sumX * sumX / n;
+        }
+    }
+
+    /**
+     * Growth per test pooled over sessions, each fitted around its own means
+     * Sessions start from different baselines, so one line through every sample would read the gap between
+     * fresh and long-reused sessions as growth. A session that ran a single test adds nothing.
+     */
+    private static class Trend {
+        private double sxy;
+        private double sxx;
+
+        void add(Fit fit, long x, long y) {
+            sxy -= fit.sxy();
+            sxx -= fit.sxx();
+            fit.add(x, y);
+            sxy += fit.sxy();
+            sxx += fit.sxx();
+        }
+
+        long slope() {
+            return sxx < 1e-9 ? 0 : Math.round(sxy / sxx);
+        }
+    }
+
+    private BrowserHealth() {
+    }
+
+    public static BrowserHealth shared() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("health.enabled"));
+    }
+
+    /**
+     * Sample a session at the end of a test and attach the values to the test's result
+     * Returns the sample, empty if the session cannot be sampled.
+     */
+    public Map<String, Long> afterTest(WebDriver driver, ITestResult result) {
+        if (!isEnabled() || !(driver instanceof HasCdp)) {
+            return Collections.emptyMap();
+        }
+        Session session;
+        synchronized (this) {
+            session = sessions.computeIfAbsent(driver, d -> new Session());
+        }
+        Map<String, Long> sample;
+        try {
+            boolean first = session.tests == 0;
+            sample = CommandLog.passive(() -> sample((HasCdp) driver, first));
+        } catch (RuntimeException e) {
+            logger.debug("Cannot read browser metrics: " + e.getMessage());
+            return Collections.emptyMap();
+        }
+        synchronized (this) {
+            session.tests++;
+            session.last = sample;
+            samples++;
+            heapTrend.add(session.heap, session.tests, sample.get(HEAP_KB));
+            nodeTrend.add(session.nodes, session.tests, sample.get(NODES));
+            peakHeapKb = Math.max(peakHeapKb, sample.get(HEAP_KB));
+            peakNodes = Math.max(peakNodes, sample.get(NODES));
+        }
+        if (result != null) {
+            result.setAttribute(ATTRIBUTE, sample);
+        }
+        return sample;
+    }
+
+    /**
+     * Decide whether a session should be quit rather than reused
+     * Returns the reason, or null if the session's last sample is within the thresholds.
+     */
+    public String retireReason(WebDriver driver) {
+        Map<String, Long> last;
+        int tests;
+        synchronized (this) {
+            Session session = sessions.get(driver);
+            if (session == null) {
+                return null;
+            }
+            last = session.last;
+            tests = session.tests;
+        }
+        String reason = null;
+        long maxHeapKb = Long.getLong("health.maxHeapMb", 256) * 1024;
+        long maxNodes = Long.getLong("health.maxNodes", 20000);
+        if (last.getOrDefault(HEAP_KB, 0L) > maxHeapKb) {
+            reason = "JS heap " + last.get(HEAP_KB) / 1024 + " MB after " + tests + " tests";
+        } else if (last.getOrDefault(NODES, 0L) > maxNodes) {
+            reason = last.get(NODES) + " DOM nodes after " + tests + " tests";
+        }
+        if (reason != null) {
+            synchronized (this) {
+                retired++;
+            }
+        }
+        return reason;
+    }
+
+    /**
+     * Start counting a new run; the sessions' own histories are kept for retiring them
+     */
+    public synchronized void reset() {
+        heapTrend = new Trend();
+        nodeTrend = new Trend();
+        for (Session session : sessions.values()) {
+            session.heap = new Fit();
+            session.nodes = new Fit();
+        }
+        samples = 0;
+        peakHeapKb = 0;
+        peakNodes = 0;
+        retired = 0;
+    }
+
+    /**
+     * Report peaks, per-test growth of reused sessions and retirements
+     */
+    public synchronized Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        if (samples == 0) {
+            return stats;
+        }
+        logger.info(String.format("Browser health: %d samples, peak heap %d KB, peak %d nodes, "
+                + "growth per reused test %+d KB heap / %+d nodes, %d sessions retired",
+            samples, peakHeapKb, peakNodes, heapTrend.slope(), nodeTrend.slope(), retired));
+        stats.put("healthSamples", samples);
+        stats.put("healthPeakHeapKb", peakHeapKb);
+        stats.put("healthPeakNodes", peakNodes);
+        stats.put("healthHeapGrowthKbPerTest", heapTrend.slope());
+        stats.put("healthNodeGrowthPerTest", nodeTrend.slope());
+        stats.put("healthSessionsRetired", retired);
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> sample(HasCdp driver, boolean firstSample) {
+        if (firstSample) {
+            driver.executeCdpCommand("Performance.enable", Collections.emptyMap());
+        }
+        Map<String, Object> response = driver.executeCdpCommand("Performance.getMetrics", Collections.emptyMap());
+        Map<String, Double> values = new TreeMap<>();
+        for (Map<String, Object> metric : (List<Map<String, Object>>) response.get("metrics")) {
+            values.put((String) metric.get("name"), ((Number) metric.get("value")).doubleValue());
+        }
+        Map<String, Long> sample = new LinkedHashMap<>();
+        sample.put(HEAP_KB, Math.round(values.getOrDefault("JSHeapUsedSize", 0.0) / 1024));
+        sample.put(NODES, Math.round(values.getOrDefault("Nodes", 0.0)));
+        sample.put(LAYOUTS, Math.round(values.getOrDefault("LayoutCount", 0.0)));
+        // ScriptDuration is reported in seconds
+        sample.put(SCRIPT_MS, Math.round(values.getOrDefault("ScriptDuration", 0.0) * 1000));
+        return sample;
+    }
+}
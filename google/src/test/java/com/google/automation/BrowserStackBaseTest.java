@@ -1,23 +1,28 @@
 package com.google.automation;
 
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.HttpCommandExecutor;
 import org.openqa.selenium.remote.RemoteWebDriver;
-import io.github.bonigarcia.wdm.WebDriverManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+import org.testng.SkipException;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.AfterMethod;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * BrowserStack Base Test class
  * Handles both local and BrowserStack remote WebDriver initialization
+ * Remote sessions capture diagnostics at the level DiagnosticRetry chooses for the attempt:
+ * lean on a first attempt, full when a failed test is rerun.
+ * With -Dcommands.mode=record|replay each test's commands are recorded or replayed, see CommandLog.
+ * Local sessions run under the test's EmulationProfile; remote sessions cannot be throttled, so tests with
+ * a throttling profile are skipped on BrowserStack.
  */
 public class BrowserStackBaseTest {
     private static final Logger logger = LoggerFactory.getLogger(BrowserStackBaseTest.class);
@@ -39,15 +44,25 @@ public class BrowserStackBaseTest {
      * Uses BrowserStack remote driver or local Chrome driver based on configuration
      */
     @BeforeMethod
-    public void setUp() {
+    public void setUp(ITestResult result, Object[] parameters) {
+        EmulationProfile emulation = EmulationProfile.named(EmulationProfile.nameFor(result.getTestContext()));
+        if (emulation.isThrottled() && BROWSERSTACK_DRIVER.equalsIgnoreCase(getDriverType()) && !CommandLog.isReplaying()) {
+            throw new SkipException("Emulation profile " + emulation.getName() + " needs a local Chrome session, run with -Ddriver=local");
+        }
         try {
             String driverType = getDriverType();
             logger.info("Initializing WebDriver with type: " + driverType);
 
-            if (BROWSERSTACK_DRIVER.equalsIgnoreCase(driverType)) {
-                setupBrowserStackDriver();
+            String testName = CommandLog.testName(result.getMethod(), parameters);
+            if (CommandLog.isReplaying()) {
+                driver = new ReplayWebDriver(CommandLog.file(testName));
+            } else if (BROWSERSTACK_DRIVER.equalsIgnoreCase(driverType)) {
+                setupBrowserStackDriver(DiagnosticRetry.levelFor(result, parameters), testName);
             } else {
-                setupLocalDriver();
+                setupLocalDriver(emulation);
+            }
+            if (CommandLog.isRecording() && driver instanceof LocalChromeDriver) {
+                CommandLog.record(driver, testName);
             }
 
             logger.info("WebDriver initialized successfully with type: " + driverType);
@@ -60,11 +75,12 @@ public class BrowserStackBaseTest {
     /**
      * Setup BrowserStack RemoteWebDriver
      */
-    private void setupBrowserStackDriver() throws MalformedURLException {
+    private void setupBrowserStackDriver(DiagnosticLevel level, String testName) throws MalformedURLException {
         try {
             bstackConfig = new BrowserStackConfig();
+            bstackConfig.setDiagnosticLevel(level);
             
-            logger.info("Setting up BrowserStack RemoteWebDriver");
+            logger.info("Setting up BrowserStack RemoteWebDriver with " + level + " diagnostics");
             logger.info("BrowserStack Hub URL: " + bstackConfig.getHubUrl());
             
             // Get Chrome capabilities for BrowserStack
@@ -74,14 +90,22 @@ public class BrowserStackBaseTest {
             org.openqa.selenium.chrome.ChromeOptions options = new org.openqa.selenium.chrome.ChromeOptions();
             capabilities.forEach((key, value) -> options.setCapability(key, value));
             
-            driver = new RemoteWebDriver(
-                new URL(bstackConfig.getHubUrl()),
-                options
-            );
+            URL hubUrl = new URL(bstackConfig.getHubUrl());
+            if (CommandLog.isRecording()) {
+                // Wrapped from the start, so the recording also holds the session's creation
+                driver = new RemoteWebDriver(
+                    new CommandRecorder(new HttpCommandExecutor(hubUrl), CommandLog.file(testName)),
+                    options
+                );
+            } else {
+                driver = new RemoteWebDriver(hubUrl, options);
+            }
             
             driver.manage().window().maximize();
-            driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
+            // Page objects wait explicitly with learned timeouts, see WaitPolicy
+            driver.manage().timeouts().implicitlyWait(Duration.ZERO);
             
+            DiagnosticRetry.sessionStarted(level);
             logger.info("BrowserStack RemoteWebDriver initialized successfully");
             logger.info("Session ID: " + ((RemoteWebDriver) driver).getSessionId());
             
@@ -94,23 +118,12 @@ public class BrowserStackBaseTest {
     /**
      * Setup local Chrome WebDriver
      */
-    private void setupLocalDriver() {
+    private void setupLocalDriver(EmulationProfile emulation) {
         try {
             logger.info("Setting up Local Chrome WebDriver");
             
-            WebDriverManager.chromedriver().setup();
-            ChromeOptions options = new ChromeOptions();
-            
-            // Disable notifications and other popups
-            options.addArguments("--no-first-run");
-            options.addArguments("--no-default-browser-check");
-            options.addArguments("--disable-blink-features=AutomationControlled");
-            options.setExperimentalOption("excludeSwitches", new String[]{"enable-logging"});
-            options.setExperimentalOption("useAutomationExtension", false);
-            
-            driver = new ChromeDriver(options);
-            driver.manage().window().maximize();
-            driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
+            driver = LocalDriverFactory.createDriver();
+            emulation.apply(driver);
             
             logger.info("Local Chrome WebDriver initialized successfully");
         } catch (Exception e) {
@@ -132,8 +145,9 @@ public class BrowserStackBaseTest {
                     logger.info("Closing BrowserStack session: " + remoteDriver.getSessionId());
                 }
                 
-                driver.quit();
-                logger.info("WebDriver closed successfully");
+                if (ProcessWatchdog.quit(driver)) {
+                    logger.info("WebDriver closed successfully");
+                }
             } catch (Exception e) {
                 logger.error("Error closing WebDriver", e);
             }
@@ -14,6 +14,7 @@ public class BrowserStackConfig {
     private String accessKey;
     private String browserstackLocal;
     private String browserstackLocalIdentifier;
+    private DiagnosticLevel diagnosticLevel = DiagnosticLevel.firstAttempt();
 
     /**
      * Constructor - initializes BrowserStack credentials from environment variables
@@ -116,10 +117,7 @@ public class BrowserStackConfig {
         bstackOptions.put("buildName", "Google Search Tests - Regression Suite");
         bstackOptions.put("projectName", "Google Search Automation");
         bstackOptions.put("sessionName", "Test Session");
-        bstackOptions.put("debug", "true");
-        bstackOptions.put("networkLogs", "true");
-        bstackOptions.put("consoleLogs", "warnings");
-        bstackOptions.put("video", "true");
+        bstackOptions.putAll(diagnosticLevel.bstackOptions());
         
         // Local testing if enabled
         if (browserstackLocal != null && browserstackLocal.equals("true")) {
@@ -132,6 +130,20 @@ public class BrowserStackConfig {
         return bstackOptions;
     }
 
+    /**
+     * Set how much the sessions created from these capabilities capture, see DiagnosticLevel
+     */
+    public void setDiagnosticLevel(DiagnosticLevel diagnosticLevel) {
+        this.diagnosticLevel = diagnosticLevel;
+    }
+
+    /**
+     * Get the diagnostic level applied to new capabilities
+     */
+    public DiagnosticLevel getDiagnosticLevel() {
+        return diagnosticLevel;
+    }
+
     /**
      * Get credentials as base64 encoded string
      */
@@ -0,0 +1,247 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.json.JsonOutput;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestNGMethod;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Records the WebDriver commands of each test and replays them without a browser
+ *
+ * In record mode the command executor of each test's session is wrapped by a CommandRecorder, which writes
+ * every command and the browser's response as one JSON line to command-recordings/TestClass.method.jsonl.
+ * In replay mode the test gets a ReplayWebDriver serving those responses, so the test logic (fallbacks,
+ * waits, assertions) runs in milliseconds with no browser and no network. A command that is not in the
+ * recording fails the test with a divergence error naming the command. Commands the framework issues for
+ * itself (consent cookie seeding, health samples, emulation set-up) are recorded as passive: a replay
+ * does not issue them and may skip over them, but not over any command of the test. Record with a full
+ * browser: light tier, tab and session-reuse settings are ignored while recording or replaying.
+ *
+ * Options:
+ *   -Dcommands.mode=record|replay   record or replay WebDriver commands (off by default)
+ *   -Dcommands.store=dir            recordings directory (default command-recordings)
+ */
+public final class CommandLog {
+    private static final Logger logger = LoggerFactory.getLogger(CommandLog.class);
+    static final Json JSON = new Json();
+
+    private static final AtomicLong RECORDED = new AtomicLong();
+    private static final AtomicLong REPLAYED = new AtomicLong();
+    private static final AtomicLong DIVERGENCES = new AtomicLong();
+    private static final ThreadLocal<Boolean> PASSIVE = ThreadLocal.withInitial(() -> false);
+
+    private CommandLog() {
+    }
+
+    public static boolean isRecording() {
+        return "record".equalsIgnoreCase(System.getProperty("commands.mode"));
+    }
+
+    public static boolean isReplaying() {
+        return "replay".equalsIgnoreCase(System.getProperty("commands.mode"));
+    }
+
+    public static boolean isEnabled() {
+        return isRecording() || isReplaying();
+    }
+
+    /**
+     * Get the recording of a test, e.g. command-recordings/com.google.automation.GoogleSearchTest.testGoogleSearch.jsonl
+     */
+    public static Path file(String testName) {
+        return Paths.get(System.getProperty("commands.store", "command-recordings"))
+            .resolve(testName.replaceAll("[^\\w.-]", "_") + ".jsonl");
+    }
+
+    /**
+     * Name the recording of one invocation: the test method, and its data provider parameters if it has any
+     */
+    public static String testName(ITestNGMethod method, Object[] parameters) {
+        return TestDurations.key(method) + (parameters.length > 0 ? Arrays.toString(parameters) : "");
+    }
+
+    /**
+     * Start recording a session's commands for a test
+     * Only local Chrome sessions can be wrapped after they started; other drivers are returned unrecorded.
+     */
+    public static WebDriver record(WebDriver driver, String testName) {
+        if (driver instanceof LocalChromeDriver) {
+            ((LocalChromeDriver) driver).recordCommands(file(testName));
+        } else {
+            logger.warn("Cannot record commands of " + driver.getClass().getSimpleName() + ", " + testName + " is not recorded");
+        }
+        return driver;
+    }
+
+    /**
+     * Run framework commands that a replay does not issue; they are recorded as passive entries
+     */
+    public static void passive(Runnable commands) {
+        passive(() -> {
+            commands.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run framework commands that a replay does not issue and return their result
+     */
+    public static <T> T passive(Supplier<T> commands) {
+        boolean outer = PASSIVE.get();
+        PASSIVE.set(true);
+        try {
+            return commands.get();
+        } finally {
+            PASSIVE.set(outer);
+        }
+    }
+
+    /**
+     * Encode a command and its response as one line of a recording
+     */
+    static String encode(String name, Map<String, ?> parameters, Response response) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("name", name);
+        entry.put("params", parameters);
+        entry.put("session", response.getSessionId());
+        entry.put("status", response.getStatus());
+        entry.put("state", response.getState());
+        if (PASSIVE.get()) {
+            entry.put("passive", true);
+        }
+        if (response.getValue() instanceof Throwable) {
+            Throwable error = (Throwable) response.getValue();
+            entry.put("error", error.getClass().getName());
+            entry.put("message", error.getMessage());
+        } else {
+            entry.put("value", response.getValue());
+        }
+        RECORDED.incrementAndGet();
+        return compact(entry);
+    }
+
+    private static String compact(Object value) {
+        StringBuilder json = new StringBuilder();
+        try (JsonOutput output = JSON.newOutput(json)) {
+            output.setPrettyPrint(false).write(value);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Rebuild the response of a recorded entry; failures become the exception the driver threw
+     */
+    static Response decode(Map<String, Object> entry) {
+        Response response = new Response();
+        response.setSessionId((String) entry.get("session"));
+        Object status = entry.get("status");
+        response.setStatus(status instanceof Number ? ((Number) status).intValue() : ErrorCodes.SUCCESS);
+        response.setState((String) entry.get("state"));
+        if (entry.get("error") != null) {
+            response.setValue(exception((String) entry.get("error"), (String) entry.get("message")));
+        } else {
+            response.setValue(entry.get("value"));
+        }
+        REPLAYED.incrementAndGet();
+        return response;
+    }
+
+    private static WebDriverException exception(String className, String message) {
+        try {
+            Class<?> type = Class.forName(className);
+            if (WebDriverException.class.isAssignableFrom(type)) {
+                return (WebDriverException) type.getConstructor(String.class).newInstance(message);
+            }
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Replaying " + className + " as WebDriverException: " + e);
+        }
+        return new WebDriverException(message);
+    }
+
+    /**
+     * Normalize a command for matching: parameters as they would be sent, with numbers masked
+     * Numbers are mostly timeouts derived from the clock (remaining wait time, script timeouts), which
+     * differ between the recording and the replay.
+     */
+    static Object matchKey(String name, Object parameters) {
+        Map<String, Object> key = new TreeMap<>();
+        key.put("name", name);
+        // The recorded session may have been created with other capabilities, any start is fine
+        if (!DriverCommand.NEW_SESSION.equals(name)) {
+            key.put("params", mask(JSON.toType(compact(parameters), Object.class)));
+        }
+        return key;
+    }
+
+    private static Object mask(Object value) {
+        if (value instanceof Number) {
+            return "#";
+        }
+        if (value instanceof Map) {
+            Map<String, Object> masked = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> masked.put(String.valueOf(k), mask(v)));
+            return masked;
+        }
+        if (value instanceof List) {
+            List<Object> masked = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                masked.add(mask(item));
+            }
+            return masked;
+        }
+        return value;
+    }
+
+    /**
+     * Describe a command for divergence messages
+     */
+    static String describe(Command command) {
+        String parameters = compact(command.getParameters());
+        return command.getName() + " " + (parameters.length() > 200 ? parameters.substring(0, 200) + "..." : parameters);
+    }
+
+    static void diverged() {
+        DIVERGENCES.incrementAndGet();
+    }
+
+    /**
+     * Start counting a new run
+     */
+    public static void reset() {
+        RECORDED.set(0);
+        REPLAYED.set(0);
+        DIVERGENCES.set(0);
+    }
+
+    /**
+     * Report commands recorded, replayed and divergences
+     */
+    public static Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        if (!isEnabled()) {
+            return stats;
+        }
+        stats.put("commandsRecorded", RECORDED.get());
+        stats.put("commandsReplayed", REPLAYED.get());
+        stats.put("replayDivergences", DIVERGENCES.get());
+        return stats;
+    }
+}
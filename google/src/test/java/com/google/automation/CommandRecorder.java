@@ -0,0 +1,79 @@
+package com.google.automation;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Command executor that passes commands on and writes each command and response to a recording
+ * See CommandLog for the file format and how recordings are replayed.
+ */
+public class CommandRecorder implements CommandExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(CommandRecorder.class);
+
+    private final CommandExecutor delegate;
+    private final Path file;
+    private final BufferedWriter writer;
+
+    /**
+     * Start a recording; an existing recording of the same test is replaced
+     */
+    public CommandRecorder(CommandExecutor delegate, Path file) {
+        this.delegate = delegate;
+        this.file = file;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot record commands to " + file, e);
+        }
+        logger.info("Recording WebDriver commands to " + file);
+    }
+
+    /**
+     * Write the response of a session that started before recording began, so replays can start it
+     */
+    public synchronized void sessionStarted(String sessionId, Map<String, Object> capabilities) {
+        Response response = new Response();
+        response.setSessionId(sessionId);
+        response.setStatus(0);
+        response.setValue(capabilities);
+        write(CommandLog.encode(DriverCommand.NEW_SESSION, null, response));
+    }
+
+    @Override
+    public Response execute(Command command) throws IOException {
+        Response response = delegate.execute(command);
+        synchronized (this) {
+            write(CommandLog.encode(command.getName(), command.getParameters(), response));
+            if (DriverCommand.QUIT.equals(command.getName())) {
+                writer.close();
+            }
+        }
+        return response;
+    }
+
+    private void write(String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+            // Kept complete after every command, so a test that never quits still leaves a usable recording
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn("Cannot write to recording " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.google.automation;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chromium.HasCdp;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps Google's consent interstitial out of the way, once per browser session
+ *
+ * Before the first navigation to a Google host the consent cookies are seeded, so the interstitial is
+ * normally never shown. Local Chrome gets them through CDP and the light tier's HtmlUnit through its
+ * cookie manager, both without loading anything; remote sessions load the lightweight robots.txt of the
+ * host first, because WebDriver can only set cookies for the current domain. A seed that failed is tried
+ * again before the next navigations, up to three times per session. After the first navigation a single
+ * script checks for a remaining consent dialog and clicks it away. Later navigations in the same session
+ * cost nothing.
+ *
+ * Options:
+ *   -Dconsent.cookies=NAME=value;NAME=value   cookies to seed (default SOCS and CONSENT)
+ */
+public final class ConsentHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ConsentHandler.class);
+    // Values Google stores once the dialog has been answered; override when Google changes the format
+    private static final String DEFAULT_COOKIES = "SOCS=CAESEwgDEgk0ODE3Nzk3MjQaAmVuIAEaBgiA_LyaBg;CONSENT=PENDING+987";
+    private static final String DISMISS_SCRIPT =
+        "var button = document.querySelector('#L2AGLb, #W0wltc, form[action*=\"consent\"] button');"
+        + "if (button) { button.click(); return 'dialog'; }"
+        + "return location.hostname.indexOf('consent.') === 0 ? 'page' : null;";
+    // Sessions are weak keys, so state goes away with the driver
+    private static final Map<WebDriver, State> SESSIONS = new WeakHashMap<>();
+    private static final int MAX_SEED_ATTEMPTS = 3;
+
+    /**
+     * What has been done for one session
+     */
+    private static class State {
+        private int attempts;
+        private boolean seeded;
+        private boolean navigated;
+        private boolean checked;
+    }
+
+    private ConsentHandler() {
+    }
+
+    private static State state(WebDriver driver) {
+        synchronized (SESSIONS) {
+            return SESSIONS.computeIfAbsent(driver, d -> new State());
+        }
+    }
+
+    /**
+     * Seed the consent cookies for the URL's host before navigating to it
+     */
+    public static void beforeNavigation(WebDriver driver, String url) {
+        String domain = cookieDomain(url);
+        if (domain == null) {
+            return;
+        }
+        State state = state(driver);
+        // Held while seeding, so a session's navigations do not seed twice
+        synchronized (state) {
+            state.navigated = true;
+            if (state.seeded || state.attempts >= MAX_SEED_ATTEMPTS || driver instanceof ReplayWebDriver) {
+                // Seeding was recorded as passive commands; the dismiss check after the navigation is replayed
+                return;
+            }
+            state.attempts++;
+            state.seeded = CommandLog.passive(() -> seed(driver, url, domain));
+        }
+    }
+
+    /**
+     * Set the consent cookies for the domain; returns false if they could not be set
+     */
+    private static boolean seed(WebDriver driver, String url, String domain) {
+        Map<String, String> cookies = cookies();
+        try {
+            if (driver instanceof HasCdp) {
+                long expires = Instant.now().plus(365, ChronoUnit.DAYS).getEpochSecond();
+                for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+                    ((HasCdp) driver).executeCdpCommand("Network.setCookie", Map.of(
+                        "name", cookie.getKey(), "value", cookie.getValue(), "domain", domain,
+                        "path", "/", "secure", true, "expires", expires));
+                }
+            } else if (driver instanceof HtmlUnitDriver) {
+                Date expiry = Date.from(Instant.now().plus(365, ChronoUnit.DAYS));
+                for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+                    ((HtmlUnitDriver) driver).getWebClient().getCookieManager().addCookie(
+                        new com.gargoylesoftware.htmlunit.util.Cookie(domain, cookie.getKey(), cookie.getValue(),
+                            "/", expiry, true));
+                }
+            } else {
+                driver.navigate().to(URI.create(url).resolve("/robots.txt").toString());
+                Date expiry = Date.from(Instant.now().plus(365, ChronoUnit.DAYS));
+                for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+                    driver.manage().addCookie(new Cookie.Builder(cookie.getKey(), cookie.getValue())
+                        .domain(domain).path("/").isSecure(true).expiresOn(expiry).build());
+                }
+            }
+            logger.info("Seeded consent cookies " + cookies.keySet() + " for " + domain);
+            return true;
+        } catch (RuntimeException e) {
+            logger.info("Could not seed consent cookies: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Dismiss a consent dialog that is still showing after the first navigation
+     * Returns true if something was dismissed
+     */
+    public static boolean afterNavigation(WebDriver driver) {
+        State state = state(driver);
+        synchronized (state) {
+            if (state.checked || !state.navigated) {
+                return false;
+            }
+            state.checked = true;
+        }
+        Object found = ((JavascriptExecutor) driver).executeScript(DISMISS_SCRIPT);
+        if (found == null) {
+            return false;
+        }
+        TestMetrics.increment("consentDismissed");
+        logger.info("Dismissed consent " + found + " despite seeded cookies");
+        return true;
+    }
+
+    /**
+     * Get the cookie domain for Google hosts, or null for any other site
+     */
+    static String cookieDomain(String url) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (host == null) {
+            return null;
+        }
+        int index = host.indexOf("google.");
+        if (index < 0 || (index > 0 && host.charAt(index - 1) != '.')) {
+            return null;
+        }
+        return "." + host.substring(index);
+    }
+
+    private static Map<String, String> cookies() {
+        Map<String, String> cookies = new LinkedHashMap<>();
+        for (String pair : System.getProperty("consent.cookies", DEFAULT_COOKIES).split(";")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                cookies.put(pair.substring(0, separator).trim(), pair.substring(separator + 1).trim());
+            }
+        }
+        return cookies;
+    }
+}
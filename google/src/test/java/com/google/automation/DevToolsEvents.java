@@ -0,0 +1,81 @@
+package com.google.automation;
+
+import org.openqa.selenium.devtools.Command;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.Event;
+import org.openqa.selenium.json.Json;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Hands the DevTools events of one session to the handlers that are currently subscribed
+ *
+ * DevTools can only clear all of a session's listeners at once, so each event method gets one listener
+ * per session, added the first time it is needed. Captures and traces subscribe and unsubscribe their
+ * handlers here, so a closed one is no longer referenced and other users of the session are left alone.
+ * Domains are enabled by the first user and disabled when the last one is done with them.
+ */
+final class DevToolsEvents {
+    // Sessions are weak keys; the dispatcher must not refer back to its DevTools
+    private static final Map<DevTools, DevToolsEvents> SESSIONS = new WeakHashMap<>();
+
+    private final Map<String, List<Consumer<Map<String, Object>>>> handlers = new HashMap<>();
+    private final Map<String, Integer> domainUsers = new HashMap<>();
+
+    private DevToolsEvents() {
+    }
+
+    static DevToolsEvents of(DevTools devTools) {
+        synchronized (SESSIONS) {
+            return SESSIONS.computeIfAbsent(devTools, d -> new DevToolsEvents());
+        }
+    }
+
+    /**
+     * Hand the method's events to the handler until the returned action is run
+     */
+    synchronized Runnable subscribe(DevTools devTools, String method, Consumer<Map<String, Object>> handler) {
+        List<Consumer<Map<String, Object>>> subscribed = handlers.get(method);
+        if (subscribed == null) {
+            List<Consumer<Map<String, Object>>> dispatched = new CopyOnWriteArrayList<>();
+            devTools.addListener(new Event<Map<String, Object>>(method, input -> input.read(Json.MAP_TYPE)),
+                params -> dispatched.forEach(each -> each.accept(params)));
+            handlers.put(method, dispatched);
+            subscribed = dispatched;
+        }
+        subscribed.add(handler);
+        List<Consumer<Map<String, Object>>> from = subscribed;
+        return () -> from.remove(handler);
+    }
+
+    /**
+     * Enable a domain such as Network for one more user
+     */
+    synchronized void enable(DevTools devTools, String domain) {
+        if (domainUsers.getOrDefault(domain, 0) == 0) {
+            devTools.send(new Command<Void>(domain + ".enable", Map.of()));
+        }
+        domainUsers.merge(domain, 1, Integer::sum);
+    }
+
+    /**
+     * Give back a domain; it is disabled when nobody else uses it
+     */
+    synchronized void disable(DevTools devTools, String domain) {
+        Integer users = domainUsers.get(domain);
+        if (users == null) {
+            return;
+        }
+        if (users > 1) {
+            domainUsers.put(domain, users - 1);
+            return;
+        }
+        domainUsers.remove(domain);
+        devTools.send(new Command<Void>(domain + ".disable", Map.of()));
+    }
+}
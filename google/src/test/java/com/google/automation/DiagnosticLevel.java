@@ -0,0 +1,100 @@
+package com.google.automation;
+
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.logging.LogType;
+import org.openqa.selenium.logging.LoggingPreferences;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * How much a remote session captures for diagnosing failures
+ *
+ * BrowserStack's visual logs (debug), network logs, console logs and video each slow session start-up or
+ * every command, so a first attempt runs lean and DiagnosticRetry raises the level when a failed test is
+ * run again. Each level maps to bstack:options and, for the local hub stand-in, to the ChromeDriver log
+ * capture closest to it.
+ *
+ *   LEAN       no video, logs or screenshots
+ *   STANDARD   video and console errors
+ *   FULL       video, a screenshot per command, network logs and console warnings
+ *
+ * Options:
+ *   -Dbstack.diagnostics=lean           level of a first attempt
+ *   -Dbstack.diagnostics.retry=full     level of an attempt that follows a failure
+ */
+public enum DiagnosticLevel {
+    LEAN(false, false, "disable", false),
+    STANDARD(false, false, "errors", true),
+    FULL(true, true, "warnings", true);
+
+    private final boolean visualLogs;
+    private final boolean networkLogs;
+    private final String consoleLogs;
+    private final boolean video;
+
+    DiagnosticLevel(boolean visualLogs, boolean networkLogs, String consoleLogs, boolean video) {
+        this.visualLogs = visualLogs;
+        this.networkLogs = networkLogs;
+        this.consoleLogs = consoleLogs;
+        this.video = video;
+    }
+
+    public static DiagnosticLevel firstAttempt() {
+        return parse(System.getProperty("bstack.diagnostics", "lean"));
+    }
+
+    public static DiagnosticLevel retry() {
+        return parse(System.getProperty("bstack.diagnostics.retry", "full"));
+    }
+
+    static DiagnosticLevel parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown diagnostic level '" + name + "', expected lean, standard or full");
+        }
+    }
+
+    /**
+     * Check whether the session takes a screenshot after every command
+     */
+    public boolean hasVisualLogs() {
+        return visualLogs;
+    }
+
+    /**
+     * Get the BrowserStack options for this level
+     */
+    public Map<String, Object> bstackOptions() {
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("debug", String.valueOf(visualLogs));
+        options.put("networkLogs", String.valueOf(networkLogs));
+        options.put("consoleLogs", consoleLogs);
+        options.put("video", String.valueOf(video));
+        return Collections.unmodifiableMap(options);
+    }
+
+    /**
+     * Enable the ChromeDriver logs closest to this level's capture
+     * Console logs become the browser log and network logs the performance log; video and
+     * screenshots have no capability equivalent.
+     */
+    public ChromeOptions applyTo(ChromeOptions options) {
+        LoggingPreferences logs = new LoggingPreferences();
+        if (!"disable".equals(consoleLogs)) {
+            logs.enable(LogType.BROWSER, "errors".equals(consoleLogs) ? Level.SEVERE : Level.WARNING);
+        }
+        if (networkLogs) {
+            logs.enable(LogType.PERFORMANCE, Level.ALL);
+            options.setExperimentalOption("perfLoggingPrefs", Collections.singletonMap("enableNetwork", true));
+        }
+        if (!logs.getEnabledLogTypes().isEmpty()) {
+            options.setCapability(ChromeOptions.LOGGING_PREFS, logs);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,157 @@
+package com.google.automation;
+
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.logging.LogType;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures what each DiagnosticLevel costs per session
+ * A standalone ChromeDriver server stands in for the remote hub: sessions are RemoteWebDriver sessions
+ * over HTTP, started with each level's log capture. A FULL session also takes a screenshot after every
+ * journey step, the way BrowserStack's visual logs do, and every session collects its logs before quitting.
+ * Video has no local equivalent, so STANDARD differs from LEAN by console logs only.
+ * Not part of the default suite. Run with: mvn test -Pload
+ *
+ * Options:
+ *   -Ddiagnostics.bench.sessions=n    sessions per level (default 5)
+ *
+ * Per-level start-up, journey and quit times are written to target/diagnostics-benchmark.csv.
+ */
+public class DiagnosticLevelBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(DiagnosticLevelBenchmarkTest.class);
+    private static final Path RESULTS_FILE = Paths.get("target", "diagnostics-benchmark.csv");
+
+    private LocalSearchServer server;
+    private ChromeDriverService hub;
+
+    /**
+     * Timings of one level
+     */
+    private static class LevelResult {
+        private final LatencyStats startup = new LatencyStats();
+        private final LatencyStats journey = new LatencyStats();
+        private final LatencyStats teardown = new LatencyStats();
+
+        long sessionMillis() {
+            return Math.round(startup.mean() + journey.mean() + teardown.mean());
+        }
+    }
+
+    @BeforeClass
+    public void setUpClass() throws IOException {
+        server = LocalSearchServer.start();
+        LocalDriverFactory.resolveDriverBinary();
+        hub = ChromeDriverService.createDefaultService();
+        hub.start();
+        logger.info("Hub stand-in listening at " + hub.getUrl());
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() {
+        if (hub != null) {
+            hub.stop();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Benchmark: per-session overhead of lean, standard and full diagnostics
+     */
+    @Test(description = "LOAD: Compare session overhead of diagnostic levels", groups = "load")
+    public void testDiagnosticLevelOverhead() throws IOException {
+        int sessions = Integer.getInteger("diagnostics.bench.sessions", 5);
+        SearchJourney journey = new SearchJourney(server.getBaseUrl(), Duration.ofSeconds(10));
+
+        Map<DiagnosticLevel, LevelResult> results = new LinkedHashMap<>();
+        for (DiagnosticLevel level : DiagnosticLevel.values()) {
+            results.put(level, new LevelResult());
+        }
+        // Interleave levels so drift in machine load is spread evenly across them
+        for (int i = 0; i < sessions; i++) {
+            for (Map.Entry<DiagnosticLevel, LevelResult> entry : results.entrySet()) {
+                runSession(entry.getKey(), entry.getValue(), journey, "diagnostics " + i);
+            }
+        }
+
+        long lean = results.get(DiagnosticLevel.LEAN).sessionMillis();
+        for (Map.Entry<DiagnosticLevel, LevelResult> entry : results.entrySet()) {
+            LevelResult result = entry.getValue();
+            logger.info(String.format("%-8s start %s | journey %s | quit %s | %+d ms per session over LEAN",
+                entry.getKey(), result.startup.summary(), result.journey.summary(), result.teardown.summary(),
+                result.sessionMillis() - lean));
+        }
+        writeCsv(results);
+
+        for (Map.Entry<DiagnosticLevel, LevelResult> entry : results.entrySet()) {
+            assertEquals(entry.getValue().journey.count(), sessions,
+                "Every " + entry.getKey() + " session should complete the journey");
+        }
+    }
+
+    private void runSession(DiagnosticLevel level, LevelResult result, SearchJourney journey, String query) {
+        ChromeOptions options = level.applyTo(LocalDriverFactory.createHeadlessOptions());
+        long start = System.nanoTime();
+        RemoteWebDriver driver = new RemoteWebDriver(hub.getUrl(), options);
+        result.startup.record((System.nanoTime() - start) / 1_000_000);
+        try {
+            start = System.nanoTime();
+            journey.run(driver, query, (step, millis) -> {
+                if (level.hasVisualLogs()) {
+                    ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+                }
+            });
+            result.journey.record((System.nanoTime() - start) / 1_000_000);
+        } finally {
+            start = System.nanoTime();
+            collectLogs(driver);
+            driver.quit();
+            result.teardown.record((System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Download the session's logs, as the hub does when a session ends
+     */
+    private static void collectLogs(WebDriver driver) {
+        for (String type : driver.manage().logs().getAvailableLogTypes()) {
+            if (LogType.BROWSER.equals(type) || LogType.PERFORMANCE.equals(type)) {
+                driver.manage().logs().get(type);
+            }
+        }
+    }
+
+    private static void writeCsv(Map<DiagnosticLevel, LevelResult> results) throws IOException {
+        Files.createDirectories(RESULTS_FILE.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(RESULTS_FILE))) {
+            out.println("level,sessions,startMeanMs,startP95Ms,journeyMeanMs,journeyP95Ms,quitMeanMs,sessionMeanMs");
+            for (Map.Entry<DiagnosticLevel, LevelResult> entry : results.entrySet()) {
+                LevelResult result = entry.getValue();
+                out.println(String.format("%s,%d,%.0f,%d,%.0f,%d,%.0f,%d", entry.getKey(), result.journey.count(),
+                    result.startup.mean(), result.startup.percentile(95), result.journey.mean(),
+                    result.journey.percentile(95), result.teardown.mean(), result.sessionMillis()));
+            }
+        }
+        logger.info("Diagnostics benchmark written to " + RESULTS_FILE.toAbsolutePath());
+    }
+}
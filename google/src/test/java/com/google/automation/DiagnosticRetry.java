@@ -0,0 +1,110 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IRetryAnalyzer;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reruns a failed remote test with full diagnostics
+ *
+ * The first attempt of a test runs at DiagnosticLevel.firstAttempt(). When it fails, TestNG asks this
+ * analyzer whether to run it again; the rerun starts its session at DiagnosticLevel.retry(), so video,
+ * screenshots and logs are only paid for on tests that failed. TestNG reports the failed attempt as
+ * skipped. Tests on a local driver have no level and are not rerun. Sessions started per level and reruns
+ * are counted for the suite summary (diagnosticsLeanSessions, diagnosticsStandardSessions,
+ * diagnosticsFullSessions, diagnosticsRetries).
+ *
+ * Options:
+ *   -Dbstack.retries=1              reruns of a failed test (0 = never rerun)
+ */
+public class DiagnosticRetry implements IRetryAnalyzer {
+    private static final Logger logger = LoggerFactory.getLogger(DiagnosticRetry.class);
+    public static final String ATTRIBUTE = "diagnosticLevel";
+
+    // Invocations whose next attempt follows a failure
+    private static final Set<String> PENDING = ConcurrentHashMap.newKeySet();
+    private static final Map<DiagnosticLevel, AtomicLong> SESSIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong RETRIES = new AtomicLong();
+
+    // One analyzer serves every invocation of a method, so reruns are counted per invocation
+    private final Map<String, Integer> reruns = new ConcurrentHashMap<>();
+
+    /**
+     * Get the key of one invocation: the method and its data provider parameters
+     */
+    static String key(ITestNGMethod method, Object[] parameters) {
+        return TestDurations.key(method) + Arrays.toString(parameters);
+    }
+
+    @Override
+    public boolean retry(ITestResult result) {
+        // Only attempts that ran on a remote session have a level to raise
+        if (result.getAttribute(ATTRIBUTE) == null) {
+            return false;
+        }
+        String key = key(result.getMethod(), result.getParameters());
+        int done = reruns.getOrDefault(key, 0);
+        if (done >= Integer.getInteger("bstack.retries", 1)) {
+            reruns.remove(key);
+            return false;
+        }
+        reruns.put(key, done + 1);
+        PENDING.add(key);
+        RETRIES.incrementAndGet();
+        logger.info("Rerunning " + result.getMethod().getMethodName() + " with " + DiagnosticLevel.retry()
+            + " diagnostics after: " + result.getThrowable());
+        return true;
+    }
+
+    /**
+     * Choose the level of the attempt about to start and record it on the test's result
+     */
+    public static DiagnosticLevel levelFor(ITestResult result, Object[] parameters) {
+        boolean rerun = PENDING.remove(key(result.getMethod(), parameters));
+        DiagnosticLevel level = rerun ? DiagnosticLevel.retry() : DiagnosticLevel.firstAttempt();
+        result.setAttribute(ATTRIBUTE, level.name() + (rerun ? " (rerun)" : ""));
+        return level;
+    }
+
+    /**
+     * Count a remote session started at a level
+     */
+    public static void sessionStarted(DiagnosticLevel level) {
+        SESSIONS.computeIfAbsent(level, l -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Start counting a new run
+     */
+    public static void reset() {
+        PENDING.clear();
+        SESSIONS.clear();
+        RETRIES.set(0);
+    }
+
+    /**
+     * Report sessions per level and reruns
+     */
+    public static Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        if (SESSIONS.isEmpty()) {
+            return stats;
+        }
+        for (DiagnosticLevel level : DiagnosticLevel.values()) {
+            String name = level.name().charAt(0) + level.name().substring(1).toLowerCase();
+            stats.put("diagnostics" + name + "Sessions", SESSIONS.getOrDefault(level, new AtomicLong()).get());
+        }
+        stats.put("diagnosticsRetries", RETRIES.get());
+        logger.info("Remote diagnostics: " + stats);
+        return stats;
+    }
+}
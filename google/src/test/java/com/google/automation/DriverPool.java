@@ -0,0 +1,150 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of WebDriver sessions shared by parallel test invocations
+ * Sessions are created lazily up to the pool size and reused until the pool is closed,
+ * or until BrowserHealth finds that a session has grown too large.
+ */
+public class DriverPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DriverPool.class);
+
+    private final int maxSize;
+    private final Supplier<WebDriver> factory;
+    private final BlockingQueue<WebDriver> idle = new LinkedBlockingQueue<>();
+    private final List<WebDriver> all = new ArrayList<>();
+    private int reserved = 0;
+    private boolean closed = false;
+
+    public DriverPool(int maxSize, Supplier<WebDriver> factory) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.factory = factory;
+    }
+
+    /**
+     * Take a session from the pool, creating one if the pool is not full yet
+     * Blocks until a session is released when all sessions are in use
+     */
+    public WebDriver borrow() throws InterruptedException {
+        while (true) {
+            WebDriver driver = idle.poll();
+            if (driver != null) {
+                return held(driver);
+            }
+
+            if (reserveSlot()) {
+                // Sessions are started outside the lock so several can start in parallel
+                try {
+                    driver = factory.get();
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        reserved--;
+                    }
+                    throw e;
+                }
+                synchronized (this) {
+                    if (closed) {
+                        quietQuit(driver);
+                        throw new IllegalStateException("Driver pool is closed");
+                    }
+                    all.add(driver);
+                    logger.info("Created pooled session " + all.size() + "/" + maxSize);
+                }
+                ProcessWatchdog.shared().adopt(driver);
+                return held(driver);
+            }
+
+            // Wake up periodically in case a slot was freed by invalidate()
+            driver = idle.poll(1, TimeUnit.SECONDS);
+            if (driver != null) {
+                return held(driver);
+            }
+        }
+    }
+
+    private static WebDriver held(WebDriver driver) {
+        ProcessWatchdog.shared().heldBy(driver, Thread.currentThread());
+        return driver;
+    }
+
+    /**
+     * Return a healthy session to the pool; a session past the health thresholds is retired instead
+     */
+    public void release(WebDriver driver) {
+        String retireReason = BrowserHealth.shared().retireReason(driver);
+        if (retireReason != null) {
+            logger.info("Retiring pooled session: " + retireReason);
+            invalidate(driver);
+            return;
+        }
+        ProcessWatchdog.shared().heldBy(driver, null);
+        idle.offer(driver);
+    }
+
+    /**
+     * Quit a broken session and free its slot so a replacement can be created
+     */
+    public void invalidate(WebDriver driver) {
+        synchronized (this) {
+            if (all.remove(driver)) {
+                reserved--;
+            }
+        }
+        quietQuit(driver);
+    }
+
+    /**
+     * Get the number of sessions created so far
+     */
+    public synchronized int size() {
+        return all.size();
+    }
+
+    /**
+     * Quit every session owned by the pool
+     */
+    @Override
+    public void close() {
+        List<WebDriver> sessions;
+        synchronized (this) {
+            closed = true;
+            sessions = new ArrayList<>(all);
+            all.clear();
+        }
+        idle.clear();
+        for (WebDriver driver : sessions) {
+            quietQuit(driver);
+        }
+        logger.info("Driver pool closed, quit " + sessions.size() + " sessions");
+    }
+
+    private synchronized boolean reserveSlot() {
+        if (closed) {
+            throw new IllegalStateException("Driver pool is closed");
+        }
+        if (reserved < maxSize) {
+            reserved++;
+            return true;
+        }
+        return false;
+    }
+
+    private static void quietQuit(WebDriver driver) {
+        if (!ProcessWatchdog.quit(driver)) {
+            logger.warn("Pooled session did not quit cleanly");
+        }
+    }
+}
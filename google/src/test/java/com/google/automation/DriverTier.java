@@ -0,0 +1,25 @@
+package com.google.automation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Select the driver tier a test runs on, on a test method or a whole class
+ *
+ * LIGHT runs the test on an in-JVM HTML driver, without starting a browser. It suits checks that only
+ * read titles, URLs, attributes and form values. Tests in the "light" group get the same treatment.
+ * When the light driver does not support something the test does, BaseTest reruns it on a full browser.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface DriverTier {
+
+    enum Level {
+        LIGHT,
+        FULL
+    }
+
+    Level value();
+}
@@ -0,0 +1,183 @@
+package com.google.automation;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.WebClient;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Starts and stops drivers for each tier and keeps the cost of their sessions
+ *
+ * The light tier is HtmlUnit with JavaScript enabled, running inside the test JVM. The full tier is
+ * a local Chrome from LocalDriverFactory. Session start and quit times are summed per tier, so the
+ * suite report can show how much browser start-up the light tier saved.
+ *
+ * Options:
+ *   -Ddriver.tier=full              run every test on a full browser, ignoring @DriverTier
+ *   -Dtier.light.timeout=30         page load timeout of the light driver in seconds
+ */
+public final class DriverTiers {
+    private static final Logger logger = LoggerFactory.getLogger(DriverTiers.class);
+    private static final DriverTiers INSTANCE = new DriverTiers();
+    public static final String LIGHT_GROUP = "light";
+    // HtmlUnit reports every CSS and script problem of the page it loads through java.util.logging
+    private static final java.util.logging.Logger HTMLUNIT_LOGGER = java.util.logging.Logger.getLogger("com.gargoylesoftware");
+
+    private final AtomicLong lightSessions = new AtomicLong();
+    private final AtomicLong lightSessionMillis = new AtomicLong();
+    private final AtomicLong fullSessions = new AtomicLong();
+    private final AtomicLong fullSessionMillis = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    static {
+        HTMLUNIT_LOGGER.setLevel(Level.SEVERE);
+    }
+
+    private DriverTiers() {
+    }
+
+    public static DriverTiers shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the tier a test method asks for; the method's annotation wins over the class's
+     */
+    public static DriverTier.Level tierOf(Method method) {
+        if ("full".equalsIgnoreCase(System.getProperty("driver.tier"))) {
+            return DriverTier.Level.FULL;
+        }
+        DriverTier tier = method.getAnnotation(DriverTier.class);
+        if (tier == null) {
+            tier = method.getDeclaringClass().getAnnotation(DriverTier.class);
+        }
+        if (tier != null) {
+            return tier.value();
+        }
+        Test test = method.getAnnotation(Test.class);
+        if (test != null && Arrays.asList(test.groups()).contains(LIGHT_GROUP)) {
+            return DriverTier.Level.LIGHT;
+        }
+        return DriverTier.Level.FULL;
+    }
+
+    /**
+     * Start a driver for the tier
+     */
+    public WebDriver start(DriverTier.Level tier) {
+        long start = System.currentTimeMillis();
+        WebDriver driver = tier == DriverTier.Level.LIGHT ? createLightDriver() : LocalDriverFactory.createDriver();
+        sessionTime(tier, System.currentTimeMillis() - start);
+        count(tier);
+        return driver;
+    }
+
+    /**
+     * Quit a driver of the tier; returns false if it had to be killed
+     */
+    public boolean quit(DriverTier.Level tier, WebDriver driver) {
+        long start = System.currentTimeMillis();
+        boolean clean = ProcessWatchdog.quit(driver);
+        sessionTime(tier, System.currentTimeMillis() - start);
+        return clean;
+    }
+
+    /**
+     * Count a light test that had to be rerun on a full browser
+     */
+    public void fellBack() {
+        fallbacks.incrementAndGet();
+    }
+
+    /**
+     * Check whether a failure means the light driver cannot do what the test asked
+     * Assertion failures and timeouts are real failures and are not retried.
+     */
+    public static boolean isUnsupported(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof UnsupportedCommandException
+                    || t instanceof UnsupportedOperationException
+                    || t instanceof ClassCastException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start counting a new run
+     */
+    public void reset() {
+        lightSessions.set(0);
+        lightSessionMillis.set(0);
+        fullSessions.set(0);
+        fullSessionMillis.set(0);
+        fallbacks.set(0);
+    }
+
+    /**
+     * Report sessions and session time per tier
+     */
+    public Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        if (lightSessions.get() == 0) {
+            return stats;
+        }
+        stats.put("tierLightSessions", lightSessions.get());
+        stats.put("tierLightSessionMs", lightSessionMillis.get());
+        stats.put("tierFullSessions", fullSessions.get());
+        stats.put("tierFullSessionMs", fullSessionMillis.get());
+        stats.put("tierLightFallbacks", fallbacks.get());
+        return stats;
+    }
+
+    /**
+     * Estimate the session time the light tier saved, from the tier metrics of a suite or merged shards
+     * Returns -1 when no full session ran to compare against.
+     */
+    public static long savedMillis(Map<String, Long> metrics) {
+        long light = metrics.getOrDefault("tierLightSessions", 0L);
+        long full = metrics.getOrDefault("tierFullSessions", 0L);
+        if (light == 0 || full == 0) {
+            return -1;
+        }
+        double fullMean = (double) metrics.getOrDefault("tierFullSessionMs", 0L) / full;
+        double lightMean = (double) metrics.getOrDefault("tierLightSessionMs", 0L) / light;
+        return Math.round(light * (fullMean - lightMean));
+    }
+
+    private void count(DriverTier.Level tier) {
+        (tier == DriverTier.Level.LIGHT ? lightSessions : fullSessions).incrementAndGet();
+    }
+
+    private void sessionTime(DriverTier.Level tier, long millis) {
+        (tier == DriverTier.Level.LIGHT ? lightSessionMillis : fullSessionMillis).addAndGet(millis);
+    }
+
+    private static WebDriver createLightDriver() {
+        HtmlUnitDriver driver = new HtmlUnitDriver(BrowserVersion.CHROME, true);
+        WebClient client = driver.getWebClient();
+        // Pages are checked through the DOM; broken third-party scripts must not fail the test
+        client.getOptions().setThrowExceptionOnScriptError(false);
+        client.getOptions().setPrintContentOnFailingStatusCode(false);
+        client.getOptions().setTimeout((int) (Long.getLong("tier.light.timeout", 30) * 1000));
+        if (RecordReplayProxy.isEnabled()) {
+            String[] address = RecordReplayProxy.shared().getAddress().split(":");
+            driver.setProxy(address[0], Integer.parseInt(address[1]));
+            client.getOptions().setUseInsecureSSL(true);
+        }
+        logger.info("Light driver started: HtmlUnit " + driver.getBrowserVersion().getNickname());
+        return driver;
+    }
+}
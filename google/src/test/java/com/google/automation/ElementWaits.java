@@ -0,0 +1,190 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.support.ui.WebDriverWait;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Waits for an element to be present, by observing DOM mutations in the page or by polling
+ *
+ * The observer wait sends one asynchronous script. It returns at once if the locator already matches,
+ * otherwise it installs a MutationObserver and resolves the moment a mutation makes the locator match,
+ * when the in-page timeout expires or when the page is unloaded. After a navigation the script is sent
+ * again for the remaining time. A wait longer than the session's script timeout raises it for that wait
+ * only and sets it back afterwards. Polling is WebDriverWait's lookup every 500 ms, kept as the fallback for
+ * locators that cannot be evaluated in the page, for tabs of a shared browser (a pending script would
+ * hold the browser's lock), for HtmlUnit (its MutationObserver does not report inserted nodes, and its
+ * lookups do not leave the JVM) and for comparison.
+ *
+ * Each wait adds its round-trips and duration to per-test metrics (observerWaits, observerRoundTrips,
+ * observerWaitMs and the poll* equivalents); the suite summary compares the two.
+ *
+ * Options:
+ *   -Dwait.mode=poll                poll instead of observing mutations
+ */
+public final class ElementWaits {
+    private static final Logger logger = LoggerFactory.getLogger(ElementWaits.class);
+    public static final String OBSERVER_WAITS = "observerWaits";
+    public static final String OBSERVER_ROUND_TRIPS = "observerRoundTrips";
+    public static final String OBSERVER_WAIT_MS = "observerWaitMs";
+    public static final String POLL_WAITS = "pollWaits";
+    public static final String POLL_ROUND_TRIPS = "pollRoundTrips";
+    public static final String POLL_WAIT_MS = "pollWaitMs";
+    // Extra script timeout so the in-page timer always fires before the driver gives up
+    private static final long SCRIPT_TIMEOUT_MARGIN_MILLIS = 2000;
+    // Unloads in a row that are followed again, e.g. a chain of redirects, before the error is thrown
+    private static final int MAX_UNLOADS = 5;
+
+    private static final String OBSERVE_SCRIPT =
+        "var locator = arguments[0], timeout = arguments[1], done = arguments[arguments.length - 1];"
+        + Locators.FIND_ALL_FUNCTION
+        + "var first = findAll(locator);"
+        + "if (first.length) { done({element: first[0]}); return; }"
+        + "var finished = false, observer, timer;"
+        + "function finish(result) {"
+        + "  if (finished) { return; }"
+        + "  finished = true;"
+        + "  observer.disconnect(); clearTimeout(timer);"
+        + "  window.removeEventListener('pagehide', onHide);"
+        + "  done(result);"
+        + "}"
+        + "function onHide() { finish({navigated: true}); }"
+        + "observer = new MutationObserver(function() {"
+        + "  var matches = findAll(locator);"
+        + "  if (matches.length) { finish({element: matches[0]}); }"
+        + "});"
+        + "observer.observe(document, {childList: true, subtree: true, attributes: true});"
+        + "window.addEventListener('pagehide', onHide);"
+        + "timer = setTimeout(function() { finish({timeout: true}); }, timeout);";
+
+    // Script timeout of each session, read once; waits that raise it set it back
+    private static final Map<WebDriver, Duration> SCRIPT_TIMEOUTS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private ElementWaits() {
+    }
+
+    public static boolean isObserverEnabled() {
+        return !"poll".equalsIgnoreCase(System.getProperty("wait.mode"));
+    }
+
+    /**
+     * Wait until the locator matches an element and return the first match
+     * Throws TimeoutException when nothing matched within the timeout.
+     */
+    public static WebElement presence(WebDriver driver, By locator, Duration timeout) {
+        Map<String, Object> argument = null;
+        if (isObserverEnabled() && driver instanceof JavascriptExecutor
+                && !(driver instanceof HtmlUnitDriver) && !TabMultiplexer.isTab(driver)) {
+            try {
+                argument = Locators.toScriptArgument(locator);
+            } catch (IllegalArgumentException e) {
+                logger.debug("Polling for " + locator + ": " + e.getMessage());
+            }
+        }
+        return argument != null ? observe(driver, locator, argument, timeout) : poll(driver, locator, timeout);
+    }
+
+    private static WebElement observe(WebDriver driver, By locator, Map<String, Object> argument, Duration timeout) {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        int roundTrips = 0;
+        Duration restore = null;
+        try {
+            Duration sessionTimeout = SCRIPT_TIMEOUTS.get(driver);
+            if (sessionTimeout == null) {
+                sessionTimeout = driver.manage().timeouts().getScriptTimeout();
+                SCRIPT_TIMEOUTS.put(driver, sessionTimeout);
+                roundTrips++;
+            }
+            Duration needed = timeout.plusMillis(SCRIPT_TIMEOUT_MARGIN_MILLIS);
+            if (sessionTimeout.compareTo(needed) < 0) {
+                driver.manage().timeouts().scriptTimeout(needed);
+                restore = sessionTimeout;
+                roundTrips++;
+            }
+            int unloads = 0;
+            while (true) {
+                long remaining = (deadline - System.nanoTime()) / 1_000_000;
+                if (remaining <= 0) {
+                    throw new TimeoutException("Element not present within " + timeout.toMillis() + "ms: " + locator);
+                }
+                TestMetrics.increment(TestMetrics.ELEMENT_LOOKUPS);
+                roundTrips++;
+                Object result;
+                try {
+                    result = ((JavascriptExecutor) driver).executeAsyncScript(OBSERVE_SCRIPT, argument, remaining);
+                } catch (WebDriverException e) {
+                    // The page went away while the script was waiting; observe the new document
+                    if (isUnload(e) && ++unloads <= MAX_UNLOADS) {
+                        continue;
+                    }
+                    throw e;
+                }
+                if (result instanceof Map) {
+                    Object element = ((Map<?, ?>) result).get("element");
+                    if (element instanceof WebElement) {
+                        LocatorAnalyzer.shared().observe(driver, locator, true);
+                        return (WebElement) element;
+                    }
+                    if (Boolean.TRUE.equals(((Map<?, ?>) result).get("navigated"))) {
+                        continue;
+                    }
+                }
+                throw new TimeoutException("Element not present within " + timeout.toMillis() + "ms: " + locator);
+            }
+        } finally {
+            if (restore != null) {
+                try {
+                    driver.manage().timeouts().scriptTimeout(restore);
+                    roundTrips++;
+                } catch (WebDriverException e) {
+                    logger.debug("Cannot restore the script timeout: " + e.getMessage());
+                }
+            }
+            TestMetrics.increment(OBSERVER_WAITS);
+            TestMetrics.add(OBSERVER_ROUND_TRIPS, roundTrips);
+            TestMetrics.add(OBSERVER_WAIT_MS, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private static WebElement poll(WebDriver driver, By locator, Duration timeout) {
+        long start = System.nanoTime();
+        int[] roundTrips = {0};
+        try {
+            return new WebDriverWait(driver, timeout).until(d -> {
+                TestMetrics.increment(TestMetrics.ELEMENT_LOOKUPS);
+                roundTrips[0]++;
+                return ExpectedConditions.presenceOfElementLocated(locator).apply(d);
+            });
+        } finally {
+            TestMetrics.increment(POLL_WAITS);
+            TestMetrics.add(POLL_ROUND_TRIPS, roundTrips[0]);
+            TestMetrics.add(POLL_WAIT_MS, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Check whether an async script failed because its document went away: the driver reports the unload
+     * as a script error, a stale script result or, while the new document is not ready, a missing window
+     */
+    private static boolean isUnload(WebDriverException e) {
+        return e instanceof JavascriptException || e instanceof StaleElementReferenceException
+            || e instanceof NoSuchWindowException;
+    }
+}
@@ -0,0 +1,68 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IAlterSuiteListener;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs every &lt;test&gt; of a suite once per emulation profile
+ *
+ * The profiles come from -Demulation.profiles, or from an emulation.profiles suite parameter. Each test is
+ * replaced by one copy per profile, named "Google Search Tests [slow-4g]" and carrying the profile in its
+ * emulation.profile parameter, which EmulationProfile reads when a session starts. Tests that already
+ * name a profile in the XML are kept as they are. Does nothing when no profiles are given.
+ */
+public class EmulationMatrix implements IAlterSuiteListener {
+    private static final Logger logger = LoggerFactory.getLogger(EmulationMatrix.class);
+    public static final String PARAMETER = "emulation.profiles";
+
+    @Override
+    public void alter(List<XmlSuite> suites) {
+        for (XmlSuite suite : suites) {
+            String profiles = System.getProperty(PARAMETER, suite.getParameter(PARAMETER));
+            if (profiles == null || profiles.trim().isEmpty()) {
+                continue;
+            }
+            List<String> names = new ArrayList<>();
+            for (String name : profiles.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    // Fails the run up front for a profile that does not exist
+                    names.add(EmulationProfile.named(name.trim()).getName());
+                }
+            }
+            List<XmlTest> tests = new ArrayList<>(suite.getTests());
+            suite.getTests().clear();
+            for (XmlTest test : tests) {
+                if (test.getLocalParameters().containsKey(EmulationProfile.PARAMETER)) {
+                    suite.getTests().add(test);
+                    continue;
+                }
+                for (String name : names) {
+                    // The copy adds itself to the suite, but leaves the classes behind
+                    XmlTest copy = (XmlTest) test.clone();
+                    List<XmlClass> classes = new ArrayList<>();
+                    for (XmlClass xmlClass : test.getXmlClasses()) {
+                        XmlClass classCopy = (XmlClass) xmlClass.clone();
+                        classCopy.setXmlTest(copy);
+                        classes.add(classCopy);
+                    }
+                    copy.setXmlClasses(classes);
+                    Map<String, String> parameters = new HashMap<>(test.getLocalParameters());
+                    parameters.put(EmulationProfile.PARAMETER, name);
+                    copy.setParameters(parameters);
+                    copy.setName(test.getName() + " [" + name + "]");
+                }
+            }
+            logger.info("Suite '" + suite.getName() + "' runs " + tests.size() + " tests under " + names.size()
+                + " emulation profiles: " + String.join(", ", names));
+        }
+    }
+}
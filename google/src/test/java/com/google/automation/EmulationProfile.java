@@ -0,0 +1,227 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chromium.HasCdp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestContext;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Network and CPU conditions a test runs under: added latency, throughput, packet loss and CPU slowdown
+ *
+ * Profiles are defined in emulation-profiles.properties and applied to a local Chrome session through
+ * DevTools (Network.emulateNetworkConditions and Emulation.setCPUThrottlingRate) right after it starts.
+ * The profile of a test comes from the emulation.profile parameter of its &lt;test&gt;, which EmulationMatrix
+ * sets when it runs the suite once per profile, or else from -Demulation.profile. Results are counted per
+ * profile and shown in the suite summary.
+ *
+ * Options:
+ *   -Demulation.profile=name        run every test under one profile (default none)
+ *   -Demulation.profiles=a,b        run every test once per profile, see EmulationMatrix
+ *   -Dprofile.name.setting=value    override or add a profile setting, see emulation-profiles.properties
+ */
+public final class EmulationProfile {
+    private static final Logger logger = LoggerFactory.getLogger(EmulationProfile.class);
+    private static final String PROFILES_RESOURCE = "emulation-profiles.properties";
+    public static final String PARAMETER = "emulation.profile";
+    public static final String NONE = "none";
+
+    // Outcome counts per profile: passed, failed, skipped, milliseconds
+    private static final Map<String, long[]> RESULTS = new TreeMap<>();
+
+    private final String name;
+    private final long latencyMs;
+    private final long downloadKbps;
+    private final long uploadKbps;
+    private final double packetLoss;
+    private final double cpuSlowdown;
+
+    public EmulationProfile(String name, long latencyMs, long downloadKbps, long uploadKbps,
+                            double packetLoss, double cpuSlowdown) {
+        this.name = name;
+        this.latencyMs = latencyMs;
+        this.downloadKbps = downloadKbps;
+        this.uploadKbps = uploadKbps;
+        this.packetLoss = packetLoss;
+        this.cpuSlowdown = cpuSlowdown;
+    }
+
+    /**
+     * Load a profile by name
+     * Throws IllegalArgumentException for a name that no setting mentions.
+     */
+    public static EmulationProfile named(String name) {
+        Properties settings = settings();
+        String prefix = "profile." + name + ".";
+        if (settings.stringPropertyNames().stream().noneMatch(key -> key.startsWith(prefix))) {
+            throw new IllegalArgumentException("Unknown emulation profile '" + name + "', known profiles: " + names(settings));
+        }
+        return new EmulationProfile(name,
+            Long.parseLong(settings.getProperty(prefix + "latencyMs", "0")),
+            Long.parseLong(settings.getProperty(prefix + "downloadKbps", "0")),
+            Long.parseLong(settings.getProperty(prefix + "uploadKbps", "0")),
+            Double.parseDouble(settings.getProperty(prefix + "packetLoss", "0")),
+            Double.parseDouble(settings.getProperty(prefix + "cpuSlowdown", "1")));
+    }
+
+    private static Properties settings() {
+        Properties settings = new Properties();
+        try (InputStream input = EmulationProfile.class.getClassLoader().getResourceAsStream(PROFILES_RESOURCE)) {
+            if (input != null) {
+                settings.load(input);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + PROFILES_RESOURCE, e);
+        }
+        settings.putAll(System.getProperties());
+        return settings;
+    }
+
+    private static TreeSet<String> names(Properties settings) {
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : settings.stringPropertyNames()) {
+            int end = key.lastIndexOf('.');
+            if (key.startsWith("profile.") && end > "profile.".length()) {
+                names.add(key.substring("profile.".length(), end));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Get the profile name of a TestNG test: its emulation.profile parameter, or -Demulation.profile
+     */
+    public static String nameFor(ITestContext context) {
+        String name = context != null ? context.getCurrentXmlTest().getParameter(PARAMETER) : null;
+        if (name == null || name.isEmpty()) {
+            name = System.getProperty(PARAMETER, NONE);
+        }
+        return name;
+    }
+
+    /**
+     * Get the profile of the test being set up or run on this thread
+     */
+    public static EmulationProfile current() {
+        ITestResult result = Reporter.getCurrentTestResult();
+        return named(nameFor(result != null ? result.getTestContext() : null));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Check whether the profile changes anything, i.e. needs a session it can throttle
+     */
+    public boolean isThrottled() {
+        return latencyMs > 0 || downloadKbps > 0 || uploadKbps > 0 || packetLoss > 0 || cpuSlowdown > 1;
+    }
+
+    /**
+     * Check whether a session can be throttled (local Chrome can, remote sessions and HtmlUnit cannot)
+     */
+    public static boolean isSupported(WebDriver driver) {
+        return driver instanceof HasCdp;
+    }
+
+    /**
+     * Apply the profile to a session's current tab
+     * Does nothing for an unthrottled profile. Throws UnsupportedOperationException for a session without CDP.
+     */
+    public void apply(WebDriver driver) {
+        if (!isThrottled()) {
+            return;
+        }
+        if (!isSupported(driver)) {
+            throw new UnsupportedOperationException("Emulation profile " + name + " needs a local Chrome session with DevTools");
+        }
+        CommandLog.passive(() -> throttle((HasCdp) driver));
+        logger.info("Emulating " + this);
+    }
+
+    private void throttle(HasCdp cdp) {
+        cdp.executeCdpCommand("Network.enable", Collections.emptyMap());
+        Map<String, Object> conditions = new LinkedHashMap<>();
+        conditions.put("offline", false);
+        conditions.put("latency", latencyMs);
+        // Throughput is in bytes per second, -1 turns throttling off
+        conditions.put("downloadThroughput", downloadKbps > 0 ? downloadKbps * 1000 / 8 : -1);
+        conditions.put("uploadThroughput", uploadKbps > 0 ? uploadKbps * 1000 / 8 : -1);
+        if (packetLoss > 0) {
+            conditions.put("packetLoss", packetLoss);
+        }
+        cdp.executeCdpCommand("Network.emulateNetworkConditions", conditions);
+        if (cpuSlowdown > 1) {
+            cdp.executeCdpCommand("Emulation.setCPUThrottlingRate", Map.of("rate", cpuSlowdown));
+        }
+    }
+
+    /**
+     * Count a finished test under its profile
+     */
+    public static void testFinished(ITestResult result) {
+        String profile = nameFor(result.getTestContext());
+        synchronized (RESULTS) {
+            long[] counts = RESULTS.computeIfAbsent(profile, p -> new long[4]);
+            if (result.getStatus() == ITestResult.SUCCESS) {
+                counts[0]++;
+            } else if (result.getStatus() == ITestResult.FAILURE) {
+                counts[1]++;
+            } else {
+                counts[2]++;
+            }
+            counts[3] += Math.max(0, result.getEndMillis() - result.getStartMillis());
+        }
+    }
+
+    /**
+     * Start counting a new run
+     */
+    public static void reset() {
+        synchronized (RESULTS) {
+            RESULTS.clear();
+        }
+    }
+
+    /**
+     * Report passed, failed and skipped tests and test time per profile, as emulation.name.passed and so on
+     * Reports nothing when every test ran unthrottled.
+     */
+    public static Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        synchronized (RESULTS) {
+            if (RESULTS.isEmpty() || RESULTS.keySet().equals(Collections.singleton(NONE))) {
+                return stats;
+            }
+            for (Map.Entry<String, long[]> entry : RESULTS.entrySet()) {
+                long[] counts = entry.getValue();
+                String prefix = "emulation." + entry.getKey() + ".";
+                stats.put(prefix + "passed", counts[0]);
+                stats.put(prefix + "failed", counts[1]);
+                stats.put(prefix + "skipped", counts[2]);
+                stats.put(prefix + "ms", counts[3]);
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d ms latency, %s down, %s up, %.1f%% packet loss, %.0fx CPU slowdown)", name, latencyMs,
+            downloadKbps > 0 ? downloadKbps + " kbit/s" : "unthrottled", uploadKbps > 0 ? uploadKbps + " kbit/s" : "unthrottled",
+            packetLoss, cpuSlowdown);
+    }
+}
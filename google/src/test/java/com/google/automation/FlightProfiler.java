@@ -0,0 +1,188 @@
+package com.google.automation;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IInvokedMethod;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the suite with JDK Flight Recorder and attributes CPU and allocation to tests and framework parts
+ *
+ * When enabled, a recording with the JDK's profile settings (execution samples every 10-20 ms, allocation
+ * samples) starts with the suite, and every test phase is marked with a TestPhaseEvent: setUp, body and
+ * tearDown with the test's identity. At the end of the suite the recording is dumped to
+ * target/flight-recording.jfr, or the shard's results directory when sharded, and FlightRecordingAnalyzer
+ * writes the per-test, per-component and hotspot breakdown next to it as flight-profile.txt. The recording
+ * can be opened in JDK Mission Control as well, or analyzed again with FlightRecordingAnalyzer's main.
+ *
+ * Options:
+ *   -Djfr.record=true           record the suite (off by default)
+ *   -Djfr.settings=name         JFR settings to record with, "profile" or "default" (default profile)
+ *   -Djfr.top=n                 hotspots listed in the report (default 20)
+ */
+public final class FlightProfiler {
+    private static final Logger logger = LoggerFactory.getLogger(FlightProfiler.class);
+    private static final FlightProfiler INSTANCE = new FlightProfiler();
+    private static final String RECORDING_FILE = "flight-recording.jfr";
+    private static final String REPORT_FILE = "flight-profile.txt";
+
+    // setUps that ran on a thread and wait for the identity of the test they belong to; a failed one has no test
+    private final ThreadLocal<List<TestPhaseEvent>> pendingSetUps = ThreadLocal.withInitial(ArrayList::new);
+    private final ThreadLocal<TestPhaseEvent> current = new ThreadLocal<>();
+    private Recording recording;
+
+    private FlightProfiler() {
+    }
+
+    public static FlightProfiler shared() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("jfr.record");
+    }
+
+    /**
+     * Start recording, unless disabled or already recording
+     */
+    public synchronized void start() {
+        if (!isEnabled() || recording != null) {
+            return;
+        }
+        String settings = System.getProperty("jfr.settings", "profile");
+        try {
+            recording = new Recording(Configuration.getConfiguration(settings));
+        } catch (IOException | ParseException e) {
+            logger.warn("Cannot load JFR settings '" + settings + "', recording with the defaults: " + e.getMessage());
+            recording = new Recording();
+        }
+        recording.setName("Test Suite");
+        recording.enable(TestPhaseEvent.class);
+        // Sample often enough that short tests get samples of their own
+        recording.enable("jdk.ExecutionSample").withPeriod(Duration.ofMillis(10));
+        recording.setToDisk(true);
+        recording.start();
+        logger.info("Flight recording started with the '" + settings + "' settings");
+    }
+
+    /**
+     * Begin the event of a test or configuration method about to run on this thread
+     */
+    public void phaseStarted(IInvokedMethod invoked, ITestResult result) {
+        if (recording == null) {
+            return;
+        }
+        ITestNGMethod method = invoked.getTestMethod();
+        TestPhaseEvent event = new TestPhaseEvent();
+        event.phase = phase(method);
+        event.method = method.getRealClass().getSimpleName() + "." + method.getMethodName();
+        if (method.isTest()) {
+            identify(event, result);
+            for (TestPhaseEvent setUp : pendingSetUps.get()) {
+                setUp.testClass = event.testClass;
+                setUp.testMethod = event.testMethod;
+                setUp.commit();
+            }
+            pendingSetUps.get().clear();
+        } else if ("tearDown".equals(event.phase)) {
+            // The test a tearDown follows is still the current result; setUps only learn theirs when the test starts
+            identify(event, Reporter.getCurrentTestResult());
+        }
+        event.begin();
+        current.set(event);
+    }
+
+    /**
+     * End the event of the method that just ran on this thread
+     */
+    public void phaseFinished(ITestResult result) {
+        TestPhaseEvent event = current.get();
+        if (event == null) {
+            return;
+        }
+        current.remove();
+        event.end();
+        event.status = status(result.getStatus());
+        if ("setUp".equals(event.phase) && result.getStatus() != ITestResult.FAILURE) {
+            pendingSetUps.get().add(event);
+        } else {
+            event.commit();
+        }
+    }
+
+    /**
+     * Stop recording, dump it and analyze it
+     * Returns CPU samples and allocated kilobytes per framework component.
+     */
+    public synchronized Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        if (recording == null) {
+            return stats;
+        }
+        Path dir = ShardConfig.isSharded() ? ShardConfig.shardDir(ShardConfig.index()) : Paths.get("target");
+        Path file = dir.resolve(RECORDING_FILE);
+        try {
+            recording.stop();
+            Files.createDirectories(dir);
+            recording.dump(file);
+            logger.info("Flight recording written to " + file.toAbsolutePath());
+            FlightRecordingAnalyzer.Profile profile = FlightRecordingAnalyzer.analyze(file);
+            profile.writeReport(dir.resolve(REPORT_FILE), Integer.getInteger("jfr.top", 20));
+            stats.putAll(profile.componentStats());
+        } catch (IOException e) {
+            logger.warn("Cannot write flight recording " + file + ": " + e.getMessage());
+        } finally {
+            recording.close();
+            recording = null;
+        }
+        return stats;
+    }
+
+    private static void identify(TestPhaseEvent event, ITestResult result) {
+        if (result != null && result.getMethod().isTest()) {
+            event.testClass = result.getMethod().getRealClass().getSimpleName();
+            event.testMethod = result.getMethod().getMethodName();
+        }
+    }
+
+    private static String phase(ITestNGMethod method) {
+        if (method.isTest()) {
+            return "body";
+        } else if (method.isBeforeMethodConfiguration()) {
+            return "setUp";
+        } else if (method.isAfterMethodConfiguration()) {
+            return "tearDown";
+        } else if (method.isBeforeClassConfiguration() || method.isAfterClassConfiguration()) {
+            return "class";
+        }
+        return "suite";
+    }
+
+    private static String status(int status) {
+        switch (status) {
+            case ITestResult.SUCCESS:
+                return "passed";
+            case ITestResult.FAILURE:
+                return "failed";
+            case ITestResult.SKIP:
+                return "skipped";
+            default:
+                return "running";
+        }
+    }
+}
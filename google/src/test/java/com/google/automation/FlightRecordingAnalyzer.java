@@ -0,0 +1,336 @@
+package com.google.automation;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Attributes the CPU and allocation samples of a flight recording to tests and to framework components
+ *
+ * A sample belongs to the test whose TestPhaseEvent was open on the sampled thread at the time. Samples on
+ * test threads between phases (TestNG and listener work) count as "(between phases)", and samples on threads
+ * that never ran a phase, such as Selenium's HTTP client threads or the JVM's own, as "(other threads)".
+ * A sample's component is decided by its innermost frame outside the JDK: listeners (result printing and
+ * summaries), capabilities (BrowserStackConfig), logging, selenium-json, selenium-http, selenium, testng or
+ * test-code, and jdk when the whole stack is JDK code. Hotspots are the methods on top of the CPU samples
+ * and the allocation sites, the innermost non-JDK frame and the allocated class, with the most bytes.
+ *
+ * Usage: java -cp ... com.google.automation.FlightRecordingAnalyzer target/flight-recording.jfr [top]
+ */
+public final class FlightRecordingAnalyzer {
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecordingAnalyzer.class);
+    private static final String BETWEEN_PHASES = "(between phases)";
+    private static final String OTHER_THREADS = "(other threads)";
+
+    // Component of the innermost non-JDK frame, by class name prefix; the first match wins
+    private static final Map<String, String> COMPONENTS = new LinkedHashMap<>();
+
+    static {
+        for (String listener : List.of("TestResultsListener", "SuiteSummary", "RunDashboard", "FlightProfiler",
+                "FlightRecordingAnalyzer", "TestDurations")) {
+            COMPONENTS.put("com.google.automation." + listener, "listeners");
+        }
+        COMPONENTS.put("com.google.automation.BrowserStackConfig", "capabilities");
+        COMPONENTS.put("org.slf4j.", "logging");
+        COMPONENTS.put("org.openqa.selenium.json.", "selenium-json");
+        COMPONENTS.put("org.openqa.selenium.remote.http.", "selenium-http");
+        COMPONENTS.put("io.netty.", "selenium-http");
+        COMPONENTS.put("org.asynchttpclient.", "selenium-http");
+        COMPONENTS.put("org.openqa.selenium.", "selenium");
+        COMPONENTS.put("org.testng.", "testng");
+        COMPONENTS.put("com.beust.", "testng");
+        COMPONENTS.put("com.google.automation.", "test-code");
+    }
+
+    private FlightRecordingAnalyzer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: FlightRecordingAnalyzer <recording.jfr> [top]");
+            System.exit(2);
+        }
+        Profile profile = analyze(Paths.get(args[0]));
+        PrintWriter out = new PrintWriter(System.out, true);
+        profile.print(out, args.length > 1 ? Integer.parseInt(args[1]) : 20);
+        out.flush();
+    }
+
+    /**
+     * Read a recording and attribute its samples
+     */
+    public static Profile analyze(Path file) throws IOException {
+        Map<Long, List<RecordedEvent>> phasesByThread = new HashMap<>();
+        List<RecordedEvent> samples = new ArrayList<>();
+        try (RecordingFile recording = new RecordingFile(file)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                String type = event.getEventType().getName();
+                if ("com.google.automation.TestPhase".equals(type) && event.getThread() != null) {
+                    phasesByThread.computeIfAbsent(event.getThread().getJavaThreadId(), id -> new ArrayList<>()).add(event);
+                } else if ("jdk.ExecutionSample".equals(type) || "jdk.ObjectAllocationSample".equals(type)) {
+                    samples.add(event);
+                }
+            }
+        }
+        for (List<RecordedEvent> phases : phasesByThread.values()) {
+            phases.sort(Comparator.comparing(RecordedEvent::getStartTime));
+        }
+
+        Profile profile = new Profile();
+        for (List<RecordedEvent> phases : phasesByThread.values()) {
+            for (RecordedEvent phase : phases) {
+                Usage usage = profile.tests.computeIfAbsent(testOf(phase), t -> new Usage());
+                usage.wallNanos.merge(phase.getString("phase"), phase.getDuration().toNanos(), Long::sum);
+            }
+        }
+        for (RecordedEvent sample : samples) {
+            boolean cpu = "jdk.ExecutionSample".equals(sample.getEventType().getName());
+            RecordedThread thread = cpu ? sample.getThread("sampledThread") : sample.getThread();
+            RecordedEvent phase = thread != null ? phaseAt(phasesByThread.get(thread.getJavaThreadId()), sample.getStartTime()) : null;
+            String test = phase != null ? testOf(phase)
+                : thread != null && phasesByThread.containsKey(thread.getJavaThreadId()) ? BETWEEN_PHASES : OTHER_THREADS;
+            String phaseName = phase != null ? phase.getString("phase") : "-";
+            RecordedFrame frame = innermostNonJdkFrame(sample.getStackTrace());
+            String component = component(frame);
+            Usage testUsage = profile.tests.computeIfAbsent(test, t -> new Usage());
+            Usage componentUsage = profile.components.computeIfAbsent(component, c -> new Usage());
+            if (cpu) {
+                profile.cpuSamples++;
+                testUsage.count(phaseName, component, 1, 0);
+                componentUsage.count(phaseName, component, 1, 0);
+                RecordedFrame top = topFrame(sample.getStackTrace());
+                if (top != null) {
+                    profile.cpuHotspots.merge(method(top) + "  [" + component + "]", 1L, Long::sum);
+                }
+            } else {
+                long bytes = sample.getLong("weight");
+                profile.allocatedBytes += bytes;
+                testUsage.count(phaseName, component, 0, bytes);
+                componentUsage.count(phaseName, component, 0, bytes);
+                String allocated = sample.getClass("objectClass") != null ? sample.getClass("objectClass").getName() : "?";
+                profile.allocationHotspots.merge((frame != null ? method(frame) : "(JDK only)") + " -> " + allocated
+                    + "  [" + component + "]", bytes, Long::sum);
+            }
+        }
+        logger.info(String.format("Analyzed %s: %d CPU samples, %.1f MB sampled allocation, %d tests", file,
+            profile.cpuSamples, profile.allocatedBytes / 1048576.0,
+            profile.tests.keySet().stream().filter(t -> !t.startsWith("(")).count()));
+        return profile;
+    }
+
+    /**
+     * The phase open at a time on a thread, from its phases sorted by start
+     */
+    private static RecordedEvent phaseAt(List<RecordedEvent> phases, Instant time) {
+        if (phases == null) {
+            return null;
+        }
+        int low = 0;
+        int high = phases.size() - 1;
+        RecordedEvent found = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (phases.get(middle).getStartTime().isAfter(time)) {
+                high = middle - 1;
+            } else {
+                found = phases.get(middle);
+                low = middle + 1;
+            }
+        }
+        return found != null && !found.getEndTime().isBefore(time) ? found : null;
+    }
+
+    private static String testOf(RecordedEvent phase) {
+        String testClass = phase.getString("testClass");
+        if (testClass == null) {
+            // Class and suite configuration, or a setUp that failed before its test started
+            return "(configuration) " + phase.getString("method");
+        }
+        return testClass + "." + phase.getString("testMethod");
+    }
+
+    private static RecordedFrame topFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return null;
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame()) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private static RecordedFrame innermostNonJdkFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return null;
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame() && !isJdk(frame.getMethod().getType().getName())) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isJdk(String className) {
+        return className.startsWith("java.") || className.startsWith("javax.") || className.startsWith("jdk.")
+            || className.startsWith("sun.") || className.startsWith("com.sun.");
+    }
+
+    static String component(RecordedFrame frame) {
+        if (frame == null) {
+            return "jdk";
+        }
+        String className = frame.getMethod().getType().getName();
+        for (Map.Entry<String, String> entry : COMPONENTS.entrySet()) {
+            if (className.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return "other";
+    }
+
+    private static String method(RecordedFrame frame) {
+        String className = frame.getMethod().getType().getName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethod().getName();
+    }
+
+    /**
+     * CPU samples, sampled allocation and phase time of a test or component
+     */
+    static class Usage {
+        private long cpuSamples;
+        private long allocatedBytes;
+        private final Map<String, Long> samplesByPhase = new TreeMap<>();
+        private final Map<String, Long> samplesByComponent = new TreeMap<>();
+        private final Map<String, Long> wallNanos = new TreeMap<>();
+
+        private void count(String phase, String component, long samples, long bytes) {
+            cpuSamples += samples;
+            allocatedBytes += bytes;
+            if (samples > 0) {
+                samplesByPhase.merge(phase, samples, Long::sum);
+                samplesByComponent.merge(component, samples, Long::sum);
+            }
+        }
+
+        private String topComponent() {
+            return samplesByComponent.entrySet().stream().max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey).orElse("-");
+        }
+    }
+
+    /**
+     * The attributed recording
+     */
+    public static class Profile {
+        private final Map<String, Usage> tests = new TreeMap<>();
+        private final Map<String, Usage> components = new TreeMap<>();
+        private final Map<String, Long> cpuHotspots = new HashMap<>();
+        private final Map<String, Long> allocationHotspots = new HashMap<>();
+        private long cpuSamples;
+        private long allocatedBytes;
+
+        /**
+         * CPU samples and allocated kilobytes, in total and per component, for the suite summary
+         */
+        public Map<String, Long> componentStats() {
+            Map<String, Long> stats = new TreeMap<>();
+            stats.put("jfrCpuSamples", cpuSamples);
+            stats.put("jfrAllocatedKb", allocatedBytes / 1024);
+            for (Map.Entry<String, Usage> entry : components.entrySet()) {
+                stats.put("jfr." + entry.getKey() + ".cpuSamples", entry.getValue().cpuSamples);
+                stats.put("jfr." + entry.getKey() + ".allocatedKb", entry.getValue().allocatedBytes / 1024);
+            }
+            return stats;
+        }
+
+        public void writeReport(Path report, int top) throws IOException {
+            Files.createDirectories(report.toAbsolutePath().getParent());
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+                print(out, top);
+            }
+            logger.info("Flight profile written to " + report.toAbsolutePath());
+        }
+
+        public void print(PrintWriter out, int top) {
+            out.println(String.format("CPU samples: %d, sampled allocation: %.1f MB", cpuSamples, allocatedBytes / 1048576.0));
+
+            out.println();
+            out.println("Per test (setUp / body / tearDown CPU samples, wall ms from the phase events)");
+            out.println(String.format("%-60s %7s %6s %9s %17s %20s %s", "Test", "Samples", "CPU %", "Alloc MB",
+                "setUp/body/tdown", "wall setUp/body/tdown", "Top component"));
+            List<Map.Entry<String, Usage>> byCpu = new ArrayList<>(tests.entrySet());
+            byCpu.sort(Comparator.comparingLong((Map.Entry<String, Usage> e) -> e.getValue().cpuSamples)
+                .thenComparingLong(e -> e.getValue().allocatedBytes).reversed());
+            for (Map.Entry<String, Usage> entry : byCpu) {
+                Usage usage = entry.getValue();
+                out.println(String.format("%-60s %7d %5.1f%% %9.1f %17s %20s %s", entry.getKey(), usage.cpuSamples,
+                    percent(usage.cpuSamples, cpuSamples), usage.allocatedBytes / 1048576.0,
+                    usage.samplesByPhase.getOrDefault("setUp", 0L) + "/" + usage.samplesByPhase.getOrDefault("body", 0L)
+                        + "/" + usage.samplesByPhase.getOrDefault("tearDown", 0L),
+                    millis(usage.wallNanos.get("setUp")) + "/" + millis(usage.wallNanos.get("body")) + "/"
+                        + millis(usage.wallNanos.get("tearDown")),
+                    usage.topComponent()));
+            }
+
+            out.println();
+            out.println("Per component");
+            out.println(String.format("%-16s %7s %6s %9s %7s", "Component", "Samples", "CPU %", "Alloc MB", "Alloc %"));
+            List<Map.Entry<String, Usage>> componentsByCpu = new ArrayList<>(components.entrySet());
+            componentsByCpu.sort(Comparator.comparingLong((Map.Entry<String, Usage> e) -> e.getValue().cpuSamples).reversed());
+            for (Map.Entry<String, Usage> entry : componentsByCpu) {
+                Usage usage = entry.getValue();
+                out.println(String.format("%-16s %7d %5.1f%% %9.1f %6.1f%%", entry.getKey(), usage.cpuSamples,
+                    percent(usage.cpuSamples, cpuSamples), usage.allocatedBytes / 1048576.0,
+                    percent(usage.allocatedBytes, allocatedBytes)));
+            }
+
+            out.println();
+            out.println("Top " + top + " CPU hotspots (method on top of the stack)");
+            printTop(out, cpuHotspots, top, cpuSamples, false);
+
+            out.println();
+            out.println("Top " + top + " allocation sites (innermost non-JDK frame -> allocated class)");
+            printTop(out, allocationHotspots, top, allocatedBytes, true);
+        }
+
+        private static void printTop(PrintWriter out, Map<String, Long> counts, int top, long total, boolean bytes) {
+            counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(top)
+                .forEach(entry -> out.println(String.format("%10s %5.1f%%  %s",
+                    bytes ? String.format("%.1f MB", entry.getValue() / 1048576.0) : entry.getValue(),
+                    percent(entry.getValue(), total), entry.getKey())));
+        }
+
+        private static double percent(long part, long total) {
+            return total > 0 ? 100.0 * part / total : 0;
+        }
+
+        private static String millis(Long nanos) {
+            return nanos != null ? String.valueOf(Duration.ofNanos(nanos).toMillis()) : "-";
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.time.Duration;
+
+/**
+ * Page object for the Google homepage
+ */
+public class GoogleHomePage extends BasePage {
+    static final By SEARCH_BOX = By.name("q");
+    static final By LOGO = By.xpath("//img[contains(@alt, 'Google') or contains(@src, 'logo')]");
+
+    private final String url;
+
+    public GoogleHomePage(WebDriver driver, String url) {
+        this(driver, url, DEFAULT_TIMEOUT);
+    }
+
+    public GoogleHomePage(WebDriver driver, String url, Duration timeout) {
+        super(driver, timeout, siteOf(url));
+        this.url = url;
+    }
+
+    /**
+     * Navigate to the homepage
+     * The first visit of a session seeds consent cookies and clears any remaining consent dialog
+     */
+    public GoogleHomePage open() {
+        invalidateCache();
+        ConsentHandler.beforeNavigation(driver, url);
+        driver.navigate().to(url);
+        ConsentHandler.afterNavigation(driver);
+        return this;
+    }
+
+    /**
+     * Wait for the search box and return it
+     */
+    public WebElement searchBox() {
+        return waitForElement(SEARCH_BOX);
+    }
+
+    /**
+     * Click into the search box
+     */
+    public GoogleHomePage clickSearchBox() {
+        onElement(SEARCH_BOX, WebElement::click);
+        return this;
+    }
+
+    /**
+     * Clear the search box
+     */
+    public GoogleHomePage clearSearchBox() {
+        onElement(SEARCH_BOX, WebElement::clear);
+        return this;
+    }
+
+    /**
+     * Type text into the search box without submitting
+     */
+    public GoogleHomePage typeQuery(String query) {
+        onElement(SEARCH_BOX, element -> element.sendKeys(query));
+        return this;
+    }
+
+    /**
+     * Press RETURN in the search box and move to the results page
+     */
+    public GoogleResultsPage submitSearch() {
+        onElement(SEARCH_BOX, element -> element.sendKeys(Keys.RETURN));
+        invalidateCache();
+        return new GoogleResultsPage(driver, timeout, site);
+    }
+
+    /**
+     * Type a query and submit it
+     */
+    public GoogleResultsPage search(String query) {
+        typeQuery(query);
+        return submitSearch();
+    }
+
+    /**
+     * Check whether the search box is displayed
+     */
+    public boolean isSearchBoxDisplayed() {
+        return withElement(SEARCH_BOX, WebElement::isDisplayed);
+    }
+
+    /**
+     * Check whether the search box is enabled
+     */
+    public boolean isSearchBoxEnabled() {
+        return withElement(SEARCH_BOX, WebElement::isEnabled);
+    }
+
+    /**
+     * Get an attribute of the search box
+     */
+    public String getSearchBoxAttribute(String name) {
+        return withElement(SEARCH_BOX, element -> element.getAttribute(name));
+    }
+
+    /**
+     * Wait for the Google logo and return it
+     */
+    public WebElement logo() {
+        return waitForElement(LOGO);
+    }
+}
@@ -0,0 +1,86 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.time.Duration;
+
+/**
+ * Page object for the Google search results page
+ */
+public class GoogleResultsPage extends BasePage {
+    private static final String GOOGLE_SITE = "www.google.com";
+    static final By RESULTS_CONTAINER = By.id("rso");
+    static final By RESULT_STATS = By.id("result-stats");
+    static final By NEXT_PAGE = By.id("pnnext");
+
+    public GoogleResultsPage(WebDriver driver) {
+        this(driver, DEFAULT_TIMEOUT);
+    }
+
+    public GoogleResultsPage(WebDriver driver, Duration timeout) {
+        this(driver, timeout, GOOGLE_SITE);
+    }
+
+    public GoogleResultsPage(WebDriver driver, Duration timeout, String site) {
+        super(driver, timeout, site);
+    }
+
+    /**
+     * Wait until the URL carries the search query parameter
+     */
+    public GoogleResultsPage waitForQueryInUrl() {
+        await("url contains q=", ExpectedConditions.urlContains("q="));
+        return this;
+    }
+
+    /**
+     * Wait until the title contains the given text
+     */
+    public GoogleResultsPage waitForTitleContains(String text) {
+        // Keyed without the text so every query shares one history
+        await("title contains", ExpectedConditions.titleContains(text));
+        return this;
+    }
+
+    /**
+     * Wait for the results container and return it
+     */
+    public WebElement resultsContainer() {
+        return waitForElement(RESULTS_CONTAINER);
+    }
+
+    /**
+     * Get the result statistics element, or null if the page does not show one
+     */
+    public WebElement resultStats() {
+        return findIfPresent(RESULT_STATS);
+    }
+
+    /**
+     * Get the next page button, or null if there is only one page of results
+     */
+    public WebElement nextPageButton() {
+        return findIfPresent(NEXT_PAGE);
+    }
+
+    /**
+     * Click the next page button and wait for the next page of results
+     */
+    public GoogleResultsPage goToNextPage() {
+        onElement(NEXT_PAGE, WebElement::click);
+        invalidateCache();
+        await("url contains start=", ExpectedConditions.urlContains("start="));
+        return new GoogleResultsPage(driver, timeout, site);
+    }
+
+    /**
+     * Navigate back in browser history
+     */
+    public void navigateBack() {
+        invalidateCache();
+        driver.navigate().back();
+    }
+}
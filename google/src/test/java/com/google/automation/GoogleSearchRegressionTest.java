@@ -1,10 +1,9 @@
 package com.google.automation;
 
 import org.openqa.selenium.By;
-import org.openqa.selenium.Keys;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.ui.WebDriverWait;
-import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.testng.ITestResult;
+import org.testng.SkipException;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
@@ -20,12 +19,16 @@ import java.time.Duration;
 public class GoogleSearchRegressionTest extends BaseTest {
     private static final Logger logger = LoggerFactory.getLogger(GoogleSearchRegressionTest.class);
     private static final String GOOGLE_URL = "https://www.google.com";
-    private WebDriverWait wait;
+    private GoogleHomePage homePage;
 
     @BeforeMethod
-    public void setUp() {
-        super.setUp();
-        wait = new WebDriverWait(driver, Duration.ofSeconds(10));
+    public void setUp(ITestResult result, Object[] parameters) {
+        super.setUp(result, parameters);
+    }
+
+    @Override
+    protected void driverStarted() {
+        homePage = new GoogleHomePage(driver, GOOGLE_URL, Duration.ofSeconds(10));
     }
 
     @AfterMethod
@@ -38,19 +41,22 @@ public class GoogleSearchRegressionTest extends BaseTest {
      * Critical: Homepage must be accessible and load without errors
      */
     @Test(description = "REGRESSION: Verify Google homepage is accessible")
+    @DriverTier(DriverTier.Level.LIGHT)
     public void testRegressionHomepageAccessibility() {
         logger.info("Starting regression test: Homepage Accessibility");
         
-        driver.navigate().to(GOOGLE_URL);
+        homePage.open();
         
-        String pageTitle = driver.getTitle();
+        // Title and URL are read together in one round-trip
+        PageSnapshot snapshot = homePage.probe().run();
+        String pageTitle = snapshot.getTitle();
         logger.info("Homepage Title: " + pageTitle);
         
         assertNotNull(pageTitle, "Page title should not be null");
         assertTrue(pageTitle.contains("Google"), "Page title must contain 'Google'");
         
         // Check URL contains google.com (may have parameters or trailing slash)
-        String currentUrl = driver.getCurrentUrl().toLowerCase();
+        String currentUrl = snapshot.getCurrentUrl().toLowerCase();
         assertTrue(currentUrl.contains("google.com"), 
                   "Should be on Google homepage URL. Current: " + currentUrl);
         
@@ -65,14 +71,15 @@ public class GoogleSearchRegressionTest extends BaseTest {
     public void testRegressionSearchBoxPresent() {
         logger.info("Starting regression test: Search Box Presence");
         
-        driver.navigate().to(GOOGLE_URL);
-        
-        WebElement searchBox = wait.until(
-            ExpectedConditions.presenceOfElementLocated(By.name("q"))
-        );
+        homePage.open();
+        homePage.searchBox();
         
-        assertTrue(searchBox.isDisplayed(), "Search box must be displayed");
-        assertTrue(searchBox.isEnabled(), "Search box must be enabled");
+        homePage.probe()
+            .displayed(GoogleHomePage.SEARCH_BOX)
+            .enabled(GoogleHomePage.SEARCH_BOX)
+            .expect(s -> s.isDisplayed(GoogleHomePage.SEARCH_BOX), "Search box must be displayed")
+            .expect(s -> s.isEnabled(GoogleHomePage.SEARCH_BOX), "Search box must be enabled")
+            .verify();
         
         logger.info("PASSED: Search box is present and functional");
     }
@@ -85,22 +92,16 @@ public class GoogleSearchRegressionTest extends BaseTest {
     public void testRegressionBasicSearch() {
         logger.info("Starting regression test: Basic Search Functionality");
         
-        driver.navigate().to(GOOGLE_URL);
-        
-        WebElement searchBox = wait.until(
-            ExpectedConditions.presenceOfElementLocated(By.name("q"))
-        );
+        homePage.open();
         
         String searchTerm = "Google Search";
-        searchBox.clear();
-        searchBox.sendKeys(searchTerm);
-        searchBox.sendKeys(Keys.RETURN);
+        GoogleResultsPage resultsPage = homePage.clearSearchBox().search(searchTerm);
         
         // Wait for results page to load - URL should contain search parameter
-        wait.until(ExpectedConditions.urlContains("q="));
+        resultsPage.waitForQueryInUrl();
         
-        String resultPageTitle = driver.getTitle();
-        String currentUrl = driver.getCurrentUrl();
+        String resultPageTitle = resultsPage.getTitle();
+        String currentUrl = resultsPage.getCurrentUrl();
         logger.info("Search results page title: " + resultPageTitle);
         logger.info("Search results URL: " + currentUrl);
         
@@ -109,17 +110,15 @@ public class GoogleSearchRegressionTest extends BaseTest {
                   "Results page should have search query parameter");
         
         // Try to find result stats, but don't fail if not found
-        try {
-            WebElement resultStats = driver.findElement(By.id("result-stats"));
+        WebElement resultStats = resultsPage.resultStats();
+        if (resultStats != null) {
             if (resultStats.isDisplayed()) {
                 logger.info("Result statistics found and displayed");
             }
-        } catch (Exception e) {
+        } else {
             logger.info("Result statistics element not found, checking for results div instead");
             // Fallback: check for any search results
-            WebElement resultsDiv = wait.until(
-                ExpectedConditions.presenceOfElementLocated(By.id("rso"))
-            );
+            WebElement resultsDiv = resultsPage.resultsContainer();
             assertTrue(resultsDiv.isDisplayed(), "Search results should be displayed");
         }
         
@@ -134,31 +133,22 @@ public class GoogleSearchRegressionTest extends BaseTest {
     public void testRegressionSearchResultsDisplayed() {
         logger.info("Starting regression test: Search Results Display");
         
-        driver.navigate().to(GOOGLE_URL);
+        homePage.open();
         
-        WebElement searchBox = wait.until(
-            ExpectedConditions.presenceOfElementLocated(By.name("q"))
-        );
-        
-        searchBox.sendKeys("Automation Test");
-        searchBox.sendKeys(Keys.RETURN);
+        GoogleResultsPage resultsPage = homePage.search("Automation Test");
         
         // Wait for results page to load
-        wait.until(ExpectedConditions.urlContains("q="));
+        resultsPage.waitForQueryInUrl();
         
         // Try to find results container - may be in different locations
         try {
-            WebElement resultsContainer = wait.until(
-                ExpectedConditions.presenceOfElementLocated(By.id("rso"))
-            );
+            WebElement resultsContainer = resultsPage.resultsContainer();
             assertTrue(resultsContainer.isDisplayed(), "Results container must be displayed");
             logger.info("Results container found by id 'rso'");
         } catch (Exception e) {
             // Fallback: look for any results div
             logger.info("Results container 'rso' not found, looking for alternative selectors");
-            WebElement resultsDiv = wait.until(
-                ExpectedConditions.presenceOfElementLocated(By.xpath("//div[contains(@class, 'search')]"))
-            );
+            WebElement resultsDiv = resultsPage.waitForElement(By.xpath("//div[contains(@class, 'search')]"));
             assertTrue(resultsDiv.isDisplayed(), "Search results should be displayed");
             logger.info("Results found via alternative selector");
         }
@@ -174,19 +164,14 @@ public class GoogleSearchRegressionTest extends BaseTest {
     public void testRegressionResultNavigation() {
         logger.info("Starting regression test: Result Navigation");
         
-        driver.navigate().to(GOOGLE_URL);
-        
-        WebElement searchBox = wait.until(
-            ExpectedConditions.presenceOfElementLocated(By.name("q"))
-        );
+        homePage.open();
         
-        searchBox.sendKeys("Test Query");
-        searchBox.sendKeys(Keys.RETURN);
+        GoogleResultsPage resultsPage = homePage.search("Test Query");
         
         // Wait for results
-        wait.until(ExpectedConditions.presenceOfElementLocated(By.id("rso")));
+        resultsPage.resultsContainer();
         
-        String firstPageUrl = driver.getCurrentUrl();
+        String firstPageUrl = resultsPage.getCurrentUrl();
         logger.info("First page URL: " + firstPageUrl);
         
         assertTrue(firstPageUrl.contains("q=Test+Query") || firstPageUrl.contains("q=Test%20Query"),
@@ -194,12 +179,13 @@ public class GoogleSearchRegressionTest extends BaseTest {
         
         // Try to find and click next page button
         try {
-            WebElement nextButton = driver.findElement(By.id("pnnext"));
-            if (nextButton.isDisplayed() && nextButton.isEnabled()) {
-                nextButton.click();
-                wait.until(ExpectedConditions.urlContains("start="));
+            WebElement nextButton = resultsPage.nextPageButton();
+            if (nextButton == null) {
+                logger.info("Next button not available on this results page - test still passes");
+            } else if (nextButton.isDisplayed() && nextButton.isEnabled()) {
+                GoogleResultsPage nextPage = resultsPage.goToNextPage();
                 
-                String nextPageUrl = driver.getCurrentUrl();
+                String nextPageUrl = nextPage.getCurrentUrl();
                 logger.info("Next page URL: " + nextPageUrl);
                 
                 assertNotEquals(firstPageUrl, nextPageUrl, "Next page URL should be different from first page");
@@ -221,7 +207,7 @@ public class GoogleSearchRegressionTest extends BaseTest {
     public void testRegressionPageStability() {
         logger.info("Starting regression test: Page Stability");
         
-        driver.navigate().to(GOOGLE_URL);
+        homePage.open();
         
         // Give page time to load all resources
         try {
@@ -231,8 +217,9 @@ public class GoogleSearchRegressionTest extends BaseTest {
         }
         
         // Verify page is still accessible
-        String currentUrl = driver.getCurrentUrl();
-        String pageTitle = driver.getTitle();
+        PageSnapshot snapshot = homePage.probe().run();
+        String currentUrl = snapshot.getCurrentUrl();
+        String pageTitle = snapshot.getTitle();
         
         assertNotNull(currentUrl, "Current URL should not be null");
         assertNotNull(pageTitle, "Page title should not be null");
@@ -246,22 +233,69 @@ public class GoogleSearchRegressionTest extends BaseTest {
      * Critical: Search functionality must respond to user input correctly
      */
     @Test(description = "REGRESSION: Verify search input handling")
+    @DriverTier(DriverTier.Level.LIGHT)
     public void testRegressionSearchInputHandling() {
         logger.info("Starting regression test: Search Input Handling");
         
-        driver.navigate().to(GOOGLE_URL);
-        
-        WebElement searchBox = wait.until(
-            ExpectedConditions.presenceOfElementLocated(By.name("q"))
-        );
+        homePage.open();
         
         String testInput = "Regression Test 123";
-        searchBox.click();
-        searchBox.sendKeys(testInput);
+        homePage.clickSearchBox().typeQuery(testInput);
         
-        String inputValue = searchBox.getAttribute("value");
+        String inputValue = homePage.getSearchBoxAttribute("value");
         assertEquals(inputValue, testInput, "Search box should contain the input text");
         
         logger.info("PASSED: Search input handling test");
     }
+
+    /**
+     * Regression Test: Verify homepage stays within its network budget
+     * Performance: Request count, transferred bytes and third-party hosts are capped per page
+     */
+    @Test(description = "REGRESSION: Verify homepage network budget")
+    public void testRegressionHomepageNetworkBudget() throws InterruptedException {
+        logger.info("Starting regression test: Homepage Network Budget");
+        requireNetworkCapture();
+        
+        try (NetworkCapture capture = NetworkCapture.start(driver)) {
+            homePage.open();
+            capture.waitForIdle(Duration.ofMillis(500), Duration.ofSeconds(5));
+            
+            NetworkBudget.forPage("homepage").assertWithin(capture.getRequests());
+        }
+        
+        logger.info("PASSED: Homepage network budget test");
+    }
+
+    /**
+     * Regression Test: Verify results page stays within its network budget
+     * Performance: Only requests made after submitting the search are counted
+     */
+    @Test(description = "REGRESSION: Verify results page network budget")
+    public void testRegressionResultsPageNetworkBudget() throws InterruptedException {
+        logger.info("Starting regression test: Results Page Network Budget");
+        requireNetworkCapture();
+        
+        try (NetworkCapture capture = NetworkCapture.start(driver)) {
+            homePage.open();
+            homePage.searchBox();
+            capture.waitForIdle(Duration.ofMillis(500), Duration.ofSeconds(5));
+            capture.clear();
+            
+            GoogleResultsPage resultsPage = homePage.search("Network Budget");
+            resultsPage.waitForQueryInUrl();
+            resultsPage.resultsContainer();
+            capture.waitForIdle(Duration.ofMillis(500), Duration.ofSeconds(5));
+            
+            NetworkBudget.forPage("results").assertWithin(capture.getRequests());
+        }
+        
+        logger.info("PASSED: Results page network budget test");
+    }
+
+    private void requireNetworkCapture() {
+        if (!NetworkCapture.isSupported(driver)) {
+            throw new SkipException("Network capture needs a local Chrome session with DevTools");
+        }
+    }
 }
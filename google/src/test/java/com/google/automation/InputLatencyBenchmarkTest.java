@@ -0,0 +1,275 @@
+package com.google.automation;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.interactions.Actions;
+import org.openqa.selenium.support.ui.WebDriverWait;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures how quickly the search box responds to typing
+ * Each iteration opens the homepage and types a corpus term into the q box as one action sequence, with
+ * human-like gaps between keys and the occasional typo corrected with backspace. For every keystroke the
+ * page records the Event Timing entry of its keydown: input delay, processing time and presentation delay.
+ * Event Timing only reports events that take 16 ms or more, so faster keystrokes are measured from the
+ * event's timestamp to the end of its task and to the next frame instead. Suggestion time is from the
+ * keydown to the first time the option texts of the role=listbox suggestions differ from those showing at
+ * the keydown; only the listboxes are observed, so other changes to the page do not count. Runs against
+ * the local search server, which serves suggestions, unless -Dinput.baseUrl is given. Not part of the
+ * default suite. Run with: mvn test -Pload
+ *
+ * Options:
+ *   -Dinput.iterations=n      terms typed (default 20)
+ *   -Dinput.keyDelayMs=ms     mean gap between keystrokes (default 120)
+ *   -Dinput.typoRate=r        share of characters mistyped and corrected (default 0.05)
+ *   -Dinput.seed=n            seed for gaps and typos (default 42)
+ *   -Dinput.baseUrl=url       site to type into instead of the local search server
+ *
+ * Percentiles are checked against the "input" budget in latency-budgets.properties. Every keystroke is
+ * written to target/input-latency.csv.
+ */
+public class InputLatencyBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(InputLatencyBenchmarkTest.class);
+    private static final Path RESULTS_FILE = Paths.get("target", "input-latency.csv");
+    private static final String LISTBOX = "[role=listbox]";
+    private static final String OPTION = "[role=option]";
+    private static final List<String> METRICS = List.of("inputDelay", "processing", "presentation", "interaction", "suggestions");
+
+    // Installed once per page; keeps one record per keydown in window.__inputLatency
+    private static final String INSTALL_SCRIPT =
+        "var listboxes = arguments[0], options = arguments[1];"
+        + "if (window.__inputLatency) { return; }"
+        + "var state = window.__inputLatency = {keys: [], entries: []};"
+        + "function signature() {"
+        + "  var texts = [];"
+        + "  document.querySelectorAll(listboxes).forEach(function (box) {"
+        + "    box.querySelectorAll(options).forEach(function (option) { texts.push(option.textContent); });"
+        + "  });"
+        + "  return texts.join('\\n');"
+        + "}"
+        + "if (window.PerformanceObserver && (PerformanceObserver.supportedEntryTypes || []).indexOf('event') >= 0) {"
+        + "  new PerformanceObserver(function (list) {"
+        + "    list.getEntries().forEach(function (e) {"
+        + "      if (e.name === 'keydown') {"
+        + "        state.entries.push({start: e.startTime, processingStart: e.processingStart,"
+        + "          processingEnd: e.processingEnd, duration: e.duration});"
+        + "      }"
+        + "    });"
+        + "  }).observe({type: 'event', buffered: true, durationThreshold: 16});"
+        + "}"
+        + "window.addEventListener('keydown', function (event) {"
+        + "  var key = {key: event.key, ts: event.timeStamp, start: performance.now(), signature: signature()};"
+        + "  state.keys.push(key);"
+        + "  setTimeout(function () { key.processed = performance.now(); }, 0);"
+        + "  requestAnimationFrame(function () {"
+        + "    var channel = new MessageChannel();"
+        + "    channel.port1.onmessage = function () { key.painted = performance.now(); };"
+        + "    channel.port2.postMessage(null);"
+        + "  });"
+        + "}, true);"
+        + "function stamp() {"
+        + "  var current = signature(), now = performance.now();"
+        + "  if (current === '') { return; }"
+        + "  state.keys.forEach(function (key) {"
+        + "    if (key.suggested === undefined && key.signature !== current) { key.suggested = now; }"
+        + "  });"
+        + "}"
+        + "var watched = new WeakSet(), lists = new MutationObserver(stamp);"
+        + "function watch() {"
+        + "  document.querySelectorAll(listboxes).forEach(function (box) {"
+        + "    if (!watched.has(box)) {"
+        + "      watched.add(box);"
+        + "      lists.observe(box, {childList: true, subtree: true, characterData: true});"
+        + "      stamp();"
+        + "    }"
+        + "  });"
+        + "}"
+        + "watch();"
+        // Only finds listboxes the page adds later; other changes to the page stamp nothing
+        + "new MutationObserver(function (records) {"
+        + "  if (records.some(function (record) { return record.addedNodes.length > 0; })) { watch(); }"
+        + "}).observe(document.documentElement, {childList: true, subtree: true});";
+
+    // Null until every keystroke has painted, Event Timing had time to report and the last one got suggestions
+    private static final String COLLECT_SCRIPT =
+        "var state = window.__inputLatency;"
+        + "if (!state || state.keys.length === 0) { return null; }"
+        + "var last = state.keys[state.keys.length - 1], now = performance.now();"
+        + "var painted = state.keys.every(function (key) { return key.painted !== undefined && key.processed !== undefined; });"
+        + "if (!arguments[0] && (!painted || now - last.ts < 250 || (last.suggested === undefined && now - last.ts < 1000))) {"
+        + "  return null;"
+        + "}"
+        + "return state.keys.map(function (key) {"
+        + "  var entry = state.entries.filter(function (e) { return Math.abs(e.start - key.ts) < 1; })[0];"
+        + "  var row = {key: key.key};"
+        + "  if (entry) {"
+        + "    row.source = 'event-timing';"
+        + "    row.inputDelay = entry.processingStart - entry.start;"
+        + "    row.processing = entry.processingEnd - entry.processingStart;"
+        + "    row.presentation = entry.start + entry.duration - entry.processingEnd;"
+        + "    row.interaction = entry.duration;"
+        + "  } else if (key.painted !== undefined && key.processed !== undefined) {"
+        + "    row.source = 'frame';"
+        + "    row.inputDelay = key.start - key.ts;"
+        + "    row.processing = key.processed - key.start;"
+        + "    row.presentation = Math.max(0, key.painted - key.processed);"
+        + "    row.interaction = Math.max(key.painted, key.processed) - key.ts;"
+        + "  }"
+        + "  if (key.suggested !== undefined) { row.suggestions = key.suggested - key.ts; }"
+        + "  return row;"
+        + "});";
+
+    private LocalSearchServer server;
+    private String baseUrl;
+    private WebDriver driver;
+
+    @BeforeClass
+    public void setUpClass() {
+        String configuredUrl = System.getProperty("input.baseUrl");
+        if (configuredUrl == null || configuredUrl.isEmpty()) {
+            server = LocalSearchServer.start();
+            baseUrl = server.getBaseUrl();
+        } else {
+            baseUrl = configuredUrl;
+        }
+        driver = LocalDriverFactory.createDriver();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() {
+        if (driver != null) {
+            driver.quit();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Benchmark: per-keystroke input latency and suggestion time in the search box
+     */
+    @Test(description = "LOAD: Measure search box input latency", groups = "load")
+    public void testSearchInputLatency() throws IOException {
+        int iterations = Integer.getInteger("input.iterations", 20);
+        Random random = new Random(Long.getLong("input.seed", 42));
+        List<String> terms = terms(iterations);
+
+        Map<String, LatencyStats> stats = new LinkedHashMap<>();
+        for (String metric : METRICS) {
+            stats.put(metric, new LatencyStats());
+        }
+        int eventTimed = 0;
+        int keystrokes = 0;
+        Files.createDirectories(RESULTS_FILE.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(RESULTS_FILE))) {
+            out.println("iteration,term,key,source,inputDelayMs,processingMs,presentationMs,interactionMs,suggestionsMs");
+            for (int i = 0; i < iterations; i++) {
+                String term = terms.get(i % terms.size());
+                for (Map<String, Object> row : typeTerm(term, random)) {
+                    keystrokes++;
+                    if ("event-timing".equals(row.get("source"))) {
+                        eventTimed++;
+                    }
+                    for (String metric : METRICS) {
+                        if (row.get(metric) instanceof Number) {
+                            stats.get(metric).record(Math.round(((Number) row.get(metric)).doubleValue()));
+                        }
+                    }
+                    out.println(String.format("%d,\"%s\",\"%s\",%s,%s,%s,%s,%s,%s", i, term.replace("\"", "\"\""),
+                        String.valueOf(row.get("key")).replace("\"", "\"\""), row.getOrDefault("source", ""),
+                        millis(row.get("inputDelay")), millis(row.get("processing")), millis(row.get("presentation")),
+                        millis(row.get("interaction")), millis(row.get("suggestions"))));
+                }
+            }
+        }
+
+        logger.info(String.format("Typed %d terms, %d keystrokes, %d with Event Timing entries, into %s",
+            iterations, keystrokes, eventTimed, baseUrl));
+        for (Map.Entry<String, LatencyStats> entry : stats.entrySet()) {
+            logger.info(String.format("%-13s %s", entry.getKey(), entry.getValue().summary()));
+        }
+        logger.info("Per-keystroke latency written to " + RESULTS_FILE.toAbsolutePath());
+
+        assertTrue(stats.get("interaction").count() > 0, "Keystrokes should be measured");
+        LatencyBudget.named("input").assertWithin(stats);
+    }
+
+    /**
+     * Type one term as a single action sequence and return the page's per-keystroke measurements
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> typeTerm(String term, Random random) {
+        new GoogleHomePage(driver, baseUrl).open().clickSearchBox();
+        JavascriptExecutor js = (JavascriptExecutor) driver;
+        js.executeScript(INSTALL_SCRIPT, LISTBOX, OPTION);
+
+        double keyDelay = Long.getLong("input.keyDelayMs", 120);
+        double typoRate = Double.parseDouble(System.getProperty("input.typoRate", "0.05"));
+        Actions actions = new Actions(driver);
+        for (char c : term.toCharArray()) {
+            if (Character.isLetter(c) && random.nextDouble() < typoRate) {
+                actions.sendKeys(String.valueOf(neighbour(c, random))).pause(gap(keyDelay, random))
+                    .sendKeys(Keys.BACK_SPACE).pause(gap(keyDelay, random));
+            }
+            actions.sendKeys(String.valueOf(c)).pause(gap(keyDelay, random));
+        }
+        actions.perform();
+
+        List<Map<String, Object>> rows;
+        try {
+            rows = new WebDriverWait(driver, Duration.ofSeconds(5))
+                .until(d -> (List<Map<String, Object>>) js.executeScript(COLLECT_SCRIPT, false));
+        } catch (TimeoutException e) {
+            logger.warn("Keystrokes of '" + term + "' did not settle, keeping what was measured");
+            rows = (List<Map<String, Object>>) js.executeScript(COLLECT_SCRIPT, true);
+        }
+        return rows != null ? rows : new ArrayList<>();
+    }
+
+    private List<String> terms(int count) {
+        List<String> terms = new ArrayList<>();
+        try (SearchCorpus corpus = SearchCorpus.open()) {
+            while (terms.size() < count && corpus.hasNext()) {
+                terms.add((String) corpus.next()[0]);
+            }
+        }
+        assertFalse(terms.isEmpty(), "The search corpus should have terms to type");
+        return terms;
+    }
+
+    /**
+     * Gap between keystrokes: normally distributed around the mean, never under 30 ms
+     */
+    private static Duration gap(double mean, Random random) {
+        return Duration.ofMillis(Math.max(30, Math.round(mean + random.nextGaussian() * mean / 3)));
+    }
+
+    private static char neighbour(char c, Random random) {
+        char lower = Character.toLowerCase(c);
+        char typo = (char) (lower == 'a' ? 's' : lower == 'z' ? 'x' : lower + (random.nextBoolean() ? 1 : -1));
+        return Character.isUpperCase(c) ? Character.toUpperCase(typo) : typo;
+    }
+
+    private static String millis(Object value) {
+        return value instanceof Number ? String.format("%.1f", ((Number) value).doubleValue()) : "";
+    }
+}
@@ -0,0 +1,97 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Percentile limits for a set of latency metrics
+ * Defaults come from latency-budgets.properties on the classpath, as budget.name.metric.pNN=ms, and can be
+ * overridden or added with system properties of the same name, e.g. -Dbudget.input.interaction.p99=300
+ */
+public class LatencyBudget {
+    private static final Logger logger = LoggerFactory.getLogger(LatencyBudget.class);
+    private static final String BUDGETS_RESOURCE = "latency-budgets.properties";
+
+    private final String name;
+    // metric -> percentile -> limit in milliseconds
+    private final Map<String, Map<Double, Long>> limits;
+
+    public LatencyBudget(String name, Map<String, Map<Double, Long>> limits) {
+        this.name = name;
+        this.limits = limits;
+    }
+
+    /**
+     * Load the budget configured under a name
+     */
+    public static LatencyBudget named(String name) {
+        Properties settings = new Properties();
+        try (InputStream input = LatencyBudget.class.getClassLoader().getResourceAsStream(BUDGETS_RESOURCE)) {
+            if (input != null) {
+                settings.load(input);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + BUDGETS_RESOURCE, e);
+        }
+        settings.putAll(System.getProperties());
+
+        String prefix = "budget." + name + ".";
+        Map<String, Map<Double, Long>> limits = new TreeMap<>();
+        for (String key : settings.stringPropertyNames()) {
+            int percentileAt = key.lastIndexOf(".p");
+            if (!key.startsWith(prefix) || percentileAt < prefix.length()) {
+                continue;
+            }
+            try {
+                double percentile = Double.parseDouble(key.substring(percentileAt + 2));
+                long limit = Long.parseLong(settings.getProperty(key).trim());
+                limits.computeIfAbsent(key.substring(prefix.length(), percentileAt), m -> new TreeMap<>())
+                    .put(percentile, limit);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring latency budget " + key + "=" + settings.getProperty(key));
+            }
+        }
+        return new LatencyBudget(name, limits);
+    }
+
+    /**
+     * Check each metric's percentiles against its limits
+     * Metrics without samples are not checked. Throws an AssertionError listing every breach.
+     */
+    public void assertWithin(Map<String, LatencyStats> metrics) {
+        List<String> checks = new ArrayList<>();
+        List<String> breaches = new ArrayList<>();
+        for (Map.Entry<String, Map<Double, Long>> metric : limits.entrySet()) {
+            LatencyStats stats = metrics.get(metric.getKey());
+            if (stats == null || stats.count() == 0) {
+                continue;
+            }
+            for (Map.Entry<Double, Long> limit : metric.getValue().entrySet()) {
+                long actual = stats.percentile(limit.getKey());
+                String check = String.format("%s p%s %d/%d ms", metric.getKey(), percentileLabel(limit.getKey()),
+                    actual, limit.getValue());
+                checks.add(check);
+                if (actual > limit.getValue()) {
+                    breaches.add(check);
+                }
+            }
+        }
+        logger.info("Latency budget '" + name + "': " + (checks.isEmpty() ? "nothing to check" : String.join(", ", checks)));
+        if (!breaches.isEmpty()) {
+            throw new AssertionError("Latency budget '" + name + "' exceeded: " + String.join(", ", breaches));
+        }
+    }
+
+    private static String percentileLabel(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
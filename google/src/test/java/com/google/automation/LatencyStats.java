@@ -0,0 +1,75 @@
+package com.google.automation;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe collection of latency samples with percentile reporting
+ */
+public class LatencyStats {
+    private long[] samples = new long[64];
+    private int count = 0;
+    private long sum = 0;
+
+    /**
+     * Record one sample in milliseconds
+     */
+    public synchronized void record(long millis) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = millis;
+        sum += millis;
+    }
+
+    /**
+     * Get the number of samples
+     */
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Get the mean in milliseconds, or 0 if there are no samples
+     */
+    public synchronized double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Get a percentile (0-100) using the nearest-rank method, or 0 if there are no samples
+     */
+    public synchronized long percentile(double percentile) {
+        return percentile(sorted(), percentile);
+    }
+
+    /**
+     * Get the largest sample, or 0 if there are no samples
+     */
+    public long max() {
+        return percentile(100);
+    }
+
+    /**
+     * Format count, mean and p50/p90/p95/p99/max on one line
+     */
+    public synchronized String summary() {
+        long[] sorted = sorted();
+        return String.format("n=%d mean=%.1fms p50=%dms p90=%dms p95=%dms p99=%dms max=%dms",
+            count, mean(), percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 95),
+            percentile(sorted, 99), percentile(sorted, 100));
+    }
+
+    private long[] sorted() {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,47 @@
+package com.google.automation;
+
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.testng.internal.thread.ThreadTimeoutException;
+
+import static org.testng.Assert.*;
+
+/**
+ * TestNG's timeOut and expectedExceptions on tests that BaseTest runs on the light tier, outside the callback
+ * Each test passes only when TestNG gets the test's own outcome.
+ */
+public class LightTierTest extends BaseTest {
+
+    @BeforeMethod
+    public void setUp(ITestResult result, Object[] parameters) {
+        super.setUp(result, parameters);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        super.tearDown();
+    }
+
+    /**
+     * Test: The light tier's exception reaches TestNG unwrapped, and is matched with its message
+     */
+    @Test(description = "Honour expectedExceptions on the light tier", groups = DriverTiers.LIGHT_GROUP,
+        expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "expected on .*")
+    public void testExpectedException() {
+        assertTrue(driver instanceof HtmlUnitDriver, "not on the light tier: " + driver);
+        throw new IllegalStateException("expected on the light tier");
+    }
+
+    /**
+     * Test: A light test that runs past its timeOut fails with TestNG's timeout, not the interrupt
+     */
+    @Test(description = "Honour timeOut on the light tier", groups = DriverTiers.LIGHT_GROUP,
+        timeOut = 500, expectedExceptions = ThreadTimeoutException.class)
+    public void testTimeOut() throws InterruptedException {
+        assertTrue(driver instanceof HtmlUnitDriver, "not on the light tier: " + driver);
+        Thread.sleep(30_000);
+    }
+}
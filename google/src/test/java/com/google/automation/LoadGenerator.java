@@ -0,0 +1,268 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Replays SearchJourney with concurrent virtual users
+ * Users start evenly spread over the ramp-up period and loop the journey until the duration ends.
+ * Results are grouped in fixed time windows so throughput and step latency can be followed over time.
+ * After load.maxFailures journeys in a row fail (default 3), a user's session is replaced; a user whose fresh
+ * session fails as often stops. Overall throughput is measured over the time each user had a session, so
+ * the ramp-up and stopped users do not dilute it.
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final String[] STEPS = {
+        SearchJourney.STEP_HOMEPAGE, SearchJourney.STEP_TYPE, SearchJourney.STEP_SUBMIT,
+        SearchJourney.STEP_RESULTS, SearchJourney.STEP_NEXT_PAGE
+    };
+
+    private final int virtualUsers;
+    private final long rampUpMillis;
+    private final long durationMillis;
+    private final long windowMillis;
+    private final SearchJourney journey;
+    private final Supplier<WebDriver> sessionFactory;
+    private final List<String> queries;
+
+    private final Map<Long, Window> windows = new TreeMap<>();
+    private final AtomicInteger activeUsers = new AtomicInteger();
+    private final AtomicLong activeMillis = new AtomicLong();
+    private final LatencyStats journeyLatency = new LatencyStats();
+    private final Map<String, LatencyStats> stepLatency = new LinkedHashMap<>();
+    private long startMillis;
+
+    public LoadGenerator(int virtualUsers, long rampUpMillis, long durationMillis, long windowMillis,
+                         SearchJourney journey, Supplier<WebDriver> sessionFactory, List<String> queries) {
+        if (virtualUsers < 1 || queries.isEmpty()) {
+            throw new IllegalArgumentException("Load run needs at least one user and one query");
+        }
+        this.virtualUsers = virtualUsers;
+        this.rampUpMillis = rampUpMillis;
+        this.durationMillis = durationMillis;
+        this.windowMillis = windowMillis;
+        this.journey = journey;
+        this.sessionFactory = sessionFactory;
+        this.queries = queries;
+        for (String step : STEPS) {
+            stepLatency.put(step, new LatencyStats());
+        }
+    }
+
+    /**
+     * Run the load and block until every virtual user has finished
+     */
+    public void run() throws InterruptedException {
+        startMillis = System.currentTimeMillis();
+        List<Thread> users = new ArrayList<>();
+        for (int i = 0; i < virtualUsers; i++) {
+            long startDelay = virtualUsers == 1 ? 0 : rampUpMillis * i / (virtualUsers - 1);
+            int userIndex = i;
+            Thread user = new Thread(() -> runUser(userIndex, startDelay), "virtual-user-" + i);
+            user.setDaemon(true);
+            users.add(user);
+            user.start();
+        }
+        for (Thread user : users) {
+            user.join();
+        }
+    }
+
+    private void runUser(int userIndex, long startDelay) {
+        long endMillis = startMillis + durationMillis;
+        int maxFailures = Integer.getInteger("load.maxFailures", 3);
+        WebDriver driver = null;
+        long activeSince = 0;
+        try {
+            Thread.sleep(startDelay);
+            driver = sessionFactory.get();
+            activeSince = activate();
+            int iteration = 0;
+            int failures = 0;
+            boolean replaced = false;
+            while (System.currentTimeMillis() < endMillis) {
+                String query = queries.get((userIndex + iteration++) % queries.size());
+                long journeyStart = System.currentTimeMillis();
+                Map<String, Long> steps = new LinkedHashMap<>();
+                try {
+                    journey.run(driver, query, steps::put);
+                    long elapsed = System.currentTimeMillis() - journeyStart;
+                    journeyLatency.record(elapsed);
+                    steps.forEach((step, millis) -> stepLatency.get(step).record(millis));
+                    window(journeyStart).recordJourney(steps, activeUsers.get());
+                    failures = 0;
+                    replaced = false;
+                } catch (RuntimeException e) {
+                    logger.warn("Journey failed for user " + userIndex + ": " + e.getMessage());
+                    window(journeyStart).recordError(activeUsers.get());
+                    if (++failures < maxFailures) {
+                        continue;
+                    }
+                    // A broken session fails every journey at once; do not spin on it
+                    deactivate(activeSince);
+                    quit(driver, userIndex);
+                    driver = null;
+                    if (replaced) {
+                        logger.error("Virtual user " + userIndex + " stopped after " + failures
+                            + " failed journeys on a fresh session");
+                        return;
+                    }
+                    logger.warn("Replacing the session of user " + userIndex + " after " + failures
+                        + " failed journeys");
+                    driver = sessionFactory.get();
+                    activeSince = activate();
+                    failures = 0;
+                    replaced = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Virtual user " + userIndex + " could not start a session", e);
+        } finally {
+            if (driver != null) {
+                deactivate(activeSince);
+                quit(driver, userIndex);
+            }
+        }
+    }
+
+    /**
+     * Count a user whose session is ready and return the time it became active
+     */
+    private long activate() {
+        activeUsers.incrementAndGet();
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Stop counting a user and add the time it was active since the given moment
+     */
+    private void deactivate(long activeSince) {
+        activeUsers.decrementAndGet();
+        activeMillis.addAndGet(System.currentTimeMillis() - activeSince);
+    }
+
+    private static void quit(WebDriver driver, int userIndex) {
+        if (!ProcessWatchdog.quit(driver)) {
+            logger.warn("Session for user " + userIndex + " did not quit cleanly");
+        }
+    }
+
+    private Window window(long timestamp) {
+        long index = (timestamp - startMillis) / windowMillis;
+        synchronized (windows) {
+            return windows.computeIfAbsent(index, i -> new Window());
+        }
+    }
+
+    /**
+     * Get the total number of completed journeys
+     */
+    public int completedJourneys() {
+        return journeyLatency.count();
+    }
+
+    /**
+     * Log the overall and per-window results
+     */
+    public void logReport() {
+        // Journeys per second of a user with a session, scaled to all users running at once
+        double perUser = journeyLatency.count() / Math.max(0.001, activeMillis.get() / 1000.0);
+        logger.info(String.format("Load run: %d users, ramp-up %ds, duration %ds, %.0f user-seconds active",
+            virtualUsers, rampUpMillis / 1000, durationMillis / 1000, activeMillis.get() / 1000.0));
+        logger.info(String.format("Throughput: %.2f journeys/s with all users active (%.3f per user), "
+                + "journey latency %s",
+            perUser * virtualUsers, perUser, journeyLatency.summary()));
+        for (Map.Entry<String, LatencyStats> entry : stepLatency.entrySet()) {
+            logger.info(String.format("  %-10s %s", entry.getKey(), entry.getValue().summary()));
+        }
+
+        synchronized (windows) {
+            for (Map.Entry<Long, Window> entry : windows.entrySet()) {
+                Window window = entry.getValue();
+                long offset = entry.getKey() * windowMillis / 1000;
+                logger.info(String.format("  t+%4ds users=%d journeys=%d errors=%d throughput=%.2f/s results p95=%dms",
+                    offset, window.maxUsers, window.journeys, window.errors,
+                    window.journeys / (windowMillis / 1000.0),
+                    window.steps.get(SearchJourney.STEP_RESULTS).percentile(95)));
+            }
+        }
+    }
+
+    /**
+     * Write the per-window results as CSV
+     */
+    public void writeCsv(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            StringBuilder header = new StringBuilder("offsetSeconds,users,journeys,errors,throughputPerSecond");
+            for (String step : STEPS) {
+                header.append(',').append(step).append("P50,").append(step).append("P95,").append(step).append("P99");
+            }
+            out.println(header);
+
+            synchronized (windows) {
+                for (Map.Entry<Long, Window> entry : windows.entrySet()) {
+                    Window window = entry.getValue();
+                    StringBuilder row = new StringBuilder();
+                    row.append(entry.getKey() * windowMillis / 1000).append(',')
+                        .append(window.maxUsers).append(',')
+                        .append(window.journeys).append(',')
+                        .append(window.errors).append(',')
+                        .append(String.format("%.3f", window.journeys / (windowMillis / 1000.0)));
+                    for (String step : STEPS) {
+                        LatencyStats stats = window.steps.get(step);
+                        row.append(',').append(stats.percentile(50))
+                            .append(',').append(stats.percentile(95))
+                            .append(',').append(stats.percentile(99));
+                    }
+                    out.println(row);
+                }
+            }
+        }
+        logger.info("Load report written to " + file.toAbsolutePath());
+    }
+
+    /**
+     * Results for one time window
+     */
+    private static class Window {
+        private final Map<String, LatencyStats> steps = new LinkedHashMap<>();
+        private int journeys = 0;
+        private int errors = 0;
+        private int maxUsers = 0;
+
+        Window() {
+            for (String step : STEPS) {
+                steps.put(step, new LatencyStats());
+            }
+        }
+
+        synchronized void recordJourney(Map<String, Long> stepMillis, int users) {
+            journeys++;
+            maxUsers = Math.max(maxUsers, users);
+            stepMillis.forEach((step, millis) -> steps.get(step).record(millis));
+        }
+
+        synchronized void recordError(int users) {
+            errors++;
+            maxUsers = Math.max(maxUsers, users);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.http.ClientConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ChromeDriver that runs cleanup hooks after the session quits
+ * Lets the factory attach per-session resources (profile copies, watchdog entries) to the driver
+ * without every caller of quit() having to know about them. Lookups are reported to the LocatorAnalyzer.
+ */
+public class LocalChromeDriver extends ChromeDriver {
+    private static final Logger logger = LoggerFactory.getLogger(LocalChromeDriver.class);
+
+    private final List<Runnable> quitHooks = new CopyOnWriteArrayList<>();
+
+    public LocalChromeDriver(ChromeDriverService service, ChromeOptions options, ClientConfig clientConfig) {
+        super(service, options, clientConfig);
+    }
+
+    /**
+     * Register an action to run once the session has quit
+     */
+    public void addQuitHook(Runnable hook) {
+        quitHooks.add(hook);
+    }
+
+    /**
+     * Record every further command and response of this session to a file, see CommandLog
+     */
+    public void recordCommands(Path file) {
+        CommandRecorder recorder = new CommandRecorder(getCommandExecutor(), file);
+        recorder.sessionStarted(getSessionId().toString(), getCapabilities().asMap());
+        setCommandExecutor(recorder);
+    }
+
+    @Override
+    public WebElement findElement(By locator) {
+        WebElement element = super.findElement(locator);
+        LocatorAnalyzer.shared().observe(this, locator, true);
+        return element;
+    }
+
+    @Override
+    public List<WebElement> findElements(By locator) {
+        List<WebElement> elements = super.findElements(locator);
+        LocatorAnalyzer.shared().observe(this, locator, false);
+        return elements;
+    }
+
+    @Override
+    public void quit() {
+        try {
+            super.quit();
+        } finally {
+            for (Runnable hook : quitHooks) {
+                try {
+                    hook.run();
+                } catch (RuntimeException e) {
+                    logger.warn("Quit hook failed", e);
+                }
+            }
+            quitHooks.clear();
+        }
+    }
+}
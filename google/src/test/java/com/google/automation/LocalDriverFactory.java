@@ -0,0 +1,160 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.http.ClientConfig;
+import io.github.bonigarcia.wdm.WebDriverManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Creates local Chrome WebDriver sessions
+ * Shared by BaseTest, BrowserStackBaseTest and the pooled data-driven tests
+ */
+public final class LocalDriverFactory {
+    private static final Logger logger = LoggerFactory.getLogger(LocalDriverFactory.class);
+    private static volatile boolean driverResolved = false;
+
+    private LocalDriverFactory() {
+    }
+
+    /**
+     * Build the Chrome options used for every local session
+     */
+    public static ChromeOptions createChromeOptions() {
+        ChromeOptions options = new ChromeOptions();
+        // Disable notifications and other popups
+        options.addArguments("--no-first-run");
+        options.addArguments("--no-default-browser-check");
+        options.addArguments("--disable-blink-features=AutomationControlled");
+        options.setExperimentalOption("excludeSwitches", new String[]{"enable-logging"});
+        options.setExperimentalOption("useAutomationExtension", false);
+        if (Boolean.getBoolean("headless")) {
+            addHeadlessArguments(options);
+        }
+        return options;
+    }
+
+    /**
+     * Build options for a headless session
+     * Used where many sessions run at once and nobody watches the window
+     */
+    public static ChromeOptions createHeadlessOptions() {
+        ChromeOptions options = createChromeOptions();
+        if (!Boolean.getBoolean("headless")) {
+            addHeadlessArguments(options);
+        }
+        return options;
+    }
+
+    private static void addHeadlessArguments(ChromeOptions options) {
+        options.addArguments("--headless=new");
+        options.addArguments("--window-size=1366,768");
+        options.addArguments("--disable-gpu");
+        options.addArguments("--disable-extensions");
+    }
+
+    /**
+     * Start a local Chrome session with the default options
+     */
+    public static WebDriver createDriver() {
+        return createDriver(createChromeOptions());
+    }
+
+    /**
+     * Start a local Chrome session with the given options
+     */
+    public static WebDriver createDriver(ChromeOptions options) {
+        if (RecordReplayProxy.isEnabled()) {
+            RecordReplayProxy.shared().configure(options);
+        }
+        Path profileDir = null;
+        if (ProfileTemplate.isEnabled()) {
+            profileDir = ProfileTemplate.shared().newSessionDir();
+            options.addArguments("--user-data-dir=" + profileDir.toAbsolutePath());
+        }
+
+        LocalChromeDriver driver;
+        try {
+            driver = startAdmitted(options);
+        } catch (RuntimeException e) {
+            if (profileDir != null) {
+                ProfileTemplate.deleteRecursively(profileDir);
+            }
+            throw e;
+        }
+        if (profileDir != null) {
+            Path sessionProfile = profileDir;
+            driver.addQuitHook(() -> ProfileTemplate.deleteRecursively(sessionProfile));
+        }
+
+        try {
+            driver.manage().window().maximize();
+            // Page objects wait explicitly with learned timeouts, see WaitPolicy
+            driver.manage().timeouts().implicitlyWait(Duration.ZERO);
+        } catch (RuntimeException e) {
+            // The session is already running; without this it would outlive the failed setup
+            ProcessWatchdog.quit(driver);
+            throw e;
+        }
+        return driver;
+    }
+
+    /**
+     * Start Chrome with exactly the given options once the AdmissionController lets another browser start
+     * The session holds its admission until it quits.
+     */
+    static LocalChromeDriver startAdmitted(ChromeOptions options) {
+        AdmissionController admission = AdmissionController.shared();
+        try {
+            admission.admit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to start a browser", e);
+        }
+
+        LocalChromeDriver driver;
+        try {
+            driver = startChrome(options);
+        } catch (RuntimeException e) {
+            admission.abandoned();
+            throw e;
+        }
+        admission.started(driver);
+        driver.addQuitHook(() -> admission.finished(driver));
+        return driver;
+    }
+
+    /**
+     * Start Chrome with exactly the given options, without profile templates or timeouts
+     * The session's processes are registered with the ProcessWatchdog and every command is bounded
+     * by the watchdog's command timeout.
+     */
+    static LocalChromeDriver startChrome(ChromeOptions options) {
+        resolveDriverBinary();
+        ChromeDriverService service = ChromeDriverService.createDefaultService();
+        ClientConfig clientConfig = ClientConfig.defaultConfig().readTimeout(ProcessWatchdog.commandTimeout());
+        LocalChromeDriver driver = new LocalChromeDriver(service, options, clientConfig);
+        ProcessWatchdog.shared().register(driver, service.getUrl().getPort());
+        return driver;
+    }
+
+    /**
+     * Use WebDriverManager to download the correct ChromeDriver once per JVM
+     */
+    static void resolveDriverBinary() {
+        if (!driverResolved) {
+            synchronized (LocalDriverFactory.class) {
+                if (!driverResolved) {
+                    WebDriverManager.chromedriver().setup();
+                    driverResolved = true;
+                    logger.info("ChromeDriver binary resolved");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.google.automation;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in for the Google homepage and results page
+ * Serves the same element ids the tests rely on (q, rso, result-stats, pnnext) so
+ * data-driven and load scenarios can run at volume without hitting google.com.
+ * Typing in the search box shows suggestions from /complete in a role=listbox list, as Google does.
+ * Binds an ephemeral port on the loopback interface.
+ */
+public class LocalSearchServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LocalSearchServer.class);
+    private static final int RESULTS_PER_PAGE = 10;
+    private static final Gson GSON = new Gson();
+    private static final String[] SUGGESTION_SUFFIXES = {"", " tutorial", " example", " documentation", " vs", " download"};
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private LocalSearchServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Start the server on a free loopback port
+     */
+    public static LocalSearchServer start() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "local-search-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+            LocalSearchServer searchServer = new LocalSearchServer(server, executor);
+            server.createContext("/search", searchServer::handleSearch);
+            server.createContext("/complete", searchServer::handleComplete);
+            server.createContext("/", searchServer::handleHome);
+            server.setExecutor(executor);
+            server.start();
+            logger.info("Local search server started at " + searchServer.getBaseUrl());
+            return searchServer;
+        } catch (IOException e) {
+            throw new RuntimeException("Local search server failed to start", e);
+        }
+    }
+
+    /**
+     * Get the homepage URL
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        logger.info("Local search server stopped");
+    }
+
+    private void handleHome(HttpExchange exchange) throws IOException {
+        if (!"/".equals(exchange.getRequestURI().getPath())) {
+            send(exchange, 404, "<html><head><title>Not Found</title></head><body></body></html>");
+            return;
+        }
+        send(exchange, 200, "<!DOCTYPE html><html><head><title>Google</title></head><body>"
+            + "<img alt=\"Google\" src=\"/logo.png\" width=\"272\" height=\"92\">"
+            + searchForm("")
+            + "</body></html>");
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String query = params.getOrDefault("q", "");
+        int start = parseInt(params.get("start"));
+        String encoded = URLEncoder.encode(query, StandardCharsets.UTF_8);
+        String escaped = escape(query);
+
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html><html><head><title>").append(escaped).append(" - Google Search</title></head><body>");
+        html.append(searchForm(escaped));
+        html.append("<div id=\"result-stats\">About 1,000 results</div>");
+        html.append("<div id=\"search\"><div id=\"rso\">");
+        for (int i = 1; i <= RESULTS_PER_PAGE; i++) {
+            int rank = start + i;
+            html.append("<div class=\"g\"><a href=\"/result/").append(rank).append("?q=").append(encoded).append("\">")
+                .append("<h3>").append(escaped).append(" result ").append(rank).append("</h3></a></div>");
+        }
+        html.append("</div></div>");
+        html.append("<a id=\"pnnext\" href=\"/search?q=").append(encoded)
+            .append("&start=").append(start + RESULTS_PER_PAGE).append("\">Next</a>");
+        html.append("</body></html>");
+        send(exchange, 200, html.toString());
+    }
+
+    /**
+     * Suggestions for a prefix as a JSON array of strings
+     */
+    private void handleComplete(HttpExchange exchange) throws IOException {
+        String query = parseQuery(exchange.getRequestURI().getRawQuery()).getOrDefault("q", "").trim();
+        List<String> suggestions = new ArrayList<>();
+        if (!query.isEmpty()) {
+            for (String suffix : SUGGESTION_SUFFIXES) {
+                suggestions.add(query + suffix);
+            }
+        }
+        send(exchange, 200, "application/json; charset=utf-8", GSON.toJson(suggestions));
+    }
+
+    private static String searchForm(String value) {
+        return "<form action=\"/search\" method=\"get\">"
+            + "<input name=\"q\" type=\"text\" placeholder=\"Search Google or type a URL\" value=\"" + value + "\""
+            + " autocomplete=\"off\" aria-controls=\"suggestions\">"
+            + "<ul id=\"suggestions\" role=\"listbox\"></ul>"
+            + "</form>"
+            + "<script>(function () {"
+            + "var box = document.querySelector('input[name=q]'), list = document.getElementById('suggestions');"
+            + "if (!window.fetch || !box) { return; }"
+            + "box.addEventListener('input', function () {"
+            + "fetch('/complete?q=' + encodeURIComponent(box.value)).then(function (r) { return r.json(); })"
+            + ".then(function (items) {"
+            + "list.innerHTML = items.map(function (item) {"
+            + "return '<li role=\"option\">' + item.replace(/&/g, '&amp;').replace(/</g, '&lt;') + '</li>'; }).join('');"
+            + "}); });"
+            + "})();</script>";
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "text/html; charset=utf-8", body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
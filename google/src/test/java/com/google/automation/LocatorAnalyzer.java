@@ -0,0 +1,525 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures what the locators used by tests cost in the page and proposes faster equivalents
+ *
+ * Lookups through LocalChromeDriver, ElementWaits and ProbeBatch are reported here. The first time a
+ * locator is used on a page (origin and path), one script evaluates it repeatedly in the page for its
+ * mean evaluation time and match count. The same script evaluates candidate rewrites: a CSS selector
+ * for XPaths made of tag, attribute, contains(), starts-with() and translate() case-folding steps, and
+ * By.id when a single-element lookup lands on an element with a unique id. A candidate is only proposed
+ * if it matched the same elements (the same first element for findElement) and ran faster.
+ *
+ * A locator is flagged SLOW above the time threshold and BROAD when a single-element lookup matched more
+ * elements than the match threshold. At the end of the suite locators are ranked by total cost (uses
+ * times evaluation time) into target/locator-report.csv, or the shard's results directory when sharded.
+ *
+ * Options:
+ *   -Dlocators.analyze=true         analyze locators (off by default, it adds a script per locator and page)
+ *   -Dlocators.slowMicros=250       flag locators evaluating slower than this
+ *   -Dlocators.maxMatches=1         flag single-element lookups matching more elements than this
+ */
+public final class LocatorAnalyzer {
+    private static final Logger logger = LoggerFactory.getLogger(LocatorAnalyzer.class);
+    private static final LocatorAnalyzer INSTANCE = new LocatorAnalyzer();
+    private static final String REPORT_FILE = "locator-report.csv";
+
+    private static final String ANALYZE_SCRIPT =
+        "var locators = arguments[0], single = arguments[1];"
+        + Locators.FIND_ALL_FUNCTION
+        + "function measure(locator) {"
+        + "  var matches, runs = 0, start = performance.now(), elapsed;"
+        + "  do { matches = findAll(locator); runs++; elapsed = performance.now() - start; }"
+        + "  while (runs < 3 || (elapsed < 5 && runs < 200));"
+        + "  return {matches: matches, micros: elapsed * 1000 / runs};"
+        + "}"
+        + "function same(a, b) {"
+        + "  if (single) { return a.length > 0 && b.length > 0 && a[0] === b[0]; }"
+        + "  if (a.length !== b.length) { return false; }"
+        + "  for (var i = 0; i < a.length; i++) { if (a[i] !== b[i]) { return false; } }"
+        + "  return true;"
+        + "}"
+        + "var original = measure(locators[0]);"
+        + "var result = {count: original.matches.length, micros: original.micros, candidates: []};"
+        + "for (var i = 1; i < locators.length; i++) {"
+        + "  try {"
+        + "    var candidate = measure(locators[i]);"
+        + "    result.candidates.push({micros: candidate.micros, same: same(original.matches, candidate.matches)});"
+        + "  } catch (e) { result.candidates.push({micros: 0, same: false}); }"
+        + "}"
+        + "var first = original.matches[0];"
+        + "if (single && first && first.id && document.querySelectorAll('#' + CSS.escape(first.id)).length === 1) {"
+        + "  result.id = first.id;"
+        + "  result.idMicros = measure({using: 'css selector', value: '#' + CSS.escape(first.id)}).micros;"
+        + "}"
+        + "return result;";
+
+    private static final String QUOTED = "(?:'([^']*)'|\"([^\"]*)\")";
+    private static final Pattern STEP = Pattern.compile("([A-Za-z*][\\w-]*)((?:\\[.*\\])?)");
+    private static final Pattern ATTRIBUTE_EQUALS = Pattern.compile("@([\\w-]+)\\s*=\\s*" + QUOTED);
+    private static final Pattern ATTRIBUTE_PRESENT = Pattern.compile("@([\\w-]+)");
+    private static final Pattern CONTAINS = Pattern.compile("contains\\(\\s*@([\\w-]+)\\s*,\\s*" + QUOTED + "\\s*\\)");
+    private static final Pattern STARTS_WITH = Pattern.compile("starts-with\\(\\s*@([\\w-]+)\\s*,\\s*" + QUOTED + "\\s*\\)");
+    private static final Pattern FOLDED_CONTAINS = Pattern.compile(
+        "contains\\(\\s*translate\\(\\s*@([\\w-]+)\\s*,\\s*" + QUOTED + "\\s*,\\s*" + QUOTED + "\\s*\\)\\s*,\\s*" + QUOTED + "\\s*\\)");
+    private static final Pattern FOLDED_EQUALS = Pattern.compile(
+        "translate\\(\\s*@([\\w-]+)\\s*,\\s*" + QUOTED + "\\s*,\\s*" + QUOTED + "\\s*\\)\\s*=\\s*" + QUOTED);
+
+    private final Map<String, Finding> findings = new HashMap<>();
+    private final Set<String> analyzed = new HashSet<>();
+
+    /**
+     * Everything measured about one locator
+     */
+    private static class Finding {
+        private final String locator;
+        private final boolean single;
+        private long uses;
+        private int pages;
+        private long maxMatches;
+        private double micros;
+        private String suggestion;
+        private double suggestionMicros;
+
+        Finding(String locator, boolean single) {
+            this.locator = locator;
+            this.single = single;
+        }
+
+        double cost() {
+            return uses * micros;
+        }
+
+        boolean isSlow() {
+            return micros > Long.getLong("locators.slowMicros", 250);
+        }
+
+        boolean isBroad() {
+            return single && maxMatches > Long.getLong("locators.maxMatches", 1);
+        }
+
+        String flags() {
+            List<String> flags = new ArrayList<>();
+            if (isSlow()) {
+                flags.add("SLOW");
+            }
+            if (isBroad()) {
+                flags.add("BROAD");
+            }
+            return String.join(" ", flags);
+        }
+    }
+
+    private LocatorAnalyzer() {
+    }
+
+    public static LocatorAnalyzer shared() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("locators.analyze");
+    }
+
+    /**
+     * Report a lookup; single is true for lookups that use only the first match
+     * The locator is measured the first time it is seen on the current page.
+     */
+    public void observe(WebDriver driver, By locator, boolean single) {
+        // The analysis scripts would land in a command recording, or diverge from one
+        if (!isEnabled() || CommandLog.isEnabled()) {
+            return;
+        }
+        String name = locator.toString();
+        synchronized (this) {
+            findings.computeIfAbsent(name, n -> new Finding(n, single)).uses++;
+        }
+        if (!(driver instanceof JavascriptExecutor) || driver instanceof HtmlUnitDriver) {
+            return;
+        }
+        Map<String, Object> argument;
+        try {
+            argument = Locators.toScriptArgument(locator);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        try {
+            String page = page(driver.getCurrentUrl());
+            synchronized (this) {
+                if (!analyzed.add(name + " @ " + page)) {
+                    return;
+                }
+            }
+            analyze(driver, locator, name, argument, single);
+        } catch (WebDriverException e) {
+            logger.debug("Cannot analyze " + name + ": " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void analyze(WebDriver driver, By locator, String name, Map<String, Object> argument, boolean single) {
+        List<By> candidates = candidates(locator);
+        List<Map<String, Object>> arguments = new ArrayList<>();
+        arguments.add(argument);
+        for (By candidate : candidates) {
+            arguments.add(Locators.toScriptArgument(candidate));
+        }
+        Map<String, Object> result = (Map<String, Object>) ((JavascriptExecutor) driver)
+            .executeScript(ANALYZE_SCRIPT, arguments, single);
+
+        double micros = ((Number) result.get("micros")).doubleValue();
+        String best = null;
+        double bestMicros = micros;
+        List<Map<String, Object>> measured = (List<Map<String, Object>>) result.get("candidates");
+        for (int i = 0; i < candidates.size(); i++) {
+            Map<String, Object> candidate = measured.get(i);
+            double candidateMicros = ((Number) candidate.get("micros")).doubleValue();
+            if (Boolean.TRUE.equals(candidate.get("same")) && candidateMicros < bestMicros) {
+                best = candidates.get(i).toString();
+                bestMicros = candidateMicros;
+            }
+        }
+        if (result.get("id") != null && ((Number) result.get("idMicros")).doubleValue() < bestMicros) {
+            best = By.id((String) result.get("id")).toString();
+            bestMicros = ((Number) result.get("idMicros")).doubleValue();
+        }
+
+        synchronized (this) {
+            Finding finding = findings.get(name);
+            finding.pages++;
+            finding.maxMatches = Math.max(finding.maxMatches, ((Number) result.get("count")).longValue());
+            // Keep the most expensive page, and the suggestion measured on it
+            if (micros >= finding.micros) {
+                finding.micros = micros;
+                finding.suggestion = best;
+                finding.suggestionMicros = best != null ? bestMicros : 0;
+            }
+        }
+    }
+
+    /**
+     * Propose rewrites of a locator to evaluate against the same page
+     */
+    static List<By> candidates(By locator) {
+        if (!(locator instanceof By.Remotable)) {
+            return Collections.emptyList();
+        }
+        By.Remotable.Parameters parameters = ((By.Remotable) locator).getRemoteParameters();
+        if ("xpath".equals(parameters.using())) {
+            String css = xpathToCss(String.valueOf(parameters.value()));
+            if (css != null) {
+                return Collections.singletonList(By.cssSelector(css));
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Translate an XPath into an equivalent CSS selector, or null if it uses anything CSS cannot express
+     * Handles // and / steps of a tag name or * with predicates of @attr, @attr='v', contains(), starts-with()
+     * and translate() case folding, joined by and; or is supported in the last step.
+     */
+    static String xpathToCss(String xpath) {
+        String path = xpath.trim();
+        if (!path.startsWith("//")) {
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder();
+        List<String> last = null;
+        int i = 0;
+        while (i < path.length()) {
+            if (last != null) {
+                // Only the last step may expand into several alternatives
+                if (last.size() != 1) {
+                    return null;
+                }
+                prefix.append(last.get(0));
+            }
+            boolean descendant = path.startsWith("//", i);
+            if (!descendant && path.charAt(i) != '/') {
+                return null;
+            }
+            i += descendant ? 2 : 1;
+            if (prefix.length() > 0) {
+                prefix.append(descendant ? " " : " > ");
+            }
+            int end = stepEnd(path, i);
+            last = step(path.substring(i, end));
+            if (last == null) {
+                return null;
+            }
+            i = end;
+        }
+        if (last == null) {
+            return null;
+        }
+        List<String> selectors = new ArrayList<>();
+        for (String alternative : last) {
+            selectors.add(prefix + alternative);
+        }
+        return String.join(", ", selectors);
+    }
+
+    private static int stepEnd(String path, int start) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = start; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (quote != 0) {
+                quote = c == quote ? 0 : quote;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ']' || c == ')') {
+                depth--;
+            } else if (c == '/' && depth == 0) {
+                return i;
+            }
+        }
+        return path.length();
+    }
+
+    /**
+     * Translate one step into its CSS alternatives
+     */
+    private static List<String> step(String step) {
+        Matcher matcher = STEP.matcher(step.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        String tag = matcher.group(1);
+        List<String> alternatives = new ArrayList<>(Collections.singletonList("*".equals(tag) ? "" : tag));
+        for (String predicate : split(matcher.group(2), "]")) {
+            if (!predicate.startsWith("[")) {
+                return null;
+            }
+            String body = predicate.substring(1).trim();
+            List<String> ors = split(body, " or ");
+            List<String> ands = split(body, " and ");
+            if (ors.size() > 1 && ands.size() > 1) {
+                return null;
+            }
+            List<String> expanded = new ArrayList<>();
+            if (ors.size() > 1) {
+                for (String alternative : alternatives) {
+                    for (String atom : ors) {
+                        String css = atom(atom);
+                        if (css == null) {
+                            return null;
+                        }
+                        expanded.add(alternative + css);
+                    }
+                }
+            } else {
+                StringBuilder joined = new StringBuilder();
+                for (String atom : ands) {
+                    String css = atom(atom);
+                    if (css == null) {
+                        return null;
+                    }
+                    joined.append(css);
+                }
+                for (String alternative : alternatives) {
+                    expanded.add(alternative + joined);
+                }
+            }
+            alternatives = expanded;
+        }
+        for (int i = 0; i < alternatives.size(); i++) {
+            if (alternatives.get(i).isEmpty()) {
+                alternatives.set(i, "*");
+            }
+        }
+        return alternatives;
+    }
+
+    /**
+     * Split at a separator outside quotes, brackets and parentheses; a "]" separator is kept on each part
+     */
+    private static List<String> split(String text, String separator) {
+        List<String> parts = new ArrayList<>();
+        boolean closing = "]".equals(separator);
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                quote = c == quote ? 0 : quote;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (closing) {
+                if (c == '[') {
+                    depth++;
+                } else if (c == ']' && --depth == 0) {
+                    parts.add(text.substring(start, i).trim());
+                    start = i + 1;
+                }
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (depth == 0 && text.startsWith(separator, i)) {
+                parts.add(text.substring(start, i).trim());
+                start = i + separator.length();
+                i = start - 1;
+            }
+        }
+        String rest = text.substring(start).trim();
+        if (!rest.isEmpty()) {
+            parts.add(rest);
+        }
+        return parts;
+    }
+
+    /**
+     * Translate one predicate test into an attribute selector
+     */
+    private static String atom(String atom) {
+        atom = atom.trim();
+        Matcher matcher;
+        if ((matcher = FOLDED_CONTAINS.matcher(atom)).matches()) {
+            return foldsCase(matcher) ? attribute(matcher.group(1), "*=", quoted(matcher, 6), true) : null;
+        }
+        if ((matcher = FOLDED_EQUALS.matcher(atom)).matches()) {
+            return foldsCase(matcher) ? attribute(matcher.group(1), "=", quoted(matcher, 6), true) : null;
+        }
+        if ((matcher = CONTAINS.matcher(atom)).matches()) {
+            return attribute(matcher.group(1), "*=", quoted(matcher, 2), false);
+        }
+        if ((matcher = STARTS_WITH.matcher(atom)).matches()) {
+            return attribute(matcher.group(1), "^=", quoted(matcher, 2), false);
+        }
+        if ((matcher = ATTRIBUTE_EQUALS.matcher(atom)).matches()) {
+            return attribute(matcher.group(1), "=", quoted(matcher, 2), false);
+        }
+        if ((matcher = ATTRIBUTE_PRESENT.matcher(atom)).matches()) {
+            return "[" + matcher.group(1) + "]";
+        }
+        return null;
+    }
+
+    /**
+     * Check that a translate() lower-cases A-Z and is compared with a lower-case value, which is what [a="v" i] means
+     */
+    private static boolean foldsCase(Matcher matcher) {
+        String from = quoted(matcher, 2);
+        String value = quoted(matcher, 6);
+        return from.chars().filter(c -> c >= 'A' && c <= 'Z').distinct().count() == 26
+            && quoted(matcher, 4).equals(from.toLowerCase(Locale.ROOT))
+            && value.equals(value.toLowerCase(Locale.ROOT));
+    }
+
+    private static String quoted(Matcher matcher, int group) {
+        return matcher.group(group) != null ? matcher.group(group) : matcher.group(group + 1);
+    }
+
+    private static String attribute(String name, String operator, String value, boolean ignoreCase) {
+        // contains(@a, '') is true for every element, since a missing @a is '' too; [a*=""] matches nothing
+        if (value.isEmpty() && !"=".equals(operator)) {
+            return "";
+        }
+        return "[" + name + operator + "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\""
+            + (ignoreCase ? " i" : "") + "]";
+    }
+
+    private static String page(String url) {
+        try {
+            URI uri = URI.create(url);
+            return uri.getScheme() + "://" + uri.getAuthority() + uri.getPath();
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Start a new run, analyzing every locator again
+     */
+    public synchronized void reset() {
+        findings.clear();
+        analyzed.clear();
+    }
+
+    /**
+     * Write the ranked report and count flagged locators
+     */
+    public synchronized Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        List<Finding> ranked = new ArrayList<>();
+        for (Finding finding : findings.values()) {
+            if (finding.pages > 0) {
+                ranked.add(finding);
+            }
+        }
+        if (ranked.isEmpty()) {
+            return stats;
+        }
+        ranked.sort(Comparator.comparingDouble(Finding::cost).reversed());
+        Path report = ShardConfig.isSharded()
+            ? ShardConfig.shardDir(ShardConfig.index()).resolve(REPORT_FILE)
+            : Paths.get("target", REPORT_FILE);
+        try {
+            writeReport(report, ranked);
+        } catch (IOException e) {
+            logger.warn("Cannot write locator report " + report + ": " + e.getMessage());
+        }
+        for (int i = 0; i < Math.min(5, ranked.size()); i++) {
+            Finding finding = ranked.get(i);
+            logger.info(String.format("Locator #%d %s: %d uses, %.1f us, %d matches %s%s", i + 1, finding.locator,
+                finding.uses, finding.micros, finding.maxMatches, finding.flags(),
+                finding.suggestion != null ? String.format(" -> %s (%.1f us)", finding.suggestion, finding.suggestionMicros) : ""));
+        }
+        stats.put("locatorsAnalyzed", (long) ranked.size());
+        stats.put("locatorsSlow", ranked.stream().filter(Finding::isSlow).count());
+        stats.put("locatorsBroad", ranked.stream().filter(Finding::isBroad).count());
+        stats.put("locatorsWithFasterEquivalent", ranked.stream().filter(f -> f.suggestion != null).count());
+        return stats;
+    }
+
+    private static void writeReport(Path report, List<Finding> ranked) throws IOException {
+        Files.createDirectories(report.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+            out.println("rank,locator,uses,pages,maxMatches,micros,costMicros,flags,suggestion,suggestionMicros");
+            int rank = 1;
+            for (Finding finding : ranked) {
+                out.println(String.format("%d,%s,%d,%d,%d,%.1f,%.0f,%s,%s,%s", rank++, csv(finding.locator),
+                    finding.uses, finding.pages, finding.maxMatches, finding.micros, finding.cost(), finding.flags(),
+                    finding.suggestion != null ? csv(finding.suggestion) : "",
+                    finding.suggestion != null ? String.format("%.1f", finding.suggestionMicros) : ""));
+            }
+        }
+        logger.info("Locator report written to " + report.toAbsolutePath());
+    }
+
+    private static String csv(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,78 @@
+package com.google.automation;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * XPath to CSS translation of LocatorAnalyzer, checked without a browser
+ */
+public class LocatorAnalyzerTest {
+    private static final String FOLD = "'ABCDEFGHIJKLMNOPQRSTUVWXYZ','abcdefghijklmnopqrstuvwxyz'";
+
+    @DataProvider(name = "translatable")
+    public Object[][] translatable() {
+        return new Object[][]{
+            {"//input[@name='q']", "input[name=\"q\"]"},
+            {"//input[@name=\"q\"]", "input[name=\"q\"]"},
+            {"  //input[@name='q']  ", "input[name=\"q\"]"},
+            {"//*[@id='search']", "[id=\"search\"]"},
+            {"//textarea", "textarea"},
+            {"//div[@data-ved]", "div[data-ved]"},
+            {"//div[@id='search']//a", "div[id=\"search\"] a"},
+            {"//div/span[@class]", "div > span[class]"},
+            {"//a[contains(@href,'url?')]", "a[href*=\"url?\"]"},
+            {"//a[starts-with(@href, 'http')]", "a[href^=\"http\"]"},
+            {"//a[contains(@href, '')]", "a"},
+            {"//a[starts-with(@href, '')][@id='x']", "a[id=\"x\"]"},
+            {"//*[contains(@title, '')]", "*"},
+            {"//input[@name='q' and @type='text']", "input[name=\"q\"][type=\"text\"]"},
+            {"//input[@name='q'][@type='text']", "input[name=\"q\"][type=\"text\"]"},
+            {"//button[@name='a' or @name='b']", "button[name=\"a\"], button[name=\"b\"]"},
+            {"//div[@role='main']/a[@x='1' or @y='2']", "div[role=\"main\"] > a[x=\"1\"], div[role=\"main\"] > a[y=\"2\"]"},
+            {"//a[contains(translate(@aria-label," + FOLD + "),'search')]", "a[aria-label*=\"search\" i]"},
+            {"//a[translate(@title," + FOLD + ")='next']", "a[title=\"next\" i]"},
+            {"//a[@title=\"it's\"]", "a[title=\"it's\"]"},
+            {"//a[@title='say \"hi\"']", "a[title=\"say \\\"hi\\\"\"]"},
+            {"//a[@href='a/b[1]']", "a[href=\"a/b[1]\"]"},
+        };
+    }
+
+    @DataProvider(name = "untranslatable")
+    public Object[][] untranslatable() {
+        return new Object[][]{
+            {"/html/body"},
+            {"(//a)[1]"},
+            {"//div[1]"},
+            {"//h3[text()='Google']"},
+            {"//a[contains(text(),'x')]"},
+            {"//div/.."},
+            {"//div/following-sibling::span"},
+            {"//div[@a='1' or @b='2']/a"},
+            {"//input[@a='1' and @b='2' or @c='3']"},
+            {"//a[not(@href)]"},
+            // Partial or upper-casing translate() is not what the i flag means
+            {"//a[translate(@title,'ABC','abc')='next']"},
+            {"//a[translate(@title,'abcdefghijklmnopqrstuvwxyz','ABCDEFGHIJKLMNOPQRSTUVWXYZ')='NEXT']"},
+            {"//a[contains(translate(@title," + FOLD + "),'Next')]"},
+            {""},
+        };
+    }
+
+    /**
+     * Test: XPaths made of supported steps and predicates become the equivalent CSS selector
+     */
+    @Test(dataProvider = "translatable", description = "Translate supported XPaths to CSS")
+    public void testTranslates(String xpath, String css) {
+        assertEquals(LocatorAnalyzer.xpathToCss(xpath), css, xpath);
+    }
+
+    /**
+     * Test: XPaths CSS cannot express give no suggestion
+     */
+    @Test(dataProvider = "untranslatable", description = "Leave XPaths CSS cannot express alone")
+    public void testDoesNotTranslate(String xpath) {
+        assertNull(LocatorAnalyzer.xpathToCss(xpath), xpath);
+    }
+}
@@ -0,0 +1,90 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helpers for evaluating Selenium locators inside the page with executeScript
+ */
+public final class Locators {
+    /**
+     * JavaScript function resolving a locator argument produced by {@link #toScriptArgument(By)}
+     * Returns all matching elements as an array
+     */
+    public static final String FIND_ALL_FUNCTION =
+        "function findAll(locator, root) {"
+        + "  root = root || document;"
+        + "  if (locator.using === 'xpath') {"
+        + "    var snapshot = document.evaluate(locator.value, root, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+        + "    var nodes = [];"
+        + "    for (var i = 0; i < snapshot.snapshotLength; i++) { nodes.push(snapshot.snapshotItem(i)); }"
+        + "    return nodes;"
+        + "  }"
+        + "  return Array.prototype.slice.call(root.querySelectorAll(locator.value));"
+        + "}";
+
+    private Locators() {
+    }
+
+    /**
+     * Convert a locator into the {using, value} map understood by {@link #FIND_ALL_FUNCTION}
+     * Only CSS and XPath strategies can be evaluated in the page; By.id, By.name, By.tagName and
+     * By.className are rewritten as the CSS selectors the driver itself would send.
+     */
+    public static Map<String, Object> toScriptArgument(By locator) {
+        if (!(locator instanceof By.Remotable)) {
+            throw new IllegalArgumentException("Locator cannot be evaluated in the page: " + locator);
+        }
+        By.Remotable.Parameters parameters = ((By.Remotable) locator).getRemoteParameters();
+        String using = parameters.using();
+        String value = String.valueOf(parameters.value());
+        switch (using) {
+            case "css selector":
+            case "xpath":
+                break;
+            case "id":
+                using = "css selector";
+                value = "#" + cssEscape(value);
+                break;
+            case "class name":
+                using = "css selector";
+                value = "." + cssEscape(value);
+                break;
+            case "name":
+                using = "css selector";
+                value = "*[name=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]";
+                break;
+            case "tag name":
+                using = "css selector";
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported locator strategy '" + using + "': " + locator);
+        }
+
+        Map<String, Object> argument = new HashMap<>();
+        argument.put("using", using);
+        argument.put("value", value);
+        return argument;
+    }
+
+    /**
+     * Escape an identifier for use in a CSS selector
+     */
+    private static String cssEscape(String identifier) {
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            boolean leadingDigit = i == 0 && Character.isDigit(c);
+            if (leadingDigit) {
+                escaped.append('\\').append(Integer.toHexString(c)).append(' ');
+            } else if (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c > 0x7f) {
+                escaped.append(c);
+            } else {
+                escaped.append('\\').append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
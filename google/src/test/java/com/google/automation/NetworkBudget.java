@@ -0,0 +1,153 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Request, byte and third-party host limits for one page
+ * Defaults come from network-budgets.properties on the classpath and can be overridden with
+ * system properties of the same name, e.g. -Dbudget.homepage.maxRequests=40
+ */
+public class NetworkBudget {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkBudget.class);
+    private static final String BUDGETS_RESOURCE = "network-budgets.properties";
+
+    private final String page;
+    private final int maxRequests;
+    private final long maxTransferredBytes;
+    private final int maxThirdPartyHosts;
+    private final List<String> firstPartyDomains;
+
+    public NetworkBudget(String page, int maxRequests, long maxTransferredBytes, int maxThirdPartyHosts,
+                         List<String> firstPartyDomains) {
+        this.page = page;
+        this.maxRequests = maxRequests;
+        this.maxTransferredBytes = maxTransferredBytes;
+        this.maxThirdPartyHosts = maxThirdPartyHosts;
+        this.firstPartyDomains = firstPartyDomains;
+    }
+
+    /**
+     * Load the budget configured for a page
+     */
+    public static NetworkBudget forPage(String page) {
+        Properties defaults = new Properties();
+        try (InputStream input = NetworkBudget.class.getClassLoader().getResourceAsStream(BUDGETS_RESOURCE)) {
+            if (input != null) {
+                defaults.load(input);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + BUDGETS_RESOURCE, e);
+        }
+
+        String prefix = "budget." + page + ".";
+        int maxRequests = Integer.parseInt(setting(defaults, prefix + "maxRequests", "100"));
+        long maxBytes = Long.parseLong(setting(defaults, prefix + "maxTransferredBytes", "5000000"));
+        int maxThirdParty = Integer.parseInt(setting(defaults, prefix + "maxThirdPartyHosts", "5"));
+        List<String> firstParty = Arrays.stream(setting(defaults, prefix + "firstPartyDomains", "").split(","))
+            .map(String::trim)
+            .filter(domain -> !domain.isEmpty())
+            .collect(Collectors.toList());
+        return new NetworkBudget(page, maxRequests, maxBytes, maxThirdParty, firstParty);
+    }
+
+    private static String setting(Properties defaults, String key, String fallback) {
+        return System.getProperty(key, defaults.getProperty(key, fallback));
+    }
+
+    /**
+     * Get the distinct hosts that are not covered by the first-party domains
+     */
+    public Set<String> thirdPartyHosts(List<NetworkRequest> requests) {
+        Set<String> hosts = new TreeSet<>();
+        for (NetworkRequest request : requests) {
+            String host = request.getHost();
+            if (!host.isEmpty() && !isFirstParty(host)) {
+                hosts.add(host);
+            }
+        }
+        return hosts;
+    }
+
+    private boolean isFirstParty(String host) {
+        for (String domain : firstPartyDomains) {
+            if (host.equals(domain) || host.endsWith("." + domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check the requests against the budget
+     * Throws an AssertionError with a per-type, per-host and largest-request breakdown on any breach
+     */
+    public void assertWithin(List<NetworkRequest> requests) {
+        long totalBytes = requests.stream().mapToLong(NetworkRequest::getTransferredBytes).sum();
+        Set<String> thirdParty = thirdPartyHosts(requests);
+
+        List<String> breaches = new ArrayList<>();
+        if (requests.size() > maxRequests) {
+            breaches.add("requests " + requests.size() + " > " + maxRequests);
+        }
+        if (totalBytes > maxTransferredBytes) {
+            breaches.add("transferred bytes " + totalBytes + " > " + maxTransferredBytes);
+        }
+        if (thirdParty.size() > maxThirdPartyHosts) {
+            breaches.add("third-party hosts " + thirdParty.size() + " > " + maxThirdPartyHosts);
+        }
+
+        logger.info(String.format("Network budget '%s': %d/%d requests, %d/%d bytes, %d/%d third-party hosts",
+            page, requests.size(), maxRequests, totalBytes, maxTransferredBytes, thirdParty.size(), maxThirdPartyHosts));
+        if (!breaches.isEmpty()) {
+            throw new AssertionError("Network budget '" + page + "' exceeded: " + String.join(", ", breaches)
+                + "\n" + breakdown(requests, thirdParty));
+        }
+    }
+
+    private static String breakdown(List<NetworkRequest> requests, Set<String> thirdParty) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("By type:\n");
+        appendGroups(sb, requests, NetworkRequest::getResourceType);
+
+        sb.append("By host:\n");
+        appendGroups(sb, requests, request -> request.getHost().isEmpty() ? "(inline)" : request.getHost());
+
+        sb.append("Third-party hosts: ").append(thirdParty).append('\n');
+
+        sb.append("Largest requests:\n");
+        requests.stream()
+            .sorted(Comparator.comparingLong(NetworkRequest::getTransferredBytes).reversed())
+            .limit(10)
+            .forEach(request -> sb.append("  ").append(request).append('\n'));
+        return sb.toString();
+    }
+
+    private static void appendGroups(StringBuilder sb, List<NetworkRequest> requests,
+                                     Function<NetworkRequest, String> key) {
+        Map<String, long[]> groups = new TreeMap<>();
+        for (NetworkRequest request : requests) {
+            long[] totals = groups.computeIfAbsent(key.apply(request), k -> new long[2]);
+            totals[0]++;
+            totals[1] += request.getTransferredBytes();
+        }
+        groups.forEach((name, totals) ->
+            sb.append(String.format("  %-40s %4d requests %10d B%n", name, totals[0], totals[1])));
+    }
+}
@@ -0,0 +1,208 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Records every network request of a local Chrome session through DevTools
+ * Uses raw CDP method names rather than a versioned binding so it works with whichever Chrome is installed.
+ * Events reach the capture through the session's DevToolsEvents, so closing it drops its handlers and what
+ * it recorded, and leaves other captures and traces on the session running. The Network domain is only
+ * disabled when the last open capture on the session closes.
+ *
+ * <pre>
+ * try (NetworkCapture capture = NetworkCapture.start(driver)) {
+ *     homePage.open();
+ *     capture.waitForIdle(Duration.ofMillis(500), Duration.ofSeconds(5));
+ *     NetworkBudget.forPage("homepage").assertWithin(capture.getRequests());
+ * }
+ * </pre>
+ */
+public class NetworkCapture implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkCapture.class);
+
+    private final DevTools devTools;
+    private final DevToolsEvents events;
+    private final List<Runnable> subscriptions = new ArrayList<>();
+    private final Map<String, NetworkRequest> active = new ConcurrentHashMap<>();
+    private final List<NetworkRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile long lastEventNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    private NetworkCapture(DevTools devTools) {
+        this.devTools = devTools;
+        this.events = DevToolsEvents.of(devTools);
+    }
+
+    /**
+     * Check whether the driver exposes DevTools (local Chrome does, remote sessions do not)
+     */
+    public static boolean isSupported(WebDriver driver) {
+        return driver instanceof HasDevTools;
+    }
+
+    /**
+     * Start recording requests on the driver's current tab
+     */
+    public static NetworkCapture start(WebDriver driver) {
+        if (!isSupported(driver)) {
+            throw new UnsupportedOperationException("Network capture needs a local Chrome session with DevTools");
+        }
+        DevTools devTools = ((HasDevTools) driver).getDevTools();
+        devTools.createSessionIfThereIsNotOne();
+        NetworkCapture capture = new NetworkCapture(devTools);
+        capture.register();
+        try {
+            capture.events.enable(devTools, "Network");
+        } catch (RuntimeException e) {
+            capture.unsubscribe();
+            throw e;
+        }
+        logger.info("Network capture started");
+        return capture;
+    }
+
+    /**
+     * Get a copy of all requests recorded so far, in start order
+     */
+    public List<NetworkRequest> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    /**
+     * Forget everything recorded so far, e.g. before moving on to the next page
+     */
+    public void clear() {
+        synchronized (requests) {
+            requests.clear();
+            active.clear();
+        }
+    }
+
+    /**
+     * Wait until no request is in flight and no event arrived for the quiet period
+     * Returns false if the network did not settle within the maximum wait
+     */
+    public boolean waitForIdle(Duration quietPeriod, Duration maxWait) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        while (System.nanoTime() < deadline) {
+            boolean quiet = System.nanoTime() - lastEventNanos >= quietPeriod.toNanos();
+            if (quiet && active.isEmpty()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        logger.info("Network did not settle, " + active.size() + " requests still in flight");
+        return false;
+    }
+
+    /**
+     * Stop recording and drop what was recorded
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        unsubscribe();
+        clear();
+        try {
+            events.disable(devTools, "Network");
+        } catch (RuntimeException e) {
+            logger.warn("Failed to disable network domain", e);
+        }
+    }
+
+    private void unsubscribe() {
+        subscriptions.forEach(Runnable::run);
+        subscriptions.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void register() {
+        listen("Network.requestWillBeSent", params -> {
+            String requestId = (String) params.get("requestId");
+            Map<String, Object> request = (Map<String, Object>) params.get("request");
+            double timestamp = number(params.get("timestamp"));
+            NetworkRequest previous = active.remove(requestId);
+            Map<String, Object> redirect = (Map<String, Object>) params.get("redirectResponse");
+            if (previous != null && redirect != null) {
+                // A redirect reuses the request id; the hop that was redirected is complete
+                previous.setStatus((int) number(redirect.get("status")));
+                previous.finish(timestamp, (long) number(redirect.get("encodedDataLength")));
+            }
+            NetworkRequest entry = new NetworkRequest(requestId, (String) request.get("url"), timestamp);
+            entry.setResourceType((String) params.get("type"));
+            active.put(requestId, entry);
+            requests.add(entry);
+        });
+
+        listen("Network.responseReceived", params -> {
+            NetworkRequest entry = active.get((String) params.get("requestId"));
+            if (entry == null) {
+                return;
+            }
+            Map<String, Object> response = (Map<String, Object>) params.get("response");
+            entry.setResourceType((String) params.get("type"));
+            entry.setStatus((int) number(response.get("status")));
+            if (Boolean.TRUE.equals(response.get("fromServiceWorker"))) {
+                entry.setCacheStatus(NetworkRequest.CacheStatus.SERVICE_WORKER);
+            } else if (Boolean.TRUE.equals(response.get("fromPrefetchCache"))) {
+                entry.setCacheStatus(NetworkRequest.CacheStatus.PREFETCH_CACHE);
+            } else if (Boolean.TRUE.equals(response.get("fromDiskCache"))) {
+                entry.setCacheStatus(NetworkRequest.CacheStatus.DISK_CACHE);
+            }
+        });
+
+        listen("Network.requestServedFromCache", params -> {
+            NetworkRequest entry = active.get((String) params.get("requestId"));
+            if (entry != null) {
+                entry.setCacheStatus(NetworkRequest.CacheStatus.MEMORY_CACHE);
+            }
+        });
+
+        listen("Network.loadingFinished", params -> {
+            NetworkRequest entry = active.remove((String) params.get("requestId"));
+            if (entry != null) {
+                entry.finish(number(params.get("timestamp")), (long) number(params.get("encodedDataLength")));
+            }
+        });
+
+        listen("Network.loadingFailed", params -> {
+            NetworkRequest entry = active.remove((String) params.get("requestId"));
+            if (entry != null) {
+                entry.fail(number(params.get("timestamp")), (String) params.get("errorText"));
+            }
+        });
+    }
+
+    /**
+     * Listen to a Network event until the capture is closed
+     */
+    private void listen(String method, Consumer<Map<String, Object>> handler) {
+        subscriptions.add(events.subscribe(devTools, method, params -> {
+            if (!closed) {
+                lastEventNanos = System.nanoTime();
+                handler.accept(params);
+            }
+        }));
+    }
+
+    private static double number(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
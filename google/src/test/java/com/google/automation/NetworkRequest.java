@@ -0,0 +1,119 @@
+package com.google.automation;
+
+import java.net.URI;
+
+/**
+ * One network request observed through DevTools
+ */
+public class NetworkRequest {
+    /**
+     * Where the response came from
+     */
+    public enum CacheStatus {
+        NETWORK, MEMORY_CACHE, DISK_CACHE, SERVICE_WORKER, PREFETCH_CACHE
+    }
+
+    private final String requestId;
+    private final String url;
+    private final double startTimestamp;
+    private String resourceType = "Other";
+    private int status = 0;
+    private long transferredBytes = 0;
+    private double endTimestamp = -1;
+    private CacheStatus cacheStatus = CacheStatus.NETWORK;
+    private String failure;
+
+    NetworkRequest(String requestId, String url, double startTimestamp) {
+        this.requestId = requestId;
+        this.url = url;
+        this.startTimestamp = startTimestamp;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Get the host, or an empty string for data: and similar URLs
+     */
+    public String getHost() {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the bytes transferred over the wire, including headers
+     */
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    /**
+     * Get the time from request start to the end of loading, or -1 if it has not finished
+     */
+    public long getDurationMillis() {
+        return endTimestamp < 0 ? -1 : Math.round((endTimestamp - startTimestamp) * 1000);
+    }
+
+    public CacheStatus getCacheStatus() {
+        return cacheStatus;
+    }
+
+    /**
+     * Get the failure text, or null if the request did not fail
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    public boolean isFinished() {
+        return endTimestamp >= 0;
+    }
+
+    void setResourceType(String resourceType) {
+        if (resourceType != null) {
+            this.resourceType = resourceType;
+        }
+    }
+
+    void setStatus(int status) {
+        this.status = status;
+    }
+
+    void setCacheStatus(CacheStatus cacheStatus) {
+        this.cacheStatus = cacheStatus;
+    }
+
+    void finish(double timestamp, long transferredBytes) {
+        this.endTimestamp = timestamp;
+        this.transferredBytes = transferredBytes;
+    }
+
+    void fail(double timestamp, String failure) {
+        this.endTimestamp = timestamp;
+        this.failure = failure;
+    }
+
+    @Override
+    public String toString() {
+        String shownUrl = url.length() > 120 ? url.substring(0, 117) + "..." : url;
+        return String.format("%-10s %3d %8d B %5d ms %-14s %s",
+            resourceType, status, transferredBytes, getDurationMillis(), cacheStatus, shownUrl);
+    }
+}
@@ -0,0 +1,81 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+
+import java.util.Map;
+
+/**
+ * Result of a {@link ProbeBatch} round-trip
+ */
+public class PageSnapshot {
+    private final String title;
+    private final String currentUrl;
+    private final Map<By, Boolean> presence;
+    private final Map<String, Object> values;
+
+    PageSnapshot(String title, String currentUrl, Map<By, Boolean> presence, Map<String, Object> values) {
+        this.title = title;
+        this.currentUrl = currentUrl;
+        this.presence = presence;
+        this.values = values;
+    }
+
+    /**
+     * Get the page title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Get the current URL
+     */
+    public String getCurrentUrl() {
+        return currentUrl;
+    }
+
+    /**
+     * Check whether a probed element was present
+     */
+    public boolean isPresent(By locator) {
+        return requireProbed(presence.get(locator), locator);
+    }
+
+    /**
+     * Check whether a probed element was displayed
+     * An absent element counts as not displayed
+     */
+    public boolean isDisplayed(By locator) {
+        return Boolean.TRUE.equals(value("displayed", locator, null));
+    }
+
+    /**
+     * Check whether a probed element was enabled
+     * An absent element counts as not enabled
+     */
+    public boolean isEnabled(By locator) {
+        return Boolean.TRUE.equals(value("enabled", locator, null));
+    }
+
+    /**
+     * Get a probed attribute, or null if the element or attribute was absent
+     */
+    public String getAttribute(By locator, String name) {
+        return (String) value("attribute", locator, name);
+    }
+
+    private Object value(String kind, By locator, String name) {
+        String key = ProbeBatch.key(kind, locator, name);
+        if (!values.containsKey(key)) {
+            throw new IllegalStateException("Not probed: " + key);
+        }
+        return values.get(key);
+    }
+
+    private static boolean requireProbed(Boolean value, By locator) {
+        if (value == null) {
+            throw new IllegalStateException("Not probed: " + locator);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,475 @@
+package com.google.automation;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.Command;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.json.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures a DevTools performance trace around part of a test and breaks down where the main thread spent its time
+ *
+ * The trace is started with the JS sampling profiler on and returned as a stream, which is copied chunk by
+ * chunk to target/traces/TestClass.method-label.json. The saved trace is then read event by event with a
+ * streaming JSON reader, so its size does not matter. For the renderer main threads the summary reports:
+ * long tasks (50 ms or more) and the total blocking time they caused, self time by category (script,
+ * style, layout, paint, loading, other) and the JS functions with the most self time in the profiler
+ * samples. The summary is attached to the test result and printed with it, and the long task counts are
+ * added to the test's metrics. Open the saved trace in the Chrome DevTools Performance panel to inspect it.
+ *
+ * When tracing is off, or the session has no DevTools (remote, HtmlUnit, tabs of a shared browser),
+ * start returns a trace that does nothing, so tests do not need to check. The trace's handler is
+ * subscribed through the session's DevToolsEvents and dropped when it ends, so it can run inside a
+ * NetworkCapture.
+ *
+ * <pre>
+ * try (PerformanceTrace trace = PerformanceTrace.start(driver, "results")) {
+ *     resultsPage = homePage.search("Selenium WebDriver");
+ *     resultsPage.resultsContainer();
+ * }
+ * </pre>
+ *
+ * Options:
+ *   -Dtrace.enabled=true            capture traces where tests ask for them (off by default)
+ *   -Dtrace.dir=target/traces       where raw traces are saved
+ *   -Dtrace.topFunctions=10         JS functions listed per trace
+ */
+public class PerformanceTrace implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PerformanceTrace.class);
+    public static final String ATTRIBUTE = "performanceTraces";
+    public static final String LONG_TASKS = "traceLongTasks";
+    public static final String BLOCKING_MS = "traceBlockingMs";
+    private static final long LONG_TASK_MICROS = 50_000;
+    private static final int READ_CHUNK = 1 << 20;
+
+    private static final List<String> CATEGORIES = List.of(
+        "disabled-by-default-devtools.timeline", "devtools.timeline", "toplevel", "v8.execute", "blink.user_timing",
+        "disabled-by-default-devtools.timeline.frame", "disabled-by-default-v8.cpu_profiler", "__metadata");
+
+    private static final List<String> SELF_TIME_CATEGORIES = List.of("script", "style", "layout", "paint", "loading", "other");
+    private static final int OTHER = SELF_TIME_CATEGORIES.indexOf("other");
+
+    // Trace event names as the DevTools Performance panel groups them
+    private static final Map<String, String> EVENT_CATEGORIES = new HashMap<>();
+
+    static {
+        for (String name : List.of("EvaluateScript", "v8.compile", "v8.compileModule", "v8.evaluateModule",
+                "v8.produceCache", "FunctionCall", "TimerFire", "EventDispatch", "FireAnimationFrame",
+                "FireIdleCallback", "RunMicrotasks", "XHRReadyStateChange", "XHRLoad", "MajorGC", "MinorGC",
+                "V8.GCScavenger", "V8.GCFinalizeMC", "BlinkGC.AtomicPhase")) {
+            EVENT_CATEGORIES.put(name, "script");
+        }
+        for (String name : List.of("UpdateLayoutTree", "RecalculateStyles", "ParseAuthorStyleSheet")) {
+            EVENT_CATEGORIES.put(name, "style");
+        }
+        for (String name : List.of("Layout", "UpdateLayerTree", "HitTest")) {
+            EVENT_CATEGORIES.put(name, "layout");
+        }
+        for (String name : List.of("PrePaint", "Paint", "PaintImage", "Layerize", "CompositeLayers", "Commit",
+                "Decode Image", "RasterTask")) {
+            EVENT_CATEGORIES.put(name, "paint");
+        }
+        for (String name : List.of("ParseHTML", "ResourceReceivedData", "ResourceFinish")) {
+            EVENT_CATEGORIES.put(name, "loading");
+        }
+        for (String name : List.of("RunTask", "ThreadControllerImpl::RunTask")) {
+            EVENT_CATEGORIES.put(name, "other");
+        }
+    }
+
+    private final DevTools devTools;
+    private final String label;
+    private final CompletableFuture<String> stream = new CompletableFuture<>();
+    private Runnable unsubscribe = () -> { };
+
+    private PerformanceTrace(DevTools devTools, String label) {
+        this.devTools = devTools;
+        this.label = label;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("trace.enabled");
+    }
+
+    /**
+     * Start tracing the driver's current tab; label names the part of the test being traced
+     */
+    public static PerformanceTrace start(WebDriver driver, String label) {
+        if (!isEnabled() || !(driver instanceof HasDevTools)) {
+            return new PerformanceTrace(null, label);
+        }
+        DevTools devTools = ((HasDevTools) driver).getDevTools();
+        devTools.createSessionIfThereIsNotOne();
+        PerformanceTrace trace = new PerformanceTrace(devTools, label);
+        trace.unsubscribe = DevToolsEvents.of(devTools).subscribe(devTools, "Tracing.tracingComplete",
+            params -> trace.stream.complete((String) params.get("stream")));
+        try {
+            devTools.send(new Command<Void>("Tracing.start", Map.of(
+                "transferMode", "ReturnAsStream",
+                "traceConfig", Map.of("recordMode", "recordAsMuchAsPossible", "includedCategories", CATEGORIES))));
+        } catch (RuntimeException e) {
+            trace.unsubscribe.run();
+            throw e;
+        }
+        logger.info("Tracing " + label);
+        return trace;
+    }
+
+    /**
+     * Stop tracing, save the trace and attach its summary to the current test's result
+     */
+    @Override
+    public void close() {
+        if (devTools == null) {
+            return;
+        }
+        ITestResult result = Reporter.getCurrentTestResult();
+        String test = result != null ? TestDurations.key(result.getMethod()) : "trace";
+        Path file = Paths.get(System.getProperty("trace.dir", "target/traces"))
+            .resolve((test + "-" + label).replaceAll("[^\\w.-]", "_") + ".json");
+        try {
+            devTools.send(new Command<Void>("Tracing.end", Map.of()));
+            save(stream.get(30, TimeUnit.SECONDS), file);
+        } catch (Exception e) {
+            logger.warn("Cannot capture trace " + label + ": " + e);
+            return;
+        } finally {
+            unsubscribe.run();
+        }
+        try {
+            Summary summary = analyze(file, label, Integer.getInteger("trace.topFunctions", 10));
+            logger.info("Trace " + label + " saved to " + file + "\n" + summary);
+            TestMetrics.add(LONG_TASKS, summary.longTasks);
+            TestMetrics.add(BLOCKING_MS, summary.blockingMicros / 1000);
+            if (result != null) {
+                attach(result, summary);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot analyze trace " + file + ": " + e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void attach(ITestResult result, Summary summary) {
+        Object summaries = result.getAttribute(ATTRIBUTE);
+        if (!(summaries instanceof List)) {
+            summaries = new ArrayList<Summary>();
+            result.setAttribute(ATTRIBUTE, summaries);
+        }
+        ((List<Summary>) summaries).add(summary);
+    }
+
+    /**
+     * Copy the trace stream to a file chunk by chunk
+     */
+    @SuppressWarnings("unchecked")
+    private void save(String handle, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Command<Map<String, Object>> read = new Command<>("IO.read", Map.of("handle", handle, "size", READ_CHUNK),
+            input -> (Map<String, Object>) input.read(Json.MAP_TYPE));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            while (true) {
+                Map<String, Object> chunk = devTools.send(read);
+                String data = (String) chunk.get("data");
+                if (data != null) {
+                    out.write(Boolean.TRUE.equals(chunk.get("base64Encoded"))
+                        ? Base64.getDecoder().decode(data) : data.getBytes(StandardCharsets.UTF_8));
+                }
+                if (Boolean.TRUE.equals(chunk.get("eof"))) {
+                    break;
+                }
+            }
+        } finally {
+            devTools.send(new Command<Void>("IO.close", Map.of("handle", handle)));
+        }
+    }
+
+    /**
+     * Read a saved trace one event at a time and summarize its renderer main threads
+     * Accepts both trace formats: a bare event array and an object with a traceEvents array.
+     */
+    static Summary analyze(Path file, String label, int topFunctions) throws IOException {
+        TraceParser parser = new TraceParser();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(in)) {
+            reader.setLenient(true);
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("traceEvents".equals(reader.nextName())) {
+                        parser.readEvents(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            } else {
+                parser.readEvents(reader);
+            }
+        }
+        return parser.summarize(label, topFunctions);
+    }
+
+    /**
+     * What one trace shows about the main thread
+     */
+    public static class Summary {
+        private final String label;
+        private long longTasks;
+        private long blockingMicros;
+        private long longestTaskMicros;
+        private long busyMicros;
+        private final Map<String, Long> categoryMicros = new LinkedHashMap<>();
+        private final List<Map.Entry<String, Long>> topFunctions = new ArrayList<>();
+
+        Summary(String label) {
+            this.label = label;
+        }
+
+        public long getLongTasks() {
+            return longTasks;
+        }
+
+        public long getBlockingMillis() {
+            return blockingMicros / 1000;
+        }
+
+        /**
+         * Get main-thread self time in milliseconds per category
+         */
+        public Map<String, Long> getCategoryMillis() {
+            Map<String, Long> millis = new LinkedHashMap<>();
+            categoryMicros.forEach((category, micros) -> millis.put(category, micros / 1000));
+            return millis;
+        }
+
+        /**
+         * Get the JS functions with the most self time, in milliseconds, most expensive first
+         */
+        public List<Map.Entry<String, Long>> getTopFunctions() {
+            List<Map.Entry<String, Long>> millis = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : topFunctions) {
+                millis.add(Map.entry(entry.getKey(), entry.getValue() / 1000));
+            }
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%s: %d ms main thread busy, %d long tasks (longest %d ms), %d ms blocking",
+                label, busyMicros / 1000, longTasks, longestTaskMicros / 1000, blockingMicros / 1000));
+            sb.append("\n  self time:");
+            categoryMicros.forEach((category, micros) -> sb.append(' ').append(category).append(' ').append(micros / 1000).append(" ms"));
+            for (Map.Entry<String, Long> function : topFunctions) {
+                sb.append(String.format("%n  %6.1f ms  %s", function.getValue() / 1000.0, function.getKey()));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Accumulates what is needed from each event; only compact slices of timeline events are kept
+     */
+    private static class TraceParser {
+        private final Map<String, List<long[]>> slices = new HashMap<>();
+        private final Map<String, Map<String, long[]>> openSlices = new HashMap<>();
+        private final Set<String> mainThreads = new HashSet<>();
+        private final Set<Long> mainProcesses = new HashSet<>();
+        private final Map<String, Profile> profiles = new HashMap<>();
+
+        /**
+         * Sampling profile of one thread, delivered in chunks
+         */
+        private static class Profile {
+            private long pid;
+            private final Map<Long, String> functions = new HashMap<>();
+            private final Map<String, Long> selfMicros = new HashMap<>();
+            private long lastNode = -1;
+        }
+
+        void readEvents(JsonReader reader) throws IOException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                JsonElement event = JsonParser.parseReader(reader);
+                if (event.isJsonObject()) {
+                    event(event.getAsJsonObject());
+                }
+            }
+            reader.endArray();
+        }
+
+        private void event(JsonObject event) {
+            String name = string(event, "name");
+            String phase = string(event, "ph");
+            String thread = number(event, "pid") + ":" + number(event, "tid");
+            if ("M".equals(phase) && "thread_name".equals(name)) {
+                JsonObject args = event.getAsJsonObject("args");
+                if (args != null && "CrRendererMain".equals(string(args, "name"))) {
+                    mainThreads.add(thread);
+                    mainProcesses.add(number(event, "pid"));
+                }
+            } else if ("P".equals(phase) || "ProfileChunk".equals(name) || "Profile".equals(name)) {
+                profile(event);
+            } else if (EVENT_CATEGORIES.containsKey(name)) {
+                slice(event, name, phase, thread);
+            }
+        }
+
+        private void slice(JsonObject event, String name, String phase, String thread) {
+            long ts = number(event, "ts");
+            String category = EVENT_CATEGORIES.get(name);
+            if ("X".equals(phase)) {
+                add(thread, ts, number(event, "dur"), category);
+            } else if ("B".equals(phase)) {
+                openSlices.computeIfAbsent(thread, t -> new HashMap<>()).put(name, new long[]{ts});
+            } else if ("E".equals(phase)) {
+                long[] open = openSlices.getOrDefault(thread, Collections.emptyMap()).remove(name);
+                if (open != null) {
+                    add(thread, open[0], ts - open[0], category);
+                }
+            }
+        }
+
+        private void add(String thread, long ts, long dur, String category) {
+            // Slices are {start, duration, category index} to keep long traces small in memory
+            slices.computeIfAbsent(thread, t -> new ArrayList<>())
+                .add(new long[]{ts, dur, SELF_TIME_CATEGORIES.indexOf(category)});
+        }
+
+        private void profile(JsonObject event) {
+            String id = number(event, "pid") + ":" + string(event, "id");
+            Profile profile = profiles.computeIfAbsent(id, i -> new Profile());
+            profile.pid = number(event, "pid");
+            JsonObject data = event.has("args") ? event.getAsJsonObject("args").getAsJsonObject("data") : null;
+            if (data == null || !data.has("cpuProfile")) {
+                return;
+            }
+            JsonObject cpuProfile = data.getAsJsonObject("cpuProfile");
+            if (cpuProfile.has("nodes")) {
+                for (JsonElement element : cpuProfile.getAsJsonArray("nodes")) {
+                    JsonObject node = element.getAsJsonObject();
+                    JsonObject frame = node.getAsJsonObject("callFrame");
+                    String function = string(frame, "functionName");
+                    String url = string(frame, "url");
+                    profile.functions.put(number(node, "id"), (function.isEmpty() ? "(anonymous)" : function)
+                        + (url.isEmpty() ? "" : " " + url + ":" + (number(frame, "lineNumber") + 1)));
+                }
+            }
+            JsonArray samples = cpuProfile.getAsJsonArray("samples");
+            JsonArray deltas = data.getAsJsonArray("timeDeltas");
+            if (samples == null || deltas == null) {
+                return;
+            }
+            // Each delta is the time since the previous sample, which is spent in the previous sample's function
+            for (int i = 0; i < samples.size() && i < deltas.size(); i++) {
+                if (profile.lastNode >= 0) {
+                    String function = profile.functions.getOrDefault(profile.lastNode, "(unknown)");
+                    profile.selfMicros.merge(function, Math.max(0, deltas.get(i).getAsLong()), Long::sum);
+                }
+                profile.lastNode = samples.get(i).getAsLong();
+            }
+        }
+
+        Summary summarize(String label, int topFunctions) {
+            Summary summary = new Summary(label);
+            for (String category : SELF_TIME_CATEGORIES) {
+                summary.categoryMicros.put(category, 0L);
+            }
+            for (Map.Entry<String, List<long[]>> thread : slices.entrySet()) {
+                // Without thread names (a trace saved without metadata) every thread counts
+                if (mainThreads.isEmpty() || mainThreads.contains(thread.getKey())) {
+                    selfTimes(thread.getValue(), summary);
+                }
+            }
+            Map<String, Long> functions = new HashMap<>();
+            for (Profile profile : profiles.values()) {
+                if (mainProcesses.isEmpty() || mainProcesses.contains(profile.pid)) {
+                    profile.selfMicros.forEach((function, micros) -> functions.merge(function, micros, Long::sum));
+                }
+            }
+            functions.keySet().removeIf(function -> function.startsWith("(idle)") || function.startsWith("(root)")
+                || function.startsWith("(program)"));
+            functions.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(topFunctions)
+                .forEach(summary.topFunctions::add);
+            return summary;
+        }
+
+        /**
+         * Attribute each slice's duration minus its children's to its category; top-level tasks are the long task candidates
+         */
+        private void selfTimes(List<long[]> threadSlices, Summary summary) {
+            threadSlices.sort(Comparator.<long[]>comparingLong(slice -> slice[0]).thenComparingLong(slice -> -slice[1]));
+            long[] childMicros = new long[threadSlices.size()];
+            List<Integer> open = new ArrayList<>();
+            for (int i = 0; i < threadSlices.size(); i++) {
+                long[] slice = threadSlices.get(i);
+                while (!open.isEmpty() && end(threadSlices.get(open.get(open.size() - 1))) <= slice[0]) {
+                    open.remove(open.size() - 1);
+                }
+                if (open.isEmpty()) {
+                    summary.busyMicros += slice[1];
+                    if (slice[2] == OTHER && slice[1] >= LONG_TASK_MICROS) {
+                        summary.longTasks++;
+                        summary.blockingMicros += slice[1] - LONG_TASK_MICROS;
+                        summary.longestTaskMicros = Math.max(summary.longestTaskMicros, slice[1]);
+                    }
+                } else {
+                    childMicros[open.get(open.size() - 1)] += slice[1];
+                }
+                open.add(i);
+            }
+            for (int i = 0; i < threadSlices.size(); i++) {
+                long[] slice = threadSlices.get(i);
+                summary.categoryMicros.merge(SELF_TIME_CATEGORIES.get((int) slice[2]),
+                    Math.max(0, slice[1] - childMicros[i]), Long::sum);
+            }
+        }
+
+        private static long end(long[] slice) {
+            return slice[0] + slice[1];
+        }
+
+        private static String string(JsonObject object, String member) {
+            JsonElement value = object == null ? null : object.get(member);
+            return value != null && value.isJsonPrimitive() ? value.getAsString() : "";
+        }
+
+        private static long number(JsonObject object, String member) {
+            JsonElement value = object == null ? null : object.get(member);
+            return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()
+                ? value.getAsLong() : 0;
+        }
+    }
+}
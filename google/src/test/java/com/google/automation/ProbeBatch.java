@@ -0,0 +1,195 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Collects read probes and evaluates them in a single executeScript round-trip
+ * Replaces sequences such as getTitle(), getCurrentUrl(), isDisplayed(), isEnabled() and
+ * getAttribute() that would otherwise each cost one driver command.
+ *
+ * <pre>
+ * PageSnapshot snapshot = new ProbeBatch(driver)
+ *     .displayed(GoogleHomePage.SEARCH_BOX)
+ *     .attribute(GoogleHomePage.SEARCH_BOX, "placeholder")
+ *     .expect(s -&gt; s.getTitle().contains("Google"), "Page title must contain 'Google'")
+ *     .verify();
+ * </pre>
+ *
+ * Visibility is computed from computed style and bounding box, which matches
+ * WebElement.isDisplayed() for ordinary elements but not for every edge case of the Selenium atom.
+ */
+public class ProbeBatch {
+    private static final Logger logger = LoggerFactory.getLogger(ProbeBatch.class);
+
+    static final String SCRIPT_ROUND_TRIPS = "scriptRoundTrips";
+    static final String PROBES_COALESCED = "probesCoalesced";
+
+    private static final String PROBE_SCRIPT =
+        Locators.FIND_ALL_FUNCTION
+        + "function displayed(el) {"
+        + "  var style = window.getComputedStyle(el);"
+        + "  if (style.display === 'none' || style.visibility === 'hidden' || parseFloat(style.opacity) === 0) { return false; }"
+        + "  var rect = el.getBoundingClientRect();"
+        + "  return rect.width > 0 && rect.height > 0;"
+        + "}"
+        + "function attribute(el, name) {"
+        + "  var value = el[name];"
+        + "  if (value === undefined || value === null || typeof value === 'object' || typeof value === 'function') {"
+        + "    value = el.getAttribute(name);"
+        + "  }"
+        + "  return value === null || value === undefined ? null : String(value);"
+        + "}"
+        + "var probes = arguments[0];"
+        + "var results = [];"
+        + "for (var i = 0; i < probes.length; i++) {"
+        + "  var el = findAll(probes[i].locator)[0];"
+        + "  var result = {present: !!el};"
+        + "  if (el) {"
+        + "    if (probes[i].kind === 'displayed') { result.value = displayed(el); }"
+        + "    if (probes[i].kind === 'enabled') { result.value = !el.disabled; }"
+        + "    if (probes[i].kind === 'attribute') { result.value = attribute(el, probes[i].name); }"
+        + "  }"
+        + "  results.push(result);"
+        + "}"
+        + "return {title: document.title, url: window.location.href, results: results};";
+
+    private final WebDriver driver;
+    private final List<Probe> probes = new ArrayList<>();
+    private final List<Expectation> expectations = new ArrayList<>();
+
+    public ProbeBatch(WebDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Probe whether an element is present
+     */
+    public ProbeBatch present(By locator) {
+        return add(new Probe("present", locator, null));
+    }
+
+    /**
+     * Probe whether an element is displayed
+     */
+    public ProbeBatch displayed(By locator) {
+        return add(new Probe("displayed", locator, null));
+    }
+
+    /**
+     * Probe whether an element is enabled
+     */
+    public ProbeBatch enabled(By locator) {
+        return add(new Probe("enabled", locator, null));
+    }
+
+    /**
+     * Probe an element attribute, falling back to the DOM property like WebElement.getAttribute()
+     */
+    public ProbeBatch attribute(By locator, String name) {
+        return add(new Probe("attribute", locator, name));
+    }
+
+    /**
+     * Add an assertion evaluated against the snapshot by {@link #verify()}
+     */
+    public ProbeBatch expect(Predicate<PageSnapshot> condition, String message) {
+        expectations.add(new Expectation(condition, message));
+        return this;
+    }
+
+    /**
+     * Evaluate all probes in one round-trip
+     * Title and current URL are always included.
+     */
+    public PageSnapshot run() {
+        List<Map<String, Object>> arguments = new ArrayList<>();
+        for (Probe probe : probes) {
+            Map<String, Object> argument = new HashMap<>();
+            argument.put("kind", probe.kind);
+            argument.put("locator", Locators.toScriptArgument(probe.locator));
+            argument.put("name", probe.name);
+            arguments.add(argument);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> response = (Map<String, Object>) ((JavascriptExecutor) driver).executeScript(PROBE_SCRIPT, arguments);
+        TestMetrics.increment(SCRIPT_ROUND_TRIPS);
+        // Title and URL are always read, so they count as two coalesced probes
+        TestMetrics.add(PROBES_COALESCED, probes.size() + 2);
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.get("results");
+        Map<String, Object> values = new HashMap<>();
+        Map<By, Boolean> presence = new HashMap<>();
+        for (int i = 0; i < probes.size(); i++) {
+            Probe probe = probes.get(i);
+            Map<String, Object> result = results.get(i);
+            presence.put(probe.locator, Boolean.TRUE.equals(result.get("present")));
+            values.put(probe.key(), result.get("value"));
+        }
+        for (Probe probe : probes) {
+            LocatorAnalyzer.shared().observe(driver, probe.locator, true);
+        }
+
+        logger.info("Evaluated " + (probes.size() + 2) + " probes in one round-trip");
+        return new PageSnapshot((String) response.get("title"), (String) response.get("url"), presence, values);
+    }
+
+    /**
+     * Evaluate all probes and assert every expectation in the order it was added
+     */
+    public PageSnapshot verify() {
+        PageSnapshot snapshot = run();
+        for (Expectation expectation : expectations) {
+            assertTrue(expectation.condition.test(snapshot), expectation.message);
+        }
+        return snapshot;
+    }
+
+    private ProbeBatch add(Probe probe) {
+        probes.add(probe);
+        return this;
+    }
+
+    static String key(String kind, By locator, String name) {
+        return kind + "|" + locator + (name == null ? "" : "|" + name);
+    }
+
+    private static class Probe {
+        final String kind;
+        final By locator;
+        final String name;
+
+        Probe(String kind, By locator, String name) {
+            this.kind = kind;
+            this.locator = locator;
+            this.name = name;
+        }
+
+        String key() {
+            return ProbeBatch.key(kind, locator, name);
+        }
+    }
+
+    private static class Expectation {
+        final Predicate<PageSnapshot> condition;
+        final String message;
+
+        Expectation(Predicate<PageSnapshot> condition, String message) {
+            this.condition = condition;
+            this.message = message;
+        }
+    }
+}
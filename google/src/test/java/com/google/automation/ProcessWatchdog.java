@@ -0,0 +1,337 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the chromedriver and Chrome processes of every local session and kills the ones that hang or leak
+ *
+ * A background scan records each session's process tree every few seconds, so browser processes are still
+ * known after chromedriver dies and they are re-parented. After a session quits, any of its processes still
+ * alive after a grace period are killed and counted as orphans. A test or configuration method (setUp,
+ * tearDown) that runs past its deadline has the sessions its thread holds killed, which makes the blocked
+ * WebDriver call fail instead of hanging. A session is held by the thread that created it, or by the thread
+ * that borrowed it from a pool. Sessions owned by DriverPool or TabMultiplexer are theirs to quit and are
+ * left alone at the end of the suite; any other session still open then is a leak and is killed.
+ * Counters are added to the suite summary metrics.
+ *
+ * Options:
+ *   -Dwatchdog.testTimeout=seconds     per-test wall-clock limit (default 600)
+ *   -Dwatchdog.commandTimeout=seconds  limit for a single WebDriver command (default 120)
+ *   -Dwatchdog.quitTimeout=seconds     limit for quit() before the process tree is killed (default 30)
+ *   -Dwatchdog.reapStale=true          at startup, kill orphaned chromedriver processes of this user left by earlier runs
+ */
+public final class ProcessWatchdog {
+    private static final Logger logger = LoggerFactory.getLogger(ProcessWatchdog.class);
+    private static final ProcessWatchdog INSTANCE = new ProcessWatchdog();
+    private static final long SCAN_INTERVAL_MILLIS = 2000;
+    private static final long ORPHAN_GRACE_MILLIS = 5000;
+
+    private final Map<WebDriver, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<Thread, Long> testDeadlines = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "process-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService quitExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "process-watchdog-quit");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong sessionsStarted = new AtomicLong();
+    private final AtomicLong hungQuits = new AtomicLong();
+    private final AtomicLong deadlineKills = new AtomicLong();
+    private final AtomicLong orphansKilled = new AtomicLong();
+    private final AtomicLong staleReaped = new AtomicLong();
+
+    /**
+     * Processes belonging to one local session
+     */
+    private static class Session {
+        private final String name;
+        private final ProcessHandle driverProcess;
+        private final Set<ProcessHandle> tree = ConcurrentHashMap.newKeySet();
+        // The thread using the session, if any, and whether a pool or the multiplexer quits it
+        private volatile Thread holder;
+        private volatile boolean owned;
+
+        Session(String name, ProcessHandle driverProcess, Thread holder) {
+            this.name = name;
+            this.driverProcess = driverProcess;
+            this.holder = holder;
+            tree.add(driverProcess);
+        }
+
+        void refresh() {
+            if (driverProcess.isAlive()) {
+                driverProcess.descendants().forEach(tree::add);
+            }
+        }
+
+        List<ProcessHandle> alive() {
+            List<ProcessHandle> alive = new ArrayList<>();
+            for (ProcessHandle process : tree) {
+                // ProcessHandle compares start times, so a recycled pid is not mistaken for ours
+                if (process.isAlive()) {
+                    alive.add(process);
+                }
+            }
+            return alive;
+        }
+    }
+
+    private ProcessWatchdog() {
+        scanner.scheduleWithFixedDelay(this::scan, SCAN_INTERVAL_MILLIS, SCAN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (Boolean.getBoolean("watchdog.reapStale")) {
+            reapStaleDrivers();
+        }
+    }
+
+    public static ProcessWatchdog shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the limit for a single WebDriver command, applied as the HTTP read timeout
+     */
+    public static Duration commandTimeout() {
+        return Duration.ofSeconds(Long.getLong("watchdog.commandTimeout", 120));
+    }
+
+    private static Duration testTimeout() {
+        return Duration.ofSeconds(Long.getLong("watchdog.testTimeout", 600));
+    }
+
+    private static Duration quitTimeout() {
+        return Duration.ofSeconds(Long.getLong("watchdog.quitTimeout", 30));
+    }
+
+    /**
+     * Start tracking the process tree of a new session
+     * The chromedriver process is found among this JVM's children by the port it was started with.
+     */
+    public void register(LocalChromeDriver driver, int driverPort) {
+        Optional<ProcessHandle> driverProcess = ProcessHandle.current().children()
+            .filter(child -> child.info().arguments()
+                .map(args -> List.of(args).contains("--port=" + driverPort))
+                .orElse(false))
+            .findFirst();
+        if (driverProcess.isEmpty()) {
+            logger.warn("Could not find chromedriver process on port " + driverPort + ", session is not watched");
+            return;
+        }
+        Session session = new Session("chromedriver:" + driverProcess.get().pid(), driverProcess.get(),
+            Thread.currentThread());
+        session.refresh();
+        sessions.put(driver, session);
+        sessionsStarted.incrementAndGet();
+        driver.addQuitHook(() -> released(driver));
+    }
+
+    /**
+     * Get the live chromedriver and browser processes of a session, or an empty list if it is not watched
+     */
+    public List<ProcessHandle> processes(WebDriver driver) {
+        Session session = sessions.get(driver);
+        if (session == null) {
+            return List.of();
+        }
+        session.refresh();
+        return session.alive();
+    }
+
+    /**
+     * Mark a session as owned by a pool or the multiplexer, which quit it themselves
+     */
+    public void adopt(WebDriver driver) {
+        Session session = sessions.get(driver);
+        if (session != null) {
+            session.owned = true;
+        }
+    }
+
+    /**
+     * Record the thread now using a session, or null when it is idle or shared by several threads
+     */
+    public void heldBy(WebDriver driver, Thread holder) {
+        Session session = sessions.get(driver);
+        if (session != null) {
+            session.holder = holder;
+        }
+    }
+
+    /**
+     * Start the deadline of the test or configuration method about to run on the current thread
+     */
+    public void invocationStarted() {
+        testDeadlines.put(Thread.currentThread(), System.currentTimeMillis() + testTimeout().toMillis());
+    }
+
+    /**
+     * Clear the deadline of the method that ran on the current thread
+     */
+    public void invocationFinished() {
+        testDeadlines.remove(Thread.currentThread());
+    }
+
+    /**
+     * Quit a session, killing its process tree if quit() hangs or fails
+     * Never throws, so it is safe in teardown code. Returns false if the session had to be killed.
+     */
+    public static boolean quit(WebDriver driver) {
+        return INSTANCE.quitWithin(driver, quitTimeout());
+    }
+
+    private boolean quitWithin(WebDriver driver, Duration timeout) {
+        Future<?> quit = quitExecutor.submit(driver::quit);
+        try {
+            quit.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            quit.cancel(true);
+            hungQuits.incrementAndGet();
+            logger.warn("quit() did not finish within " + timeout.getSeconds() + "s, killing the session's processes");
+        } catch (ExecutionException e) {
+            logger.warn("quit() failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Session session = sessions.remove(driver);
+        if (session != null) {
+            kill(session);
+        }
+        return false;
+    }
+
+    /**
+     * Start counting a new run; the sessions it watches are kept
+     */
+    public void reset() {
+        sessionsStarted.set(0);
+        hungQuits.set(0);
+        deadlineKills.set(0);
+        orphansKilled.set(0);
+        staleReaped.set(0);
+    }
+
+    /**
+     * Kill every session nobody owns that is still open, then report the counters
+     * Such sessions were never quit and count as leaks; pooled and shared browsers may be kept on purpose
+     * for the next run (-Dsession.keep) and are quit by their owner.
+     */
+    public Map<String, Long> finish() {
+        long leaked = 0;
+        for (Map.Entry<WebDriver, Session> entry : sessions.entrySet()) {
+            if (!entry.getValue().owned && sessions.remove(entry.getKey()) != null) {
+                logger.warn("Session " + entry.getValue().name + " was never quit");
+                leaked += kill(entry.getValue());
+            }
+        }
+
+        Map<String, Long> stats = new TreeMap<>();
+        if (sessionsStarted.get() == 0 && staleReaped.get() == 0) {
+            return stats;
+        }
+        stats.put("watchdogSessions", sessionsStarted.get());
+        stats.put("watchdogHungQuits", hungQuits.get());
+        stats.put("watchdogDeadlineKills", deadlineKills.get());
+        stats.put("watchdogOrphansKilled", orphansKilled.get());
+        stats.put("watchdogLeakedProcesses", leaked);
+        stats.put("watchdogStaleReaped", staleReaped.get());
+        return stats;
+    }
+
+    private void released(WebDriver driver) {
+        Session session = sessions.remove(driver);
+        if (session == null) {
+            return;
+        }
+        session.refresh();
+        scanner.schedule(() -> {
+            long killed = kill(session);
+            if (killed > 0) {
+                logger.warn("Killed " + killed + " orphaned processes of " + session.name + " after quit");
+                orphansKilled.addAndGet(killed);
+            }
+        }, ORPHAN_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void scan() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Session session : sessions.values()) {
+                session.refresh();
+            }
+            for (Map.Entry<Thread, Long> deadline : testDeadlines.entrySet()) {
+                if (now > deadline.getValue() && testDeadlines.remove(deadline.getKey()) != null) {
+                    killSessionsOf(deadline.getKey());
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Watchdog scan failed", e);
+        }
+    }
+
+    private void killSessionsOf(Thread holder) {
+        for (Map.Entry<WebDriver, Session> entry : sessions.entrySet()) {
+            if (entry.getValue().holder == holder && sessions.remove(entry.getKey()) != null) {
+                logger.warn("Test on " + holder.getName() + " exceeded " + testTimeout().getSeconds()
+                    + "s, killing " + entry.getValue().name);
+                kill(entry.getValue());
+                deadlineKills.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Kill the session's processes, children first, and return how many were still alive
+     */
+    private static long kill(Session session) {
+        session.refresh();
+        List<ProcessHandle> alive = session.alive();
+        alive.remove(session.driverProcess);
+        alive.forEach(ProcessHandle::destroyForcibly);
+        long killed = alive.size();
+        if (session.driverProcess.isAlive()) {
+            session.driverProcess.destroyForcibly();
+            killed++;
+        }
+        return killed;
+    }
+
+    /**
+     * Kill chromedriver processes of this user that lost their parent, with their browsers
+     */
+    private void reapStaleDrivers() {
+        String user = ProcessHandle.current().info().user().orElse("");
+        ProcessHandle.allProcesses()
+            .filter(process -> process.info().command().map(command -> command.endsWith("chromedriver")).orElse(false))
+            .filter(process -> process.info().user().map(user::equals).orElse(false))
+            .filter(process -> process.parent().map(parent -> parent.pid() == 1).orElse(true))
+            .forEach(process -> {
+                logger.warn("Reaping stale chromedriver " + process.pid());
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+                staleReaped.incrementAndGet();
+            });
+    }
+}
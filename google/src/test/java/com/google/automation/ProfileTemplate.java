@@ -0,0 +1,360 @@
+package com.google.automation;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Warm Chrome user-data-dir built once per JVM and copied for every local session
+ * The template is warmed by loading the configured URLs, so sessions start with a populated HTTP cache
+ * and with first-run initialisation already done.
+ *
+ * Each session gets a private copy. On Linux the copy is a reflink (copy-on-write clone) when the file
+ * system supports it; otherwise files are copied in parallel. Hard links are not used because Chrome
+ * rewrites profile files in place, which would corrupt the shared template.
+ *
+ * Building the template starts browsers through the AdmissionController like any other session. It is
+ * built by the first thread that needs it, outside the class lock; other threads wait for that build.
+ * The template is deleted when the JVM exits. Templates and session copies carry the pid of their JVM,
+ * so the ones left behind by JVMs that were killed are deleted when the next template is created.
+ *
+ * Options:
+ *   -Dprofile.template=true           enable the template (off by default)
+ *   -Dprofile.warmUrls=url1,url2      pages loaded while warming (default https://www.google.com)
+ */
+public final class ProfileTemplate {
+    private static final Logger logger = LoggerFactory.getLogger(ProfileTemplate.class);
+    private static final Path PROFILES_DIR = Paths.get("target", "profiles");
+    private static final String TEMPLATE_PREFIX = "template-";
+    private static final String SESSION_PREFIX = "session-";
+    // Chrome refuses to open a profile that still has another process's singleton files
+    private static final Set<String> SKIPPED_FILES = Set.of("SingletonLock", "SingletonCookie", "SingletonSocket", "lockfile");
+
+    private static CompletableFuture<ProfileTemplate> building;
+    private static volatile ProfileTemplate shared;
+
+    private final Path templateDir;
+    private final AtomicInteger copies = new AtomicInteger();
+    private final AtomicLong copyMillis = new AtomicLong();
+    private volatile boolean reflinkSupported = true;
+    private long coldLoadMillis;
+    private long warmLoadMillis;
+
+    private ProfileTemplate(Path templateDir) {
+        this.templateDir = templateDir;
+    }
+
+    /**
+     * Check whether profile templates are enabled for this run
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("profile.template");
+    }
+
+    /**
+     * Get the template for this JVM, building and warming it on first use
+     */
+    public static ProfileTemplate shared() {
+        ProfileTemplate template = shared;
+        if (template != null) {
+            return template;
+        }
+        CompletableFuture<ProfileTemplate> future;
+        boolean builder = false;
+        synchronized (ProfileTemplate.class) {
+            if (building == null) {
+                building = new CompletableFuture<>();
+                builder = true;
+            }
+            future = building;
+        }
+        if (builder) {
+            try {
+                template = create();
+            } catch (RuntimeException | Error e) {
+                // Let the next session try again, as it would have before the build was shared
+                synchronized (ProfileTemplate.class) {
+                    building = null;
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+            shared = template;
+            future.complete(template);
+            return template;
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Profile template could not be built", e.getCause());
+        }
+    }
+
+    private static ProfileTemplate create() {
+        deleteOrphanedProfiles();
+        ProfileTemplate template = new ProfileTemplate(PROFILES_DIR.resolve(TEMPLATE_PREFIX + ProcessHandle.current().pid()));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteRecursively(template.templateDir),
+            "profile-template-cleanup"));
+        template.build();
+        return template;
+    }
+
+    /**
+     * Start counting copies for a new run; the template itself is kept
+     */
+    public static void reset() {
+        ProfileTemplate template = shared;
+        if (template != null) {
+            template.copies.set(0);
+            template.copyMillis.set(0);
+        }
+    }
+
+    /**
+     * Log the copy statistics and return the warm-up and copy stats for the suite summary
+     * Returns nothing when no template was built.
+     */
+    public static Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        ProfileTemplate template = shared;
+        if (template == null) {
+            return stats;
+        }
+        int count = template.copies.get();
+        long millis = template.copyMillis.get();
+        logger.info(String.format("Profile template: %d session copies, mean copy time %.1fms, strategy %s",
+            count, count > 0 ? (double) millis / count : 0, template.reflinkSupported ? "reflink" : "parallel copy"));
+        stats.put("profileColdLoadMs", template.coldLoadMillis);
+        stats.put("profileWarmLoadMs", template.warmLoadMillis);
+        if (template.coldLoadMillis > 0 && template.warmLoadMillis >= 0) {
+            // Share of the cold load time saved: 0 when warm loads are no faster, 60 when they take 40% of it
+            stats.put("profileLoadSavedPercent",
+                (template.coldLoadMillis - template.warmLoadMillis) * 100 / template.coldLoadMillis);
+        }
+        stats.put("profileCopies", (long) count);
+        stats.put("profileCopyTotalMs", millis);
+        return stats;
+    }
+
+    /**
+     * Create a private copy of the template for one session
+     */
+    public Path newSessionDir() {
+        Path sessionDir = PROFILES_DIR.resolve(SESSION_PREFIX + ProcessHandle.current().pid() + "-" + UUID.randomUUID());
+        long start = System.nanoTime();
+        if (!(reflinkSupported && reflinkCopy(templateDir, sessionDir))) {
+            parallelCopy(templateDir, sessionDir);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        copies.incrementAndGet();
+        copyMillis.addAndGet(millis);
+        TestMetrics.add("profileCopyMs", millis);
+        return sessionDir;
+    }
+
+    /**
+     * Build the template, then measure a cold load against a warm load from a copy
+     */
+    private void build() {
+        List<String> warmUrls = Arrays.stream(System.getProperty("profile.warmUrls", "https://www.google.com").split(","))
+            .map(String::trim)
+            .filter(url -> !url.isEmpty())
+            .collect(Collectors.toList());
+        try {
+            deleteRecursively(templateDir);
+            Files.createDirectories(templateDir);
+        } catch (UncheckedIOException | IOException e) {
+            throw new RuntimeException("Cannot create profile template directory " + templateDir, e);
+        }
+
+        logger.info("Building profile template in " + templateDir.toAbsolutePath());
+        coldLoadMillis = loadWithProfile(templateDir, warmUrls);
+
+        Path probeDir = newSessionDir();
+        try {
+            warmLoadMillis = loadWithProfile(probeDir, warmUrls.subList(0, 1));
+        } finally {
+            deleteRecursively(probeDir);
+        }
+        logger.info(String.format("Profile template: cold first load %dms, warm first load %dms (%.1fx faster)",
+            coldLoadMillis, warmLoadMillis, warmLoadMillis > 0 ? (double) coldLoadMillis / warmLoadMillis : 0));
+    }
+
+    /**
+     * Delete the templates and session copies of JVMs that are no longer running, whose shutdown hooks
+     * and quit hooks never ran
+     */
+    private static void deleteOrphanedProfiles() {
+        if (!Files.isDirectory(PROFILES_DIR)) {
+            return;
+        }
+        try (Stream<Path> dirs = Files.list(PROFILES_DIR)) {
+            for (Path dir : dirs.collect(Collectors.toList())) {
+                String name = dir.getFileName().toString();
+                String owner;
+                if (name.startsWith(TEMPLATE_PREFIX)) {
+                    owner = name.substring(TEMPLATE_PREFIX.length());
+                } else if (name.startsWith(SESSION_PREFIX) && name.indexOf('-', SESSION_PREFIX.length()) > 0) {
+                    owner = name.substring(SESSION_PREFIX.length(), name.indexOf('-', SESSION_PREFIX.length()));
+                } else {
+                    continue;
+                }
+                try {
+                    long pid = Long.parseLong(owner);
+                    if (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+                        continue;
+                    }
+                } catch (NumberFormatException e) {
+                    // Not a profile this class created; leave it
+                    continue;
+                }
+                logger.info("Deleting orphaned profile " + dir);
+                deleteRecursively(dir);
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot list " + PROFILES_DIR + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load the URLs in a session using the given profile and return the first page's load time
+     */
+    private static long loadWithProfile(Path profileDir, List<String> urls) {
+        ChromeOptions options = LocalDriverFactory.createChromeOptions();
+        options.addArguments("--user-data-dir=" + profileDir.toAbsolutePath());
+        WebDriver driver = LocalDriverFactory.startAdmitted(options);
+        try {
+            long firstLoad = -1;
+            for (String url : urls) {
+                driver.navigate().to(url);
+                long loadMillis = navigationMillis(driver);
+                if (firstLoad < 0) {
+                    firstLoad = loadMillis;
+                }
+            }
+            return firstLoad;
+        } finally {
+            // A clean quit flushes the HTTP cache index to disk
+            driver.quit();
+        }
+    }
+
+    private static long navigationMillis(WebDriver driver) {
+        Object value = ((JavascriptExecutor) driver).executeScript(
+            "var nav = performance.getEntriesByType('navigation')[0];"
+            + "return nav ? Math.round(nav.loadEventEnd - nav.startTime) : -1;");
+        return value instanceof Number ? ((Number) value).longValue() : -1;
+    }
+
+    private boolean reflinkCopy(Path source, Path target) {
+        if (!System.getProperty("os.name", "").toLowerCase().contains("linux")) {
+            reflinkSupported = false;
+            return false;
+        }
+        try {
+            Process process = new ProcessBuilder("cp", "-a", "--reflink=always",
+                source.toAbsolutePath().toString(), target.toAbsolutePath().toString())
+                .redirectErrorStream(true)
+                .start();
+            process.getInputStream().readAllBytes();
+            if (process.waitFor(60, TimeUnit.SECONDS) && process.exitValue() == 0) {
+                for (String name : SKIPPED_FILES) {
+                    Files.deleteIfExists(target.resolve(name));
+                }
+                return true;
+            }
+        } catch (IOException e) {
+            logger.info("Reflink copy unavailable: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("File system does not support reflinks, falling back to parallel copy");
+        reflinkSupported = false;
+        deleteRecursively(target);
+        return false;
+    }
+
+    private static void parallelCopy(Path source, Path target) {
+        List<Path> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.createDirectories(target.resolve(source.relativize(dir)));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && !SKIPPED_FILES.contains(file.getFileName().toString())) {
+                        files.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            files.parallelStream().forEach(file -> {
+                try {
+                    Files.copy(file, target.resolve(source.relativize(file)),
+                        StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("Cannot copy profile template to " + target, e);
+        }
+    }
+
+    /**
+     * Delete a directory tree, logging instead of failing
+     */
+    static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                    Files.deleteIfExists(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not delete " + dir + ": " + e.getMessage());
+        }
+    }
+}
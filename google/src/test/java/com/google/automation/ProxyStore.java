@@ -0,0 +1,164 @@
+package com.google.automation;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed response store used by RecordReplayProxy
+ *
+ * Layout under the store directory:
+ *   index/&lt;sha256 of request key&gt;.json   status, headers and body hash of one recorded response
+ *   objects/&lt;2 chars&gt;/&lt;sha256 of body&gt;   response bodies, stored once however many URLs return them
+ *
+ * Bodies are memory-mapped on first use and the mapping is kept, so replays are served from the page cache
+ * without copying through the Java heap.
+ */
+public class ProxyStore {
+    private static final Gson GSON = new Gson();
+
+    private final Path indexDir;
+    private final Path objectsDir;
+    private final Map<String, MappedByteBuffer> mappedBodies = new ConcurrentHashMap<>();
+    private final Map<String, StoredResponse> index = new ConcurrentHashMap<>();
+
+    /**
+     * One recorded response
+     */
+    public static class StoredResponse {
+        private String url;
+        private int status;
+        private List<String[]> headers;
+        private String body;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public List<String[]> getHeaders() {
+            return headers;
+        }
+
+        public String getBodyHash() {
+            return body;
+        }
+    }
+
+    public ProxyStore(Path dir) {
+        this.indexDir = dir.resolve("index");
+        this.objectsDir = dir.resolve("objects");
+        try {
+            Files.createDirectories(indexDir);
+            Files.createDirectories(objectsDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create proxy store in " + dir, e);
+        }
+    }
+
+    /**
+     * Find the response recorded for a request key, or null
+     */
+    public StoredResponse lookup(String requestKey) {
+        String id = sha256(requestKey.getBytes(StandardCharsets.UTF_8));
+        StoredResponse cached = index.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        Path file = indexDir.resolve(id + ".json");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            StoredResponse response = GSON.fromJson(reader, StoredResponse.class);
+            index.put(id, response);
+            return response;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read proxy index entry " + file, e);
+        }
+    }
+
+    /**
+     * Record a response; returns true if the body was new to the store
+     */
+    public boolean save(String requestKey, String url, int status, List<String[]> headers, byte[] body) {
+        String bodyHash = sha256(body);
+        Path object = objectPath(bodyHash);
+        boolean newBody = false;
+        try {
+            if (!Files.exists(object)) {
+                Files.createDirectories(object.getParent());
+                Path temp = Files.createTempFile(object.getParent(), bodyHash, ".tmp");
+                Files.write(temp, body);
+                try {
+                    Files.move(temp, object, StandardCopyOption.ATOMIC_MOVE);
+                    newBody = true;
+                } catch (FileAlreadyExistsException e) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+
+            StoredResponse response = new StoredResponse();
+            response.url = url;
+            response.status = status;
+            response.headers = headers;
+            response.body = bodyHash;
+            String id = sha256(requestKey.getBytes(StandardCharsets.UTF_8));
+            Path entry = indexDir.resolve(id + ".json");
+            Path temp = Files.createTempFile(indexDir, id, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(response, writer);
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            index.put(id, response);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot record response for " + url, e);
+        }
+        return newBody;
+    }
+
+    /**
+     * Get a read-only view of a stored body
+     */
+    public MappedByteBuffer body(String bodyHash) {
+        return mappedBodies.computeIfAbsent(bodyHash, hash -> {
+            try (FileChannel channel = FileChannel.open(objectPath(hash), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map stored body " + hash, e);
+            }
+        });
+    }
+
+    private Path objectPath(String bodyHash) {
+        return objectsDir.resolve(bodyHash.substring(0, 2)).resolve(bodyHash);
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.google.automation;
+
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Local forward proxy that records origin responses and replays them from a ProxyStore
+ *
+ * HTTPS is intercepted with a self-signed certificate made with the JDK's keytool; browsers using the
+ * proxy are configured to accept it. In record mode responses already in the store are served from disk
+ * and everything else is fetched and stored. In replay mode nothing reaches the origin and misses get 504,
+ * so the real-site tests run offline against a previous recording.
+ *
+ * Recording fetches leave out the browser's conditional and range headers, so the store only ever holds
+ * full responses: a 304 or a 206 stored under a request's key would be replayed to browsers with nothing
+ * cached or wanting the whole body. HEAD responses are sent without a body, with the origin's length.
+ *
+ * Options:
+ *   -Dproxy.mode=record|replay      enable the proxy for local Chrome sessions (off by default)
+ *   -Dproxy.store=dir               store directory (default proxy-store)
+ *   -Dproxy.ignoreParams=a,b        query parameters left out of the request key (default zx,ei,sxsrf,psi,ved)
+ */
+public final class RecordReplayProxy implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RecordReplayProxy.class);
+    private static final String KEYSTORE_PASSWORD = "changeit";
+    private static final Set<String> HOP_BY_HOP = Set.of("connection", "keep-alive", "proxy-connection",
+        "transfer-encoding", "te", "trailer", "upgrade", "content-length", "host", "expect");
+    private static final Set<String> CONDITIONAL = Set.of("if-none-match", "if-modified-since", "if-match",
+        "if-unmodified-since", "if-range", "range");
+
+    private static RecordReplayProxy shared;
+
+    private final boolean recording;
+    private final ProxyStore store;
+    private final ServerSocket serverSocket;
+    private final SSLContext sslContext;
+    private final HttpClient client;
+    private final Set<String> ignoredParams;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "record-replay-proxy");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesFromStore = new AtomicLong();
+    private final AtomicLong bytesFromOrigin = new AtomicLong();
+    private final AtomicLong newBodies = new AtomicLong();
+
+    private RecordReplayProxy(boolean recording, Path storeDir) throws IOException {
+        this.recording = recording;
+        this.store = new ProxyStore(storeDir);
+        this.sslContext = createSslContext(storeDir.resolve("proxy-keystore.p12"));
+        this.client = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(15))
+            .build();
+        this.ignoredParams = Arrays.stream(System.getProperty("proxy.ignoreParams", "zx,ei,sxsrf,psi,ved").split(","))
+            .map(String::trim)
+            .filter(name -> !name.isEmpty())
+            .collect(Collectors.toSet());
+        this.serverSocket = new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+        executor.execute(this::acceptLoop);
+    }
+
+    /**
+     * Check whether local sessions should go through the proxy
+     */
+    public static boolean isEnabled() {
+        String mode = System.getProperty("proxy.mode", "");
+        return mode.equals("record") || mode.equals("replay");
+    }
+
+    /**
+     * Get the proxy for this JVM, starting it on first use
+     */
+    public static synchronized RecordReplayProxy shared() {
+        if (shared == null) {
+            boolean recording = System.getProperty("proxy.mode", "").equals("record");
+            Path storeDir = Paths.get(System.getProperty("proxy.store", "proxy-store"));
+            try {
+                shared = new RecordReplayProxy(recording, storeDir);
+            } catch (IOException e) {
+                throw new RuntimeException("Record/replay proxy failed to start", e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(shared::report, "record-replay-proxy-report"));
+            logger.info("Record/replay proxy in " + (recording ? "record" : "replay") + " mode on "
+                + shared.getAddress() + ", store " + storeDir.toAbsolutePath());
+        }
+        return shared;
+    }
+
+    public String getAddress() {
+        return "127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Route a Chrome session through this proxy
+     */
+    public void configure(ChromeOptions options) {
+        Proxy proxy = new Proxy();
+        proxy.setHttpProxy(getAddress());
+        proxy.setSslProxy(getAddress());
+        options.setProxy(proxy);
+        options.setAcceptInsecureCerts(true);
+    }
+
+    /**
+     * Log request counts, hit rate and the bytes that did not have to come from the origin
+     */
+    public void report() {
+        long total = requests.get();
+        logger.info(String.format("Record/replay proxy: %d requests, %d hits (%.1f%%), %d misses",
+            total, hits.get(), total > 0 ? hits.get() * 100.0 / total : 0, misses.get()));
+        logger.info(String.format("Record/replay proxy: %d bytes served from store (saved), %d bytes from origin, %d new bodies stored",
+            bytesFromStore.get(), bytesFromOrigin.get(), newBodies.get()));
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Error closing proxy socket", e);
+        }
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Proxy accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        try (Socket client = socket) {
+            client.setSoTimeout(60_000);
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = new BufferedOutputStream(client.getOutputStream());
+            ProxyRequest first = ProxyRequest.read(in);
+            if (first == null) {
+                return;
+            }
+            if (first.method.equals("CONNECT")) {
+                out.write("HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                SSLSocket tls = (SSLSocket) sslContext.getSocketFactory().createSocket(client, null, client.getPort(), false);
+                tls.setUseClientMode(false);
+                tls.startHandshake();
+                serveRequests(new BufferedInputStream(tls.getInputStream()),
+                    new BufferedOutputStream(tls.getOutputStream()), "https://" + first.target, null);
+            } else {
+                serveRequests(in, out, null, first);
+            }
+        } catch (IOException e) {
+            logger.debug("Proxy connection ended: " + e.getMessage());
+        }
+    }
+
+    private void serveRequests(InputStream in, OutputStream out, String origin, ProxyRequest first) throws IOException {
+        ProxyRequest request = first != null ? first : ProxyRequest.read(in);
+        while (request != null) {
+            String url = origin != null ? stripDefaultPort(origin) + request.target : request.target;
+            respond(request, url, out);
+            out.flush();
+            if ("close".equalsIgnoreCase(request.header("connection"))) {
+                return;
+            }
+            request = ProxyRequest.read(in);
+        }
+    }
+
+    private void respond(ProxyRequest request, String url, OutputStream out) throws IOException {
+        requests.incrementAndGet();
+        boolean head = "HEAD".equals(request.method);
+        String key = requestKey(request, url);
+        ProxyStore.StoredResponse stored = store.lookup(key);
+        if (stored != null) {
+            hits.incrementAndGet();
+            if (head) {
+                // The stored headers carry the origin's Content-Length
+                writeHead(out, stored.getStatus(), stored.getHeaders(), -1);
+                return;
+            }
+            MappedByteBuffer body = store.body(stored.getBodyHash());
+            bytesFromStore.addAndGet(body.capacity());
+            writeHead(out, stored.getStatus(), stored.getHeaders(), body.capacity());
+            out.flush();
+            WritableByteChannel channel = Channels.newChannel(out);
+            channel.write(body.duplicate());
+            return;
+        }
+
+        misses.incrementAndGet();
+        if (!recording) {
+            byte[] message = ("Not recorded: " + url).getBytes(StandardCharsets.UTF_8);
+            writeHead(out, 504, List.<String[]>of(new String[]{"Content-Type", "text/plain"}), message.length);
+            if (!head) {
+                out.write(message);
+            }
+            return;
+        }
+
+        HttpResponse<byte[]> response;
+        try {
+            response = client.send(toOriginRequest(request, url), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted fetching " + url, e);
+        } catch (IOException | IllegalArgumentException e) {
+            byte[] message = ("Origin fetch failed: " + e).getBytes(StandardCharsets.UTF_8);
+            writeHead(out, 502, List.<String[]>of(new String[]{"Content-Type", "text/plain"}), message.length);
+            if (!head) {
+                out.write(message);
+            }
+            return;
+        }
+
+        List<String[]> headers = new ArrayList<>();
+        response.headers().map().forEach((name, values) -> {
+            if (!name.startsWith(":") && !HOP_BY_HOP.contains(name.toLowerCase(Locale.ROOT))) {
+                for (String value : values) {
+                    headers.add(new String[]{name, value});
+                }
+            }
+        });
+        if (head) {
+            response.headers().firstValueAsLong("content-length")
+                .ifPresent(length -> headers.add(new String[]{"Content-Length", String.valueOf(length)}));
+        }
+        byte[] body = head ? new byte[0] : response.body();
+        bytesFromOrigin.addAndGet(body.length);
+        if (store.save(key, url, response.statusCode(), headers, body)) {
+            newBodies.incrementAndGet();
+        }
+        if (head) {
+            writeHead(out, response.statusCode(), headers, -1);
+            return;
+        }
+        writeHead(out, response.statusCode(), headers, body.length);
+        out.write(body);
+    }
+
+    private HttpRequest toOriginRequest(ProxyRequest request, String url) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+            .timeout(Duration.ofSeconds(30))
+            .method(request.method, request.body.length == 0
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(request.body));
+        request.headers.forEach((name, value) -> {
+            if (!HOP_BY_HOP.contains(name) && !CONDITIONAL.contains(name)) {
+                try {
+                    builder.header(name, value);
+                } catch (IllegalArgumentException e) {
+                    // header the JDK client manages itself
+                }
+            }
+        });
+        return builder.build();
+    }
+
+    private String requestKey(ProxyRequest request, String url) {
+        String normalized = url;
+        int query = url.indexOf('?');
+        if (query >= 0 && !ignoredParams.isEmpty()) {
+            String kept = Arrays.stream(url.substring(query + 1).split("&"))
+                .filter(param -> !ignoredParams.contains(param.split("=", 2)[0]))
+                .collect(Collectors.joining("&"));
+            normalized = url.substring(0, query) + (kept.isEmpty() ? "" : "?" + kept);
+        }
+        String key = request.method + " " + normalized;
+        return request.body.length == 0 ? key : key + " " + ProxyStore.sha256(request.body);
+    }
+
+    private static String stripDefaultPort(String origin) {
+        return origin.endsWith(":443") ? origin.substring(0, origin.length() - 4) : origin;
+    }
+
+    /**
+     * Write the status line and headers; a negative length leaves Content-Length to the headers, for HEAD
+     */
+    private static void writeHead(OutputStream out, int status, List<String[]> headers, long length) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(" \r\n");
+        for (String[] header : headers) {
+            head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+        }
+        if (length >= 0) {
+            head.append("Content-Length: ").append(length).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Load the interception certificate, creating it with keytool the first time
+     */
+    private static SSLContext createSslContext(Path keystore) throws IOException {
+        if (!Files.exists(keystore)) {
+            Path keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool");
+            Process process = new ProcessBuilder(keytool.toString(), "-genkeypair", "-alias", "proxy",
+                "-keyalg", "RSA", "-keysize", "2048", "-validity", "3650", "-dname", "CN=record-replay-proxy",
+                "-storetype", "PKCS12", "-keystore", keystore.toAbsolutePath().toString(),
+                "-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD)
+                .redirectErrorStream(true)
+                .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            try {
+                if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                    throw new IOException("keytool failed: " + output);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted creating proxy certificate", e);
+            }
+        }
+        try (InputStream input = Files.newInputStream(keystore)) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(input, KEYSTORE_PASSWORD.toCharArray());
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, KEYSTORE_PASSWORD.toCharArray());
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers.getKeyManagers(), null, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot load proxy certificate " + keystore, e);
+        }
+    }
+
+    /**
+     * One HTTP/1.1 request read from the browser
+     */
+    private static class ProxyRequest {
+        private String method;
+        private String target;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private byte[] body = new byte[0];
+
+        String header(String name) {
+            return headers.get(name);
+        }
+
+        /**
+         * Read the next request, or return null at end of stream
+         */
+        static ProxyRequest read(InputStream in) throws IOException {
+            String requestLine = readLine(in);
+            while (requestLine != null && requestLine.isEmpty()) {
+                requestLine = readLine(in);
+            }
+            if (requestLine == null) {
+                return null;
+            }
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 2) {
+                throw new IOException("Malformed request line: " + requestLine);
+            }
+            ProxyRequest request = new ProxyRequest();
+            request.method = parts[0];
+            request.target = parts[1];
+
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    request.headers.merge(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        line.substring(colon + 1).trim(), (a, b) -> a + ", " + b);
+                }
+            }
+
+            String length = request.headers.get("content-length");
+            if ("chunked".equalsIgnoreCase(request.headers.get("transfer-encoding"))) {
+                request.body = readChunked(in);
+            } else if (length != null) {
+                request.body = in.readNBytes(Integer.parseInt(length.trim()));
+            }
+            return request;
+        }
+
+        private static byte[] readChunked(InputStream in) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            while (true) {
+                String sizeLine = readLine(in);
+                if (sizeLine == null) {
+                    break;
+                }
+                int size = Integer.parseInt(sizeLine.split(";")[0].trim(), 16);
+                if (size == 0) {
+                    String trailer;
+                    while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                        // trailers are not forwarded
+                    }
+                    break;
+                }
+                body.write(in.readNBytes(size));
+                readLine(in);
+            }
+            return body.toByteArray();
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    int end = line.length();
+                    if (end > 0 && line.charAt(end - 1) == '\r') {
+                        line.setLength(end - 1);
+                    }
+                    return line.toString();
+                }
+                line.append((char) c);
+            }
+            return line.length() == 0 ? null : line.toString();
+        }
+    }
+}
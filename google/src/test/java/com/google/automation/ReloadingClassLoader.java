@@ -0,0 +1,171 @@
+package com.google.automation;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Child-first class loader that defines the test classes afresh from the compiled class files
+ *
+ * A new loader per change picks up edited tests and page objects without restarting the JVM. The warm
+ * classes, those that hold browsers between runs and everything they reference, are delegated to the
+ * parent instead, so there is a single copy of them and of their static state. Which classes are warm is
+ * decided once from the class files' constant pools: every class of the package a root mentions, directly
+ * or through another warm class, stays with the parent.
+ */
+public class ReloadingClassLoader extends ClassLoader {
+    private static final String PACKAGE = "com.google.automation";
+
+    private final Path classesDir;
+    private final Set<String> warm;
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    public ReloadingClassLoader(Path classesDir, Set<String> warm, ClassLoader parent) {
+        super(parent);
+        this.classesDir = classesDir;
+        this.warm = warm;
+    }
+
+    /**
+     * Find the classes that must not be reloaded: the roots and the classes of this package they reference
+     */
+    public static Set<String> warmClasses(Path classesDir, Set<String> roots) {
+        Set<String> warm = new TreeSet<>();
+        Deque<String> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            if (!warm.add(name)) {
+                continue;
+            }
+            Path file = classFile(classesDir, name);
+            if (Files.isRegularFile(file)) {
+                for (String referenced : references(file)) {
+                    if (!warm.contains(referenced) && Files.isRegularFile(classFile(classesDir, referenced))) {
+                        pending.push(referenced);
+                    }
+                }
+            }
+        }
+        return warm;
+    }
+
+    /**
+     * Get the class files of the package with their modification times
+     */
+    public static Map<String, Long> snapshot(Path classesDir) {
+        Map<String, Long> times = new HashMap<>();
+        Path packageDir = classesDir.resolve(PACKAGE.replace('.', '/'));
+        try (Stream<Path> files = Files.list(packageDir)) {
+            files.filter(file -> file.toString().endsWith(".class")).forEach(file -> {
+                String simpleName = file.getFileName().toString();
+                try {
+                    times.put(PACKAGE + "." + simpleName.substring(0, simpleName.length() - ".class".length()),
+                        Files.getLastModifiedTime(file).toMillis());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list " + packageDir, e);
+        }
+        return times;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!name.startsWith(PACKAGE + ".") || warm.contains(name)) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) {
+                Path file = classFile(classesDir, name);
+                if (!Files.isRegularFile(file)) {
+                    return super.loadClass(name, resolve);
+                }
+                try {
+                    byte[] bytes = Files.readAllBytes(file);
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException("Cannot read " + file, e);
+                }
+            }
+            if (resolve) {
+                resolveClass(loaded);
+            }
+            return loaded;
+        }
+    }
+
+    private static Path classFile(Path classesDir, String name) {
+        return classesDir.resolve(name.replace('.', '/') + ".class");
+    }
+
+    /**
+     * Read the names of this package's classes that a class file mentions, in class entries or type descriptors
+     */
+    static Set<String> references(Path file) {
+        Set<String> names = new HashSet<>();
+        String prefix = PACKAGE.replace('.', '/') + "/";
+        try (InputStream input = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(input)) {
+            in.readInt();
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+            int count = in.readUnsignedShort();
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1:
+                        collect(in.readUTF(), prefix, names);
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        in.skipBytes(4);
+                        break;
+                    case 5: case 6:
+                        // Longs and doubles take two slots
+                        in.skipBytes(8);
+                        i++;
+                        break;
+                    case 7: case 8: case 16: case 19: case 20:
+                        in.skipBytes(2);
+                        break;
+                    case 15:
+                        in.skipBytes(3);
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag + " in " + file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + file, e);
+        }
+        return names;
+    }
+
+    private static void collect(String utf8, String prefix, Set<String> names) {
+        int start = utf8.indexOf(prefix);
+        while (start >= 0) {
+            int end = start + prefix.length();
+            while (end < utf8.length() && Character.isJavaIdentifierPart(utf8.charAt(end))) {
+                end++;
+            }
+            names.add(utf8.substring(start, end).replace('/', '.'));
+            start = utf8.indexOf(prefix, end);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.google.automation;
+
+import org.openqa.selenium.ImmutableCapabilities;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebDriver that answers every command from a recording made by CommandRecorder, with no browser
+ *
+ * Commands are matched in order: each command is served by the next recorded entry with the same name
+ * and parameters (numbers aside, see CommandLog.matchKey). Passive entries, the framework's own commands
+ * such as health samples taken while recording, are skipped over. Any other mismatch throws a Divergence,
+ * the sign that the test's logic no longer drives the page the way it did when recorded: the test issued
+ * a command the recording does not have next, or stopped issuing one it has. Test commands left over when
+ * the session quits are counted as a divergence as well. Element references, script results and errors
+ * are the recorded ones.
+ */
+public class ReplayWebDriver extends RemoteWebDriver {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayWebDriver.class);
+
+    /**
+     * Thrown when a test issues a command the recording does not have
+     */
+    public static class Divergence extends WebDriverException {
+        public Divergence(String message) {
+            super(message);
+        }
+    }
+
+    public ReplayWebDriver(Path file) {
+        super(new Replayer(file), new ImmutableCapabilities());
+    }
+
+    /**
+     * Serves recorded responses in order
+     */
+    private static class Replayer implements CommandExecutor {
+        private final Path file;
+        private final List<Map<String, Object>> entries = new ArrayList<>();
+        private final List<Object> keys = new ArrayList<>();
+        private int cursor;
+
+        @SuppressWarnings("unchecked")
+        Replayer(Path file) {
+            this.file = file;
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (!line.isEmpty()) {
+                        Map<String, Object> entry = CommandLog.JSON.toType(line, Map.class);
+                        entries.add(entry);
+                        keys.add(CommandLog.matchKey((String) entry.get("name"), entry.get("params")));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("No recording to replay at " + file
+                    + "; record it first with -Dcommands.mode=record", e);
+            }
+            logger.info("Replaying " + entries.size() + " WebDriver commands from " + file);
+        }
+
+        @Override
+        public synchronized Response execute(Command command) {
+            String name = command.getName();
+            Object key = CommandLog.matchKey(name, command.getParameters());
+            int next = cursor;
+            while (next < entries.size() && !keys.get(next).equals(key) && isPassive(next)) {
+                next++;
+            }
+            if (next < entries.size() && keys.get(next).equals(key)) {
+                cursor = next + 1;
+                return CommandLog.decode(entries.get(next));
+            }
+            String expected = next < entries.size() ? (String) entries.get(next).get("name") : "end of recording";
+            if (DriverCommand.QUIT.equals(name)) {
+                // Quitting is always possible and must not fail teardown, but commands the test no longer issues are reported
+                if (next < entries.size()) {
+                    CommandLog.diverged();
+                    logger.warn("Replay of " + file.getFileName() + " quit before recorded command " + expected
+                        + " at entry " + (next + 1) + " of " + entries.size());
+                }
+                Response response = new Response();
+                response.setStatus(0);
+                return response;
+            }
+            CommandLog.diverged();
+            throw new Divergence("Command not in recording " + file.getFileName() + ": " + CommandLog.describe(command)
+                + " (next recorded command: " + expected + ")");
+        }
+
+        private boolean isPassive(int index) {
+            return Boolean.TRUE.equals(entries.get(index).get("passive"));
+        }
+    }
+}
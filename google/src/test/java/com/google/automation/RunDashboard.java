@@ -0,0 +1,443 @@
+package com.google.automation;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ISuite;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live progress of a running suite, served as a web page fed by server-sent events
+ *
+ * TestResultsListener reports each test start and outcome. A page at http://localhost:port/ subscribes to
+ * /events and shows the running, passed, failed and skipped counts, the test each worker thread is running
+ * and for how long, throughput over the last minute and an ETA. The ETA sums the TestDurations history of
+ * the tests still to run and divides by the rate at which the run has been working through that history,
+ * so it accounts for parallelism. Tests running longer than twice their history are marked as stalled.
+ * /state returns the current snapshot as JSON. Snapshots are pushed on every change, at most four times a
+ * second, and once a second otherwise so in-flight times keep moving.
+ *
+ * Options:
+ *   -Ddashboard.port=n              serve the dashboard on this port (off by default); shard i of a sharded
+ *                                   run uses n + 1 + i, so the coordinating run keeps n
+ */
+public final class RunDashboard {
+    private static final Logger logger = LoggerFactory.getLogger(RunDashboard.class);
+    private static final RunDashboard INSTANCE = new RunDashboard();
+    // Expected duration of a test with no history
+    private static final long DEFAULT_EXPECTED_MILLIS = 30_000;
+    private static final long THROUGHPUT_WINDOW_MILLIS = 60_000;
+    private static final Gson GSON = new Gson();
+
+    private static final String PAGE = "<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Test run</title>"
+        + "<style>body{font-family:sans-serif;margin:2em}td,th{padding:2px 12px;text-align:left}"
+        + ".counts span{display:inline-block;min-width:7em;font-size:1.4em}.passed{color:#188038}"
+        + ".failed{color:#d93025}.skipped{color:#b06000}.stalled{background:#fce8e6}</style></head><body>"
+        + "<h2 id=\"title\">Test run</h2>"
+        + "<div class=\"counts\"><span id=\"running\"></span><span class=\"passed\" id=\"passed\"></span>"
+        + "<span class=\"failed\" id=\"failed\"></span><span class=\"skipped\" id=\"skipped\"></span></div>"
+        + "<p id=\"progress\"></p><table><thead><tr><th>Thread</th><th>Test</th><th>Running</th>"
+        + "<th>Expected</th></tr></thead><tbody id=\"inflight\"></tbody></table>"
+        + "<script>"
+        + "function s(ms){return ms==null?'-':Math.round(ms/1000)+'s';}"
+        + "function text(id,value){document.getElementById(id).textContent=value;}"
+        + "var source=new EventSource('events');"
+        + "source.onmessage=function(e){var d=JSON.parse(e.data);"
+        + "text('title',d.suite+(d.finished?' (finished)':''));"
+        + "text('running',d.running+' running');text('passed',d.passed+' passed');"
+        + "text('failed',d.failed+' failed');text('skipped',d.skipped+' skipped');"
+        + "text('progress',d.done+' of '+d.planned+' done in '+s(d.elapsedMs)+', '"
+        + "+d.testsPerMinute.toFixed(1)+' tests/min, ETA '+s(d.etaMs));"
+        + "var rows=document.getElementById('inflight');rows.innerHTML='';"
+        + "d.inFlight.forEach(function(t){var r=rows.insertRow();if(t.stalled){r.className='stalled';}"
+        + "[t.thread,t.test,s(t.runningMs),s(t.expectedMs)].forEach(function(v){r.insertCell().textContent=v;});});"
+        + "if(d.finished){source.close();}};"
+        + "</script></body></html>";
+
+    private final List<OutputStream> subscribers = new CopyOnWriteArrayList<>();
+    private final Map<String, InFlight> inFlight = new TreeMap<>();
+    private final Deque<Long> recentFinishes = new ArrayDeque<>();
+    // Expected milliseconds of each planned test not yet finished, by TestDurations key
+    private final Map<String, Deque<Long>> pending = new HashMap<>();
+    // Data-driven methods by TestDurations key; their rows are counted as they start
+    private final Map<String, Rows> dataDriven = new HashMap<>();
+    private HttpServer server;
+    private ScheduledExecutorService pusher;
+    private String suiteName = "";
+    private long startMillis;
+    private int planned;
+    private int passed;
+    private int failed;
+    private int skipped;
+    private long expectedDone;
+    private boolean finished;
+    private boolean changed;
+
+    /**
+     * A test running on a worker thread
+     */
+    private static class InFlight {
+        private final String test;
+        private final long startMillis;
+        private final long expectedMillis;
+
+        InFlight(String test, long startMillis, long expectedMillis) {
+            this.test = test;
+            this.startMillis = startMillis;
+            this.expectedMillis = expectedMillis;
+        }
+    }
+
+    /**
+     * The rows of a data-driven method seen so far; its history is the total of all its rows
+     */
+    private static class Rows {
+        // History not yet used up by finished rows
+        private long remainingMillis;
+        private int started;
+        private int finished;
+        private long finishedMillis;
+
+        Rows(long historyMillis) {
+            this.remainingMillis = historyMillis;
+        }
+
+        long expectedPerRow() {
+            return finished > 0 ? finishedMillis / finished : remainingMillis;
+        }
+    }
+
+    private RunDashboard() {
+    }
+
+    public static RunDashboard shared() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return System.getProperty("dashboard.port") != null;
+    }
+
+    /**
+     * Get the port this JVM serves on, offset per shard so shards on one machine do not collide
+     */
+    static int port() {
+        int port = Integer.getInteger("dashboard.port", 0);
+        return ShardConfig.isSharded() ? port + 1 + ShardConfig.index() : port;
+    }
+
+    /**
+     * Start serving for a suite; the planned tests and their history drive the ETA
+     */
+    public synchronized void suiteStarted(ISuite suite) {
+        if (!isEnabled() || server != null) {
+            return;
+        }
+        // A warm runner daemon serves one run after another from the same instance
+        inFlight.clear();
+        recentFinishes.clear();
+        pending.clear();
+        dataDriven.clear();
+        planned = 0;
+        passed = 0;
+        failed = 0;
+        skipped = 0;
+        expectedDone = 0;
+        finished = false;
+        suiteName = suite.getName();
+        startMillis = System.currentTimeMillis();
+        Map<String, Long> history = TestDurations.load(TestDurations.file());
+        long fallback = history.isEmpty() ? DEFAULT_EXPECTED_MILLIS
+            : history.values().stream().sorted().skip(history.size() / 2).findFirst().get();
+        // A shard only counts the methods ShardInterceptor will keep
+        Map<String, Integer> shards = ShardConfig.isSharded()
+            ? ShardInterceptor.assign(suite.getAllMethods().stream().map(TestDurations::key).distinct().sorted().toList(),
+                history, ShardConfig.count())
+            : Collections.emptyMap();
+        for (ITestNGMethod method : suite.getAllMethods()) {
+            String key = TestDurations.key(method);
+            if (shards.getOrDefault(key, ShardConfig.index()) != ShardConfig.index()) {
+                continue;
+            }
+            long historyMillis = history.getOrDefault(key, fallback);
+            Method javaMethod = method.getConstructorOrMethod().getMethod();
+            Test test = javaMethod == null ? null : javaMethod.getAnnotation(Test.class);
+            if (test != null && !test.dataProvider().isEmpty()) {
+                // Calling the provider here would run it twice, so rows are counted as they start
+                dataDriven.put(key, new Rows(historyMillis));
+                planned++;
+                continue;
+            }
+            // The history holds a method's total over all its invocations
+            int invocations = Math.max(1, method.getInvocationCount());
+            long expectedMillis = history.containsKey(key) ? historyMillis / invocations : fallback;
+            Deque<Long> expected = pending.computeIfAbsent(key, k -> new ArrayDeque<>());
+            for (int i = 0; i < invocations; i++) {
+                expected.add(expectedMillis);
+            }
+            planned += invocations;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port()), 0);
+        } catch (IOException e) {
+            logger.warn("Run dashboard disabled, cannot bind port " + port() + ": " + e.getMessage());
+            return;
+        }
+        server.createContext("/events", this::handleEvents);
+        server.createContext("/state", this::handleState);
+        server.createContext("/", this::handlePage);
+        server.setExecutor(Executors.newCachedThreadPool(daemon("run-dashboard")));
+        server.start();
+        pusher = Executors.newSingleThreadScheduledExecutor(daemon("run-dashboard-push"));
+        long[] ticks = {0};
+        pusher.scheduleWithFixedDelay(() -> {
+            // Every tick after a change, and every fourth tick regardless
+            if (takeChanged() || ++ticks[0] % 4 == 0) {
+                push();
+            }
+        }, 250, 250, TimeUnit.MILLISECONDS);
+        logger.info("Run dashboard at http://" + server.getAddress().getHostString() + ":"
+            + server.getAddress().getPort() + "/");
+    }
+
+    /**
+     * Record that the current thread started a test
+     */
+    public synchronized void testStarted(ITestNGMethod method) {
+        if (server == null) {
+            return;
+        }
+        String key = TestDurations.key(method);
+        Deque<Long> expected = pending.get(key);
+        Rows rows = dataDriven.get(key);
+        long expectedMillis;
+        if (rows != null) {
+            // The first row was planned; every further one is a test more than planned
+            if (++rows.started > 1) {
+                planned++;
+            }
+            expectedMillis = rows.expectedPerRow();
+        } else {
+            expectedMillis = expected != null && !expected.isEmpty() ? expected.peek() : DEFAULT_EXPECTED_MILLIS;
+        }
+        inFlight.put(Thread.currentThread().getName(), new InFlight(
+            method.getRealClass().getSimpleName() + "." + method.getMethodName(),
+            System.currentTimeMillis(), expectedMillis));
+        changed = true;
+    }
+
+    /**
+     * Record the outcome of the test the current thread was running
+     */
+    public synchronized void testFinished(ITestNGMethod method, int status) {
+        if (server == null) {
+            return;
+        }
+        if (status == ITestResult.SUCCESS) {
+            passed++;
+        } else if (status == ITestResult.SKIP) {
+            skipped++;
+        } else {
+            failed++;
+        }
+        long now = System.currentTimeMillis();
+        InFlight test = inFlight.remove(Thread.currentThread().getName());
+        String key = TestDurations.key(method);
+        Deque<Long> expected = pending.get(key);
+        Rows rows = dataDriven.get(key);
+        if (rows != null) {
+            long millis = test != null ? now - test.startMillis : 0;
+            long used = Math.min(millis, rows.remainingMillis);
+            rows.finished++;
+            rows.finishedMillis += millis;
+            rows.remainingMillis -= used;
+            expectedDone += used;
+        } else if (expected != null && !expected.isEmpty()) {
+            expectedDone += expected.poll();
+        }
+        recentFinishes.add(now);
+        while (recentFinishes.peek() < now - THROUGHPUT_WINDOW_MILLIS) {
+            recentFinishes.poll();
+        }
+        changed = true;
+    }
+
+    /**
+     * Push the final state to every page and stop serving
+     */
+    public void suiteFinished() {
+        synchronized (this) {
+            if (server == null) {
+                return;
+            }
+            finished = true;
+            inFlight.clear();
+        }
+        pusher.shutdownNow();
+        push();
+        for (OutputStream subscriber : subscribers) {
+            closeQuietly(subscriber);
+        }
+        subscribers.clear();
+        server.stop(0);
+        synchronized (this) {
+            server = null;
+        }
+    }
+
+    private synchronized boolean takeChanged() {
+        boolean wasChanged = changed;
+        changed = false;
+        return wasChanged;
+    }
+
+    /**
+     * Build the current state as sent to the page
+     */
+    synchronized Map<String, Object> snapshot() {
+        long now = System.currentTimeMillis();
+        long elapsed = Math.max(1, now - startMillis);
+        int done = passed + failed + skipped;
+
+        long remaining = 0;
+        for (Deque<Long> expected : pending.values()) {
+            for (long millis : expected) {
+                remaining += millis;
+            }
+        }
+        for (Rows rows : dataDriven.values()) {
+            remaining += rows.remainingMillis;
+        }
+        List<Map<String, Object>> running = new ArrayList<>();
+        for (Map.Entry<String, InFlight> entry : inFlight.entrySet()) {
+            InFlight test = entry.getValue();
+            long runningMillis = now - test.startMillis;
+            // Time already spent on a running test is no longer ahead of us
+            remaining -= Math.min(runningMillis, test.expectedMillis);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("thread", entry.getKey());
+            row.put("test", test.test);
+            row.put("runningMs", runningMillis);
+            row.put("expectedMs", test.expectedMillis);
+            row.put("stalled", runningMillis > 2 * test.expectedMillis);
+            running.add(row);
+        }
+        // History worked through per wall-clock millisecond, about the number of busy workers
+        long inProgress = 0;
+        for (InFlight test : inFlight.values()) {
+            inProgress += Math.min(now - test.startMillis, test.expectedMillis);
+        }
+        double rate = (double) (expectedDone + inProgress) / elapsed;
+        Long eta = finished ? Long.valueOf(0) : rate > 0 ? Long.valueOf(Math.round(Math.max(0, remaining) / rate)) : null;
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("suite", suiteName);
+        state.put("finished", finished);
+        state.put("planned", Math.max(planned, done + inFlight.size()));
+        state.put("done", done);
+        state.put("running", inFlight.size());
+        state.put("passed", passed);
+        state.put("failed", failed);
+        state.put("skipped", skipped);
+        state.put("elapsedMs", elapsed);
+        state.put("testsPerMinute", recentFinishes.size() * 60_000.0 / Math.min(elapsed, THROUGHPUT_WINDOW_MILLIS));
+        state.put("etaMs", eta);
+        state.put("inFlight", running);
+        return state;
+    }
+
+    private void push() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        byte[] event = event(snapshot());
+        for (OutputStream subscriber : subscribers) {
+            try {
+                subscriber.write(event);
+                subscriber.flush();
+            } catch (IOException e) {
+                // The page was closed
+                subscribers.remove(subscriber);
+                closeQuietly(subscriber);
+            }
+        }
+    }
+
+    private static byte[] event(Map<String, Object> state) {
+        return ("data: " + GSON.toJson(state) + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void handleEvents(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        // The exchange stays open after the handler returns; the push thread writes to it
+        OutputStream body = exchange.getResponseBody();
+        body.write(event(snapshot()));
+        body.flush();
+        subscribers.add(body);
+    }
+
+    private void handleState(HttpExchange exchange) throws IOException {
+        send(exchange, "application/json", GSON.toJson(snapshot()));
+    }
+
+    private void handlePage(HttpExchange exchange) throws IOException {
+        if (!"/".equals(exchange.getRequestURI().getPath())) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        send(exchange, "text/html", PAGE);
+    }
+
+    private static void send(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.debug("Closing dashboard stream: " + e.getMessage());
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
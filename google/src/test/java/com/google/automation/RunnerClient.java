@@ -0,0 +1,62 @@
+package com.google.automation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends a run request to a RunnerDaemon and prints its output, exiting with the run's exit code
+ *
+ * Usage, after the daemon is started as RunnerDaemon describes:
+ *   java -cp target/test-classes com.google.automation.RunnerClient GoogleSearchTest
+ *   java -cp target/test-classes com.google.automation.RunnerClient GoogleSearchTest#testGoogleSearch @light
+ *   java -cp target/test-classes com.google.automation.RunnerClient --stop
+ *
+ * Exits with 0 when all tests passed, 1 on failures and 2 when the run could not start (compile errors,
+ * unknown classes, no daemon). Uses nothing but the JDK so it starts quickly.
+ *
+ * Options:
+ *   -Drunner.port=7777    port the daemon listens on
+ */
+public class RunnerClient {
+    static final int DEFAULT_PORT = 7777;
+    static final String EXIT = "EXIT ";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: RunnerClient <Class | Class#method | @group>... | --stop");
+            System.exit(2);
+        }
+        String request = "--stop".equals(args[0]) ? "STOP" : "RUN " + String.join(" ", args);
+        System.exit(send(request, Integer.getInteger("runner.port", DEFAULT_PORT), System.out));
+    }
+
+    /**
+     * Send one request and copy the reply to out; returns the exit code the daemon reported
+     */
+    static int send(String request, int port, PrintStream out) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            PrintStream requestOut = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            requestOut.println(request);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(EXIT)) {
+                    return Integer.parseInt(line.substring(EXIT.length()).trim());
+                }
+                out.println(line);
+            }
+            out.println("Runner daemon closed the connection before the run finished");
+            return 2;
+        } catch (ConnectException e) {
+            out.println("No runner daemon on port " + port + ", start one with: "
+                + "java -cp target/test-classes:$(cat target/classpath.txt) com.google.automation.RunnerDaemon");
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestNGListener;
+import org.testng.ITestResult;
+import org.testng.TestNG;
+import org.testng.annotations.Test;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlInclude;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Long-lived local test runner that keeps the JVM, the test classes and a set of browsers warm
+ *
+ * RunnerClient sends a run request (a class, a class#method or an @group) over a loopback socket. Before
+ * each run, test sources newer than their class files are compiled in process, and changed class files
+ * are loaded into a fresh ReloadingClassLoader, so an edited test runs without restarting anything. The
+ * suite is built in memory and run by TestNG with TestResultsListener; everything it prints is streamed
+ * back to the client, followed by the exit code.
+ *
+ * BaseTest tests take their sessions from the reuse pool, which the daemon fills at start-up and keeps
+ * open between runs (-Dsession.reuse=true and -Dsession.keep=true are set). The classes that hold
+ * browsers, and every class they reference, are never reloaded: after changing one of those, restart
+ * the daemon. Start it with its dependencies on the class path:
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ *   java -cp target/test-classes:$(cat target/classpath.txt) com.google.automation.RunnerDaemon
+ * mvn test -Pdaemon checks that consecutive runs get the same warm session, see RunnerDaemonTest.
+ *
+ * Options:
+ *   -Drunner.port=7777              loopback port to listen on
+ *   -Drunner.browsers=2             sessions started ahead of the first run (default 1)
+ *   -Drunner.compile=false          do not compile changed sources, only reload class files
+ *   -Drunner.sources=src/test/java  where changed sources are looked for
+ */
+public class RunnerDaemon {
+    private static final Logger logger = LoggerFactory.getLogger(RunnerDaemon.class);
+    private static final String PACKAGE = "com.google.automation";
+    // The classes that own browsers between runs; everything they reference stays warm too
+    private static final Set<String> WARM_ROOTS = new TreeSet<>(Arrays.asList(
+        PACKAGE + ".BaseTest", PACKAGE + ".DriverPool", PACKAGE + ".DriverTiers", PACKAGE + ".TabMultiplexer",
+        PACKAGE + ".LocalDriverFactory", PACKAGE + ".RunnerDaemon"));
+
+    private final int port;
+    private final Path classesDir;
+    private final Set<String> warm;
+    private final Map<String, Long> warmTimes = new HashMap<>();
+    private Map<String, Long> loadedTimes = new HashMap<>();
+    private ReloadingClassLoader loader;
+    private volatile boolean stopped;
+
+    public RunnerDaemon(int port) {
+        this.port = port;
+        try {
+            classesDir = Paths.get(RunnerDaemon.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Cannot locate the test classes", e);
+        }
+        warm = ReloadingClassLoader.warmClasses(classesDir, WARM_ROOTS);
+        Map<String, Long> times = ReloadingClassLoader.snapshot(classesDir);
+        for (String name : warm) {
+            warmTimes.put(name, times.get(name));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new RunnerDaemon(Integer.getInteger("runner.port", RunnerClient.DEFAULT_PORT)).serve();
+    }
+
+    /**
+     * Warm up browsers and serve run requests until a client asks the daemon to stop
+     */
+    public void serve() throws IOException, InterruptedException {
+        System.setProperty("session.reuse", "true");
+        System.setProperty("session.keep", "true");
+        long start = System.nanoTime();
+        BaseTest.warmUp(Integer.getInteger("runner.browsers", 1));
+        logger.info(String.format("Runner daemon warmed up in %d ms: %d browser sessions, %d warm classes",
+            (System.nanoTime() - start) / 1_000_000, Integer.getInteger("runner.browsers", 1), warm.size()));
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            logger.info("Runner daemon listening on " + server.getLocalSocketAddress()
+                + ", run tests with: java -cp " + classesDir + " " + RunnerClient.class.getName() + " TestClass#method");
+            while (!stopped) {
+                try (Socket socket = server.accept()) {
+                    handle(socket);
+                } catch (IOException e) {
+                    logger.warn("Runner client connection failed: " + e.getMessage());
+                }
+            }
+        } finally {
+            BaseTest.closeSessions();
+            logger.info("Runner daemon stopped");
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        String request = in.readLine();
+        if (request == null) {
+            return;
+        }
+        List<String> words = Arrays.stream(request.trim().split("\\s+")).filter(w -> !w.isEmpty()).collect(Collectors.toList());
+        if (words.isEmpty()) {
+            out.println(RunnerClient.EXIT + 2);
+        } else if ("STOP".equals(words.get(0))) {
+            stopped = true;
+            out.println("Runner daemon stopping");
+            out.println(RunnerClient.EXIT + 0);
+        } else if ("RUN".equals(words.get(0)) && words.size() > 1) {
+            out.println(RunnerClient.EXIT + run(words.subList(1, words.size()), out));
+        } else {
+            out.println("Unknown request: " + request);
+            out.println(RunnerClient.EXIT + 2);
+        }
+    }
+
+    /**
+     * Run classes, methods and groups with the output teed to the client
+     * Returns 0 when everything passed, 1 on failures and 2 when the run could not start.
+     */
+    private int run(List<String> targets, PrintStream client) {
+        long start = System.nanoTime();
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ClassLoader originalContext = Thread.currentThread().getContextClassLoader();
+        System.setOut(new PrintStream(new Tee(originalOut, client), true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new Tee(originalErr, client), true, StandardCharsets.UTF_8));
+        try {
+            if (Boolean.parseBoolean(System.getProperty("runner.compile", "true")) && !compileChangedSources()) {
+                return 2;
+            }
+            ReloadingClassLoader runLoader = currentLoader();
+            Thread.currentThread().setContextClassLoader(runLoader);
+            XmlSuite suite = suite(targets, runLoader);
+
+            Outcome outcome = new Outcome();
+            TestNG testng = new TestNG(false);
+            testng.setUseDefaultListeners(false);
+            testng.setVerbose(0);
+            testng.setOutputDirectory(Paths.get("target", "runner-output").toString());
+            testng.setXmlSuites(List.of(suite));
+            testng.addListener((ITestNGListener) runLoader.loadClass(PACKAGE + ".TestResultsListener")
+                .getDeclaredConstructor().newInstance());
+            testng.addListener((ITestNGListener) outcome);
+            testng.run();
+
+            System.out.println(String.format("Ran %d tests in %d ms", outcome.tests, (System.nanoTime() - start) / 1_000_000));
+            return outcome.failed ? 1 : 0;
+        } catch (ClassNotFoundException e) {
+            System.out.println("No test class " + e.getMessage() + " in " + classesDir);
+            return 2;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 2;
+        } finally {
+            Thread.currentThread().setContextClassLoader(originalContext);
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+    }
+
+    /**
+     * Build a suite from class names (simple or qualified), Class#method and @group targets
+     */
+    private XmlSuite suite(List<String> targets, ClassLoader runLoader) throws ClassNotFoundException {
+        XmlSuite suite = new XmlSuite();
+        suite.setName("Runner Daemon");
+        XmlTest test = new XmlTest(suite);
+        test.setName(String.join(" ", targets));
+        Map<String, XmlClass> classes = new LinkedHashMap<>();
+        for (String target : targets) {
+            if (target.startsWith("@")) {
+                test.addIncludedGroup(target.substring(1));
+                for (String name : new TreeSet<>(ReloadingClassLoader.snapshot(classesDir).keySet())) {
+                    Class<?> type = runLoader.loadClass(name);
+                    if (hasTests(type)) {
+                        classes.computeIfAbsent(name, n -> new XmlClass(type, false));
+                    }
+                }
+                continue;
+            }
+            String[] parts = target.split("#", 2);
+            String name = parts[0].contains(".") ? parts[0] : PACKAGE + "." + parts[0];
+            Class<?> type = runLoader.loadClass(name);
+            XmlClass xmlClass = classes.computeIfAbsent(name, n -> new XmlClass(type, false));
+            if (parts.length > 1) {
+                xmlClass.getIncludedMethods().add(new XmlInclude(parts[1]));
+            }
+        }
+        test.setXmlClasses(new ArrayList<>(classes.values()));
+        return suite;
+    }
+
+    private static boolean hasTests(Class<?> type) {
+        if (Modifier.isAbstract(type.getModifiers()) || type.isInterface()) {
+            return false;
+        }
+        if (type.isAnnotationPresent(Test.class)) {
+            return true;
+        }
+        for (Method method : type.getMethods()) {
+            if (method.isAnnotationPresent(Test.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get a loader with the current class files, reusing the last one while nothing changed
+     */
+    private synchronized ReloadingClassLoader currentLoader() {
+        Map<String, Long> times = ReloadingClassLoader.snapshot(classesDir);
+        List<String> changedWarm = new ArrayList<>();
+        for (String name : warm) {
+            Long time = times.get(name);
+            if (time != null && !time.equals(warmTimes.get(name))) {
+                changedWarm.add(name.substring(PACKAGE.length() + 1));
+            }
+        }
+        if (!changedWarm.isEmpty()) {
+            System.out.println("Changed but kept warm, restart the daemon to load them: " + String.join(", ", changedWarm));
+        }
+        times.keySet().removeAll(warm);
+        if (loader == null || !times.equals(loadedTimes)) {
+            long changed = times.entrySet().stream().filter(e -> !e.getValue().equals(loadedTimes.get(e.getKey()))).count();
+            if (loader != null) {
+                System.out.println("Reloading test classes, " + changed + " changed");
+            }
+            loader = new ReloadingClassLoader(classesDir, warm, RunnerDaemon.class.getClassLoader());
+            loadedTimes = times;
+        }
+        return loader;
+    }
+
+    /**
+     * Compile test sources that are newer than their class files into the test classes directory
+     * Returns false if compilation failed; the errors are printed for the client.
+     */
+    private boolean compileChangedSources() throws IOException {
+        Path sources = Paths.get(System.getProperty("runner.sources", "src/test/java"));
+        Path packageDir = sources.resolve(PACKAGE.replace('.', '/'));
+        if (!Files.isDirectory(packageDir)) {
+            return true;
+        }
+        List<File> changed = new ArrayList<>();
+        try (Stream<Path> files = Files.list(packageDir)) {
+            for (Path source : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".java"))::iterator) {
+                String name = source.getFileName().toString();
+                Path compiled = classesDir.resolve(PACKAGE.replace('.', '/')).resolve(name.replace(".java", ".class"));
+                if (!Files.exists(compiled) || Files.getLastModifiedTime(source).compareTo(Files.getLastModifiedTime(compiled)) > 0) {
+                    changed.add(source.toFile());
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            return true;
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            System.out.println("No compiler in this JVM, compile " + changed.size() + " changed sources yourself");
+            return true;
+        }
+        long start = System.nanoTime();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = List.of("-d", classesDir.toString(), "-proc:none", "-encoding", "UTF-8",
+                "-sourcepath", sources.toString(),
+                "-cp", System.getProperty("surefire.test.class.path", System.getProperty("java.class.path")));
+            boolean compiled = compiler.getTask(null, files, diagnostics, options, null,
+                files.getJavaFileObjectsFromFiles(changed)).call();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    System.out.println(diagnostic);
+                }
+            }
+            System.out.println(String.format("Compiled %d changed sources in %d ms%s", changed.size(),
+                (System.nanoTime() - start) / 1_000_000, compiled ? "" : ", with errors"));
+            return compiled;
+        }
+    }
+
+    /**
+     * Counts tests and notes any failure, for the client's exit code
+     */
+    private static class Outcome implements ITestListener {
+        private int tests;
+        private boolean failed;
+
+        @Override
+        public void onTestStart(ITestResult result) {
+        }
+
+        @Override
+        public synchronized void onTestSuccess(ITestResult result) {
+            tests++;
+        }
+
+        @Override
+        public synchronized void onTestFailure(ITestResult result) {
+            tests++;
+            failed = true;
+        }
+
+        @Override
+        public synchronized void onTestSkipped(ITestResult result) {
+            tests++;
+        }
+
+        @Override
+        public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
+        }
+
+        @Override
+        public void onStart(ITestContext context) {
+        }
+
+        @Override
+        public synchronized void onFinish(ITestContext context) {
+            if (!context.getFailedConfigurations().getAllResults().isEmpty()) {
+                failed = true;
+            }
+        }
+    }
+
+    /**
+     * Writes to the daemon's console and to the client; a client that went away is ignored
+     */
+    private static class Tee extends OutputStream {
+        private final OutputStream console;
+        private final PrintStream client;
+
+        Tee(OutputStream console, PrintStream client) {
+            this.console = console;
+            this.client = client;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            console.write(b);
+            client.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            console.write(bytes, offset, length);
+            client.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            console.flush();
+            client.flush();
+        }
+    }
+}
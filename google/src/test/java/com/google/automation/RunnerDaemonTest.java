@@ -0,0 +1,110 @@
+package com.google.automation;
+
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+/**
+ * Checks that the warm runner daemon hands its warm session to one run after another
+ * A daemon is started in this JVM on a free port and asked to run SessionProbe twice. Not part of the
+ * default suite, because the daemon turns session reuse on for the whole JVM. Run with: mvn test -Pdaemon
+ */
+public class RunnerDaemonTest {
+    private static final String SESSIONS_PROPERTY = "runner.probe.sessions";
+    private static final String PROBE = RunnerDaemonTest.class.getSimpleName() + "$" + SessionProbe.class.getSimpleName();
+    private static final long START_TIMEOUT_MILLIS = 120_000;
+
+    /**
+     * Runs in the daemon: notes the session it was given
+     */
+    public static class SessionProbe extends BaseTest {
+
+        @BeforeMethod(groups = "daemon-probe")
+        public void setUp(ITestResult result, Object[] parameters) {
+            super.setUp(result, parameters);
+        }
+
+        @AfterMethod(groups = "daemon-probe")
+        public void tearDown() {
+            super.tearDown();
+        }
+
+        @Test(description = "Note the session this run was given", groups = "daemon-probe")
+        public void testNoteSession() {
+            String session = driver instanceof RemoteWebDriver
+                ? ((RemoteWebDriver) driver).getSessionId().toString()
+                : driver.getClass().getSimpleName() + "@" + System.identityHashCode(driver);
+            synchronized (RunnerDaemonTest.class) {
+                String previous = System.getProperty(SESSIONS_PROPERTY);
+                System.setProperty(SESSIONS_PROPERTY, previous == null ? session : previous + "," + session);
+            }
+        }
+    }
+
+    /**
+     * Test: Two consecutive runs get the session the daemon warmed up
+     */
+    @Test(description = "DAEMON: Consecutive runs reuse the warm session", groups = "daemon")
+    public void testRunsReuseWarmSession() throws Exception {
+        int port;
+        try (ServerSocket free = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = free.getLocalPort();
+        }
+        System.clearProperty(SESSIONS_PROPERTY);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread daemon = new Thread(() -> {
+            try {
+                new RunnerDaemon(port).serve();
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                failure.set(e);
+            }
+        }, "runner-daemon");
+        daemon.setDaemon(true);
+        daemon.start();
+        try {
+            awaitListening(port, daemon, failure);
+            assertEquals(RunnerClient.send("RUN " + PROBE, port, System.out), 0, "First run failed");
+            assertEquals(RunnerClient.send("RUN " + PROBE, port, System.out), 0, "Second run failed");
+        } finally {
+            if (daemon.isAlive()) {
+                RunnerClient.send("STOP", port, System.out);
+                daemon.join(START_TIMEOUT_MILLIS);
+            }
+        }
+
+        String[] sessions = System.getProperty(SESSIONS_PROPERTY, "").split(",");
+        assertEquals(sessions.length, 2, "Expected one session noted per run");
+        assertEquals(sessions[1], sessions[0], "The second run did not get the warm session of the first");
+    }
+
+    /**
+     * Wait for the daemon to warm up and listen, failing if it dies first
+     */
+    private static void awaitListening(int port, Thread daemon, AtomicReference<Exception> failure)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!daemon.isAlive()) {
+                throw new AssertionError("Runner daemon did not start", failure.get());
+            }
+            try (Socket probe = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                // The daemon ignores a connection that closes without a request
+                return;
+            } catch (IOException e) {
+                Thread.sleep(200);
+            }
+        }
+        throw new AssertionError("Runner daemon did not listen on port " + port + " within "
+            + START_TIMEOUT_MILLIS / 1000 + " s");
+    }
+}
@@ -0,0 +1,93 @@
+package com.google.automation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams search terms from a corpus file one line at a time
+ * Blank lines and lines starting with '#' are skipped. The reader is closed when the end is reached.
+ * The corpus is read from the file named by -Dsearch.corpus, or from search-corpus.txt on the classpath.
+ */
+public class SearchCorpus implements Iterator<Object[]>, AutoCloseable {
+    private static final String DEFAULT_RESOURCE = "search-corpus.txt";
+
+    private final BufferedReader reader;
+    private String next;
+    private boolean closed = false;
+
+    private SearchCorpus(InputStream input) {
+        this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        advance();
+    }
+
+    /**
+     * Open the configured corpus
+     */
+    public static SearchCorpus open() {
+        String path = System.getProperty("search.corpus");
+        try {
+            if (path != null && !path.isEmpty()) {
+                return new SearchCorpus(Files.newInputStream(Paths.get(path)));
+            }
+            InputStream resource = SearchCorpus.class.getClassLoader().getResourceAsStream(DEFAULT_RESOURCE);
+            if (resource == null) {
+                throw new IllegalStateException("Search corpus not found on classpath: " + DEFAULT_RESOURCE);
+            }
+            return new SearchCorpus(resource);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open search corpus: " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public synchronized Object[] next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        String term = next;
+        advance();
+        return new Object[]{term};
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void advance() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    next = line;
+                    return;
+                }
+            }
+            next = null;
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read search corpus", e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.testng.ITestContext;
+import org.testng.Reporter;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+
+/**
+ * Data-driven search scenarios streamed from a corpus file
+ * Invocations run in parallel on the data provider thread pool and share a pool of local sessions.
+ * Runs against the local search server unless -Dsearch.baseUrl is given.
+ *
+ * Options:
+ *   -Dsearch.corpus=path      corpus file, one term per line (default: search-corpus.txt on the classpath)
+ *   -Dsearch.baseUrl=url      site to search instead of the local search server
+ *   -Dsearch.pool.size=n      number of pooled sessions (default: data-provider-thread-count)
+ *
+ * Per-term latency is written to target/search-corpus-latency.csv.
+ */
+public class SearchCorpusTest {
+    private static final Logger logger = LoggerFactory.getLogger(SearchCorpusTest.class);
+    private static final Path RESULTS_FILE = Paths.get("target", "search-corpus-latency.csv");
+
+    private final LatencyStats latency = new LatencyStats();
+    private LocalSearchServer server;
+    private String baseUrl;
+    private DriverPool pool;
+    private BufferedWriter results;
+
+    @BeforeClass
+    public void setUpClass(ITestContext context) throws IOException {
+        String configuredUrl = System.getProperty("search.baseUrl");
+        if (configuredUrl == null || configuredUrl.isEmpty()) {
+            server = LocalSearchServer.start();
+            baseUrl = server.getBaseUrl();
+        } else {
+            baseUrl = configuredUrl;
+        }
+
+        int poolSize = Integer.getInteger("search.pool.size",
+            context.getSuite().getXmlSuite().getDataProviderThreadCount());
+        pool = new DriverPool(poolSize, LocalDriverFactory::createDriver);
+
+        Files.createDirectories(RESULTS_FILE.getParent());
+        results = Files.newBufferedWriter(RESULTS_FILE);
+        results.write("term,latencyMs,status");
+        results.newLine();
+        logger.info("Search corpus run against " + baseUrl + " with " + poolSize + " pooled sessions");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws IOException {
+        logger.info("Search corpus latency: " + latency.summary());
+        if (results != null) {
+            results.close();
+            logger.info("Per-term latency written to " + RESULTS_FILE.toAbsolutePath());
+        }
+        if (pool != null) {
+            pool.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Terms are read from the corpus lazily as invocations are scheduled
+     */
+    @DataProvider(name = "searchCorpus", parallel = true)
+    public Iterator<Object[]> searchCorpus() {
+        return SearchCorpus.open();
+    }
+
+    /**
+     * Test: Search for a corpus term and verify the results page
+     */
+    @Test(dataProvider = "searchCorpus", description = "Data-driven search from corpus")
+    public void testCorpusSearch(String term) throws InterruptedException {
+        WebDriver driver = pool.borrow();
+        long startTime = System.nanoTime();
+        String status = "FAILED";
+        try {
+            GoogleResultsPage resultsPage = new GoogleHomePage(driver, baseUrl).open()
+                .clearSearchBox()
+                .search(term)
+                .waitForTitleContains(term);
+
+            String resultTitle = resultsPage.getTitle();
+            assertTrue(resultTitle.toLowerCase().contains(term.toLowerCase()),
+                      "Results should contain: " + term);
+            status = "PASSED";
+        } finally {
+            long latencyMs = (System.nanoTime() - startTime) / 1_000_000;
+            latency.record(latencyMs);
+            writeResult(term, latencyMs, status);
+            BrowserHealth.shared().afterTest(driver, Reporter.getCurrentTestResult());
+            if ("PASSED".equals(status)) {
+                pool.release(driver);
+            } else {
+                releaseOrInvalidate(driver);
+            }
+        }
+    }
+
+    private synchronized void writeResult(String term, long latencyMs, String status) {
+        try {
+            results.write("\"" + term.replace("\"", "\"\"") + "\"," + latencyMs + "," + status);
+            results.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write search corpus results", e);
+        }
+    }
+
+    /**
+     * Return the session to the pool after a failure, or replace it if the browser is gone
+     */
+    private void releaseOrInvalidate(WebDriver driver) {
+        try {
+            driver.getWindowHandle();
+            pool.release(driver);
+        } catch (WebDriverException e) {
+            logger.warn("Pooled session is no longer usable, replacing it", e);
+            pool.invalidate(driver);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.time.Duration;
+
+/**
+ * The regression user journey as a sequence of timed steps
+ * homepage -> type query -> RETURN -> wait for #rso -> #pnnext
+ * Mirrors GoogleSearchRegressionTest so the load generator replays the flows the suite already checks.
+ */
+public class SearchJourney {
+    public static final String STEP_HOMEPAGE = "homepage";
+    public static final String STEP_TYPE = "type";
+    public static final String STEP_SUBMIT = "submit";
+    public static final String STEP_RESULTS = "results";
+    public static final String STEP_NEXT_PAGE = "nextPage";
+
+    /**
+     * Receives the duration of each completed step
+     */
+    public interface StepListener {
+        void onStep(String step, long millis);
+    }
+
+    private final String baseUrl;
+    private final Duration timeout;
+
+    public SearchJourney(String baseUrl, Duration timeout) {
+        this.baseUrl = baseUrl;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Run the journey once for a query
+     */
+    public void run(WebDriver driver, String query, StepListener listener) {
+        long start = System.nanoTime();
+        GoogleHomePage homePage = new GoogleHomePage(driver, baseUrl, timeout).open();
+        homePage.searchBox();
+        start = step(listener, STEP_HOMEPAGE, start);
+
+        homePage.clearSearchBox().typeQuery(query);
+        start = step(listener, STEP_TYPE, start);
+
+        GoogleResultsPage resultsPage = homePage.submitSearch().waitForQueryInUrl();
+        start = step(listener, STEP_SUBMIT, start);
+
+        resultsPage.resultsContainer();
+        start = step(listener, STEP_RESULTS, start);
+
+        WebElement nextButton = resultsPage.nextPageButton();
+        if (nextButton != null) {
+            resultsPage.goToNextPage();
+            step(listener, STEP_NEXT_PAGE, start);
+        }
+    }
+
+    private static long step(StepListener listener, String step, long start) {
+        long now = System.nanoTime();
+        listener.onStep(step, (now - start) / 1_000_000);
+        return now;
+    }
+}
@@ -0,0 +1,82 @@
+package com.google.automation;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic load run replaying the regression search journey
+ * Not part of the default suite. Run with: mvn test -Pload
+ *
+ * Options:
+ *   -Dload.users=n            concurrent virtual users (default 4)
+ *   -Dload.rampUp=seconds     time over which users are started (default 10)
+ *   -Dload.duration=seconds   total run time (default 60)
+ *   -Dload.window=seconds     reporting window (default 10)
+ *   -Dload.maxFailures=n      consecutive failed journeys before a user's session is replaced (default 3)
+ *   -Dload.baseUrl=url        site under test instead of the local search server
+ *
+ * Per-window throughput and step percentiles are written to target/load-report.csv.
+ */
+public class SearchLoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(SearchLoadTest.class);
+
+    private LocalSearchServer server;
+    private String baseUrl;
+
+    @BeforeClass
+    public void setUpClass() {
+        String configuredUrl = System.getProperty("load.baseUrl");
+        if (configuredUrl == null || configuredUrl.isEmpty()) {
+            server = LocalSearchServer.start();
+            baseUrl = server.getBaseUrl();
+        } else {
+            baseUrl = configuredUrl;
+        }
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Load: replay the search journey with concurrent headless sessions
+     */
+    @Test(description = "LOAD: Replay search journey with virtual users", groups = "load")
+    public void testSearchJourneyLoad() throws InterruptedException, IOException {
+        int users = Integer.getInteger("load.users", 4);
+        long rampUp = Long.getLong("load.rampUp", 10) * 1000;
+        long duration = Long.getLong("load.duration", 60) * 1000;
+        long window = Long.getLong("load.window", 10) * 1000;
+
+        List<String> queries = new ArrayList<>();
+        try (SearchCorpus corpus = SearchCorpus.open()) {
+            while (corpus.hasNext()) {
+                queries.add((String) corpus.next()[0]);
+            }
+        }
+
+        logger.info("Starting load run against " + baseUrl);
+        LoadGenerator generator = new LoadGenerator(users, rampUp, duration, window,
+            new SearchJourney(baseUrl, Duration.ofSeconds(10)),
+            () -> LocalDriverFactory.createDriver(LocalDriverFactory.createHeadlessOptions()),
+            queries);
+        generator.run();
+        generator.logReport();
+        generator.writeCsv(Paths.get("target", "load-report.csv"));
+
+        assertTrue(generator.completedJourneys() > 0, "Load run should complete at least one journey");
+    }
+}
@@ -0,0 +1,61 @@
+package com.google.automation;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Shard settings of the current JVM
+ *
+ * Options:
+ *   -DshardIndex=0             zero-based index of this shard
+ *   -DshardCount=1             number of shards (1 = sharding off)
+ *   -Dshard.resultsDir=dir     where shards write their summaries (default target/shards)
+ *   -Dshard.durationsHash=hex  SHA-256 of the test durations file every shard must see; a shard whose
+ *                              file differs stops, as it would not agree on the assignment
+ */
+public final class ShardConfig {
+    private ShardConfig() {
+    }
+
+    public static int index() {
+        return Integer.getInteger("shardIndex", 0);
+    }
+
+    public static int count() {
+        return Integer.getInteger("shardCount", 1);
+    }
+
+    /**
+     * Check whether this JVM runs one shard of a larger suite
+     */
+    public static boolean isSharded() {
+        int count = count();
+        int index = index();
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalStateException("Invalid shard " + index + " of " + count
+                + ", shardIndex must be between 0 and shardCount - 1");
+        }
+        return count > 1;
+    }
+
+    /**
+     * Get the checksum of the durations file all shards were started with, or null if none was given
+     */
+    public static String durationsHash() {
+        return System.getProperty("shard.durationsHash");
+    }
+
+    /**
+     * Get the directory holding every shard's results
+     */
+    public static Path resultsRoot() {
+        return Paths.get(System.getProperty("shard.resultsDir", "target/shards"));
+    }
+
+    /**
+     * Get the results directory of one shard
+     */
+    public static Path shardDir(int index) {
+        return resultsRoot().resolve("shard-" + index);
+    }
+}
@@ -0,0 +1,129 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps only the test methods that belong to this JVM's shard
+ *
+ * Every shard sees the same suite, so it computes the same assignment without talking to the others:
+ * methods are sorted by historical duration (longest first, name as tie-break) and each one goes to the
+ * shard with the least estimated time so far. Methods without history are weighted with the median.
+ * All invocations of a data-driven method stay in one shard. Does nothing unless -DshardCount is above 1.
+ *
+ * The assignment is only the same if every shard reads the same history. Shards on other machines must
+ * be given the checksum of the shared file with -Dshard.durationsHash (sha256sum test-durations.properties);
+ * a shard whose file differs fails instead of silently dropping or repeating tests.
+ */
+public class ShardInterceptor implements IMethodInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(ShardInterceptor.class);
+    private static final long DEFAULT_WEIGHT_MILLIS = 30_000;
+
+    private Map<String, Integer> assignment;
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (!ShardConfig.isSharded()) {
+            return methods;
+        }
+        Map<String, Integer> shards = assignment(context.getSuite().getAllMethods());
+        int index = ShardConfig.index();
+
+        List<IMethodInstance> kept = new ArrayList<>();
+        for (IMethodInstance instance : methods) {
+            if (shards.getOrDefault(TestDurations.key(instance.getMethod()), index) == index) {
+                kept.add(instance);
+            }
+        }
+        logger.info("Shard " + index + " keeps " + kept.size() + " of " + methods.size()
+            + " methods in '" + context.getName() + "'");
+        return kept;
+    }
+
+    private synchronized Map<String, Integer> assignment(List<ITestNGMethod> allMethods) {
+        if (assignment == null) {
+            List<String> keys = allMethods.stream()
+                .map(TestDurations::key)
+                .distinct()
+                .sorted()
+                .toList();
+            Path file = TestDurations.file();
+            checkHistory(file, ShardConfig.durationsHash());
+            assignment = assign(keys, TestDurations.load(file), ShardConfig.count());
+        }
+        return assignment;
+    }
+
+    /**
+     * Check that this shard reads the durations file the others were started with
+     */
+    static void checkHistory(Path file, String expectedHash) {
+        String actual = TestDurations.checksum(file);
+        if (expectedHash == null || expectedHash.isEmpty()) {
+            logger.warn("No -Dshard.durationsHash given; shards on other machines must read the same " + file
+                + " (sha256 " + actual + ") or their assignments differ");
+            return;
+        }
+        if (!actual.equalsIgnoreCase(expectedHash.trim())) {
+            throw new IllegalStateException("Test durations file " + file.toAbsolutePath() + " has sha256 " + actual
+                + " but the shards were started with " + expectedHash + "; shards would not agree on the assignment");
+        }
+    }
+
+    /**
+     * Assign methods to shards, longest processing time first
+     */
+    static Map<String, Integer> assign(List<String> keys, Map<String, Long> history, int shardCount) {
+        long defaultWeight = median(keys.stream().filter(history::containsKey).map(history::get).toList());
+        Map<String, Long> weights = new HashMap<>();
+        for (String key : keys) {
+            weights.put(key, history.getOrDefault(key, defaultWeight));
+        }
+
+        List<String> ordered = new ArrayList<>(keys);
+        ordered.sort(Comparator.comparing((String key) -> weights.get(key)).reversed()
+            .thenComparing(Comparator.naturalOrder()));
+
+        long[] loads = new long[shardCount];
+        int[] counts = new int[shardCount];
+        Map<String, Integer> shards = new TreeMap<>();
+        for (String key : ordered) {
+            int lightest = 0;
+            for (int shard = 1; shard < shardCount; shard++) {
+                if (loads[shard] < loads[lightest]) {
+                    lightest = shard;
+                }
+            }
+            shards.put(key, lightest);
+            loads[lightest] += weights.get(key);
+            counts[lightest]++;
+        }
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            logger.info(String.format("Shard %d/%d: %d methods, estimated %.1fs",
+                shard, shardCount, counts[shard], loads[shard] / 1000.0));
+        }
+        return shards;
+    }
+
+    private static long median(List<Long> values) {
+        if (values.isEmpty()) {
+            return DEFAULT_WEIGHT_MILLIS;
+        }
+        List<Long> sorted = new ArrayList<>(values);
+        sorted.sort(null);
+        return Math.max(1, sorted.get(sorted.size() / 2));
+    }
+}
@@ -0,0 +1,155 @@
+package com.google.automation;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+/**
+ * Longest-processing-time shard assignment of ShardInterceptor, checked without a browser
+ */
+public class ShardInterceptorTest {
+
+    /**
+     * Test: Each method goes to the least loaded shard, longest first, ties to the lowest shard
+     */
+    @Test(description = "Assign longest methods first to the least loaded shard")
+    public void testLongestFirst() {
+        Map<String, Long> history = history("m1", 7000L, "m2", 6000L, "m3", 5000L, "m4", 4000L, "m5", 3000L, "m6", 2000L);
+        Map<String, Integer> shards = ShardInterceptor.assign(keys("m1", "m2", "m3", "m4", "m5", "m6"), history, 2);
+
+        assertEquals(shards, Map.of("m1", 0, "m2", 1, "m3", 1, "m4", 0, "m5", 0, "m6", 1));
+        assertEquals(load(shards, history, 0), 14000L);
+        assertEquals(load(shards, history, 1), 13000L);
+    }
+
+    /**
+     * Test: A long method gets a shard of its own and the short ones share the other
+     */
+    @Test(description = "Give a dominant method a shard of its own")
+    public void testDominantMethod() {
+        Map<String, Long> history = history("long", 60_000L, "a", 1000L, "b", 1000L, "c", 1000L);
+        Map<String, Integer> shards = ShardInterceptor.assign(keys("a", "b", "c", "long"), history, 2);
+
+        assertEquals(shards, Map.of("long", 0, "a", 1, "b", 1, "c", 1));
+    }
+
+    /**
+     * Test: Methods without history weigh the median of the suite's known durations
+     */
+    @Test(description = "Weight methods without history with the median")
+    public void testUnknownDurationsUseMedian() {
+        Map<String, Long> history = history("a", 100L, "b", 300L, "c", 200L);
+        Map<String, Integer> shards = ShardInterceptor.assign(keys("a", "b", "c", "x", "y"), history, 2);
+
+        // Order b(300), c(200), x(200), y(200), a(100)
+        assertEquals(shards, Map.of("b", 0, "c", 1, "x", 1, "y", 0, "a", 1));
+    }
+
+    /**
+     * Test: Durations of methods that are no longer in the suite do not move the median
+     */
+    @Test(description = "Ignore history of methods outside the suite")
+    public void testStaleHistoryIgnored() {
+        Map<String, Long> history = history("a", 100L, "b", 300L, "c", 200L, "removed", 1_000_000L);
+        Map<String, Integer> shards = ShardInterceptor.assign(keys("a", "b", "c", "x", "y"), history, 2);
+
+        assertEquals(shards, Map.of("b", 0, "c", 1, "x", 1, "y", 0, "a", 1));
+        assertFalse(shards.containsKey("removed"));
+    }
+
+    /**
+     * Test: Without any history every method weighs the same and they alternate by name
+     */
+    @Test(description = "Spread methods by name when there is no history")
+    public void testNoHistory() {
+        Map<String, Integer> shards = ShardInterceptor.assign(keys("d", "c", "b", "a", "e"), Collections.emptyMap(), 2);
+
+        assertEquals(shards, Map.of("a", 0, "b", 1, "c", 0, "d", 1, "e", 0));
+    }
+
+    /**
+     * Test: Every shard computes the same assignment whatever order it sees the methods in
+     */
+    @Test(description = "Assign the same way regardless of method order")
+    public void testDeterministic() {
+        Map<String, Long> history = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 40; i++) {
+            String key = "com.google.automation.Test" + i % 7 + ".test" + i;
+            keys.add(key);
+            // Some repeated durations, so ties are broken by name, and some methods without history
+            if (i % 5 != 0) {
+                history.put(key, 1000L * (1 + random.nextInt(10)));
+            }
+        }
+        Map<String, Integer> expected = ShardInterceptor.assign(keys, history, 3);
+        for (int round = 0; round < 5; round++) {
+            Collections.shuffle(keys, random);
+            assertEquals(ShardInterceptor.assign(keys, history, 3), expected);
+        }
+    }
+
+    /**
+     * Test: With more shards than methods each method runs alone and the rest stay empty
+     */
+    @Test(description = "Leave surplus shards empty")
+    public void testMoreShardsThanMethods() {
+        Map<String, Integer> shards = ShardInterceptor.assign(keys("a", "b", "c"), history("a", 3000L, "b", 2000L, "c", 1000L), 5);
+
+        assertEquals(shards, Map.of("a", 0, "b", 1, "c", 2));
+    }
+
+    /**
+     * Test: A shard whose durations file differs from the one the run was started with refuses to assign
+     */
+    @Test(description = "Fail when the durations file differs between shards")
+    public void testDurationsChecksum() throws IOException {
+        Path file = Files.createTempFile("durations", ".properties");
+        try {
+            Files.writeString(file, "com.example.Test.a=1000\n");
+            String hash = TestDurations.checksum(file);
+            ShardInterceptor.checkHistory(file, hash);
+            ShardInterceptor.checkHistory(file, hash.toUpperCase());
+
+            Files.writeString(file, "com.example.Test.a=2000\n");
+            assertThrows(IllegalStateException.class, () -> ShardInterceptor.checkHistory(file, hash));
+
+            // sha256sum of an empty file, which is what a missing history counts as
+            Files.delete(file);
+            ShardInterceptor.checkHistory(file, "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<String> keys(String... keys) {
+        return Arrays.asList(keys);
+    }
+
+    private static Map<String, Long> history(Object... pairs) {
+        Map<String, Long> history = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            history.put((String) pairs[i], (Long) pairs[i + 1]);
+        }
+        return history;
+    }
+
+    private static long load(Map<String, Integer> shards, Map<String, Long> history, int shard) {
+        return shards.entrySet().stream()
+            .filter(entry -> entry.getValue() == shard)
+            .mapToLong(entry -> history.get(entry.getKey()))
+            .sum();
+    }
+}
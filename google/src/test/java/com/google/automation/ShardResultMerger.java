@@ -0,0 +1,95 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Merges the summary.json of every shard into one TestResultsListener-style summary
+ * and folds the shards' method durations into the history used for the next assignment.
+ *
+ * For shards that ran on different machines, copy each machine's target/shards/shard-N directory
+ * into one place and run:
+ *   java -cp target/test-classes:... com.google.automation.ShardResultMerger path/to/shards
+ */
+public final class ShardResultMerger {
+    private static final Logger logger = LoggerFactory.getLogger(ShardResultMerger.class);
+
+    private ShardResultMerger() {
+    }
+
+    public static void main(String[] args) {
+        List<Path> roots = new ArrayList<>();
+        for (String arg : args) {
+            roots.add(Paths.get(arg));
+        }
+        if (roots.isEmpty()) {
+            roots.add(ShardConfig.resultsRoot());
+        }
+        SuiteSummary merged = merge(findSummaries(roots));
+        System.exit(merged.getFailed() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Find every shard summary under the given directories
+     */
+    public static List<Path> findSummaries(List<Path> roots) {
+        List<Path> summaries = new ArrayList<>();
+        for (Path root : roots) {
+            if (Files.isRegularFile(root)) {
+                summaries.add(root);
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(root, 2)) {
+                summaries.addAll(files
+                    .filter(file -> file.getFileName().toString().equals("summary.json"))
+                    .sorted()
+                    .collect(Collectors.toList()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot search " + root + " for shard summaries", e);
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Merge the shard summaries, print the combined results and update the duration history
+     */
+    public static SuiteSummary merge(List<Path> summaryFiles) {
+        if (summaryFiles.isEmpty()) {
+            throw new IllegalStateException("No shard summaries found");
+        }
+        SuiteSummary merged = new SuiteSummary();
+        long busyMillis = 0;
+        for (Path file : summaryFiles) {
+            SuiteSummary shard = SuiteSummary.read(file);
+            busyMillis += shard.getElapsedMillis();
+            logger.info(String.format("Shard %d/%d: %d tests, %d failed, %.1fs (%s)",
+                shard.getShardIndex(), shard.getShardCount(), shard.getTotal(), shard.getFailed(),
+                shard.getElapsedMillis() / 1000.0, file));
+            merged.merge(shard);
+        }
+
+        int expected = merged.getShardCount();
+        if (summaryFiles.size() != expected) {
+            logger.warn("Merged " + summaryFiles.size() + " shard summaries but the run had " + expected + " shards");
+        }
+        if (merged.getElapsedMillis() > 0) {
+            logger.info(String.format("Shard balance: slowest shard %.1fs, mean %.1fs",
+                merged.getElapsedMillis() / 1000.0, busyMillis / 1000.0 / summaryFiles.size()));
+        }
+
+        TestResultsListener.printSummary(merged);
+        TestDurations.update(TestDurations.file(), merged.getDurations());
+        return merged;
+    }
+}
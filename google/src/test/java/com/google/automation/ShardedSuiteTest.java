@@ -0,0 +1,118 @@
+package com.google.automation;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the regular suite as several shard JVMs on this machine and merges their results
+ * Not part of the default suite. Run with: mvn test -Pshards -Dshard.count=4
+ *
+ * Each fork gets its own shard directory under target/shards with a private java.io.tmpdir and TMPDIR
+ * (Chrome and chromedriver temp files) and its own TestNG output. Servers and drivers bind ephemeral
+ * ports, so forks never collide. Fork output goes to target/shards/shard-N/output.log.
+ *
+ * Options:
+ *   -Dshard.count=n              number of forks (default 2)
+ *   -Dshard.suite=path           suite to shard (default src/test/resources/testng.xml)
+ *   -Dshard.timeout=minutes      per-run limit before forks are killed (default 120)
+ *
+ * To spread shards over machines instead, run mvn test -DshardIndex=i -DshardCount=n on each machine
+ * and merge the collected target/shards directories with ShardResultMerger.
+ */
+public class ShardedSuiteTest {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedSuiteTest.class);
+    // Properties that describe this JVM rather than the run configuration
+    private static final List<String> LOCAL_PROPERTY_PREFIXES = List.of(
+        "java.", "jdk.", "sun.", "os.", "user.", "file.", "line.", "path.", "native.", "stdout.", "stderr.",
+        "surefire.", "basedir", "localRepository", "shard", "awt.", "socksNonProxyHosts");
+
+    /**
+     * Sharding: run the suite in parallel forks and merge the per-shard summaries
+     */
+    @Test(description = "SHARDS: Run the suite in parallel forks and merge results", groups = "shards")
+    public void testShardedSuite() throws IOException, InterruptedException {
+        int count = Integer.getInteger("shard.count", 2);
+        String suite = System.getProperty("shard.suite", "src/test/resources/testng.xml");
+        long timeoutMinutes = Long.getLong("shard.timeout", 120);
+
+        ProfileTemplate.deleteRecursively(ShardConfig.resultsRoot());
+        List<Process> forks = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            forks.add(startShard(index, count, suite));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(timeoutMinutes);
+        for (int index = 0; index < count; index++) {
+            Process fork = forks.get(index);
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            if (!fork.waitFor(remaining, TimeUnit.NANOSECONDS)) {
+                logger.warn("Shard " + index + " exceeded " + timeoutMinutes + " minutes, killing it");
+                fork.descendants().forEach(ProcessHandle::destroyForcibly);
+                fork.destroyForcibly().waitFor();
+            }
+            logger.info("Shard " + index + " exited with " + fork.exitValue()
+                + ", log: " + ShardConfig.shardDir(index).resolve("output.log"));
+        }
+
+        List<Path> summaries = ShardResultMerger.findSummaries(List.of(ShardConfig.resultsRoot()));
+        assertEquals(summaries.size(), count, "Every shard should write a summary");
+        SuiteSummary merged = ShardResultMerger.merge(summaries);
+        assertEquals(merged.getFailed(), 0, "Merged shard results should have no failures");
+    }
+
+    private static Process startShard(int index, int count, String suite) throws IOException {
+        Path shardDir = ShardConfig.shardDir(index).toAbsolutePath();
+        Path tmpDir = shardDir.resolve("tmp");
+        Files.createDirectories(tmpDir);
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        // Surefire starts tests through a manifest-only jar; its real test classpath is published here
+        command.add(System.getProperty("surefire.test.class.path", System.getProperty("java.class.path")));
+        command.add("-DshardIndex=" + index);
+        command.add("-DshardCount=" + count);
+        command.add("-Dshard.resultsDir=" + ShardConfig.resultsRoot().toAbsolutePath());
+        command.add("-Dshard.durationsHash=" + TestDurations.checksum(TestDurations.file()));
+        command.add("-Djava.io.tmpdir=" + tmpDir);
+        for (String name : forwardedProperties()) {
+            command.add("-D" + name + "=" + System.getProperty(name));
+        }
+        command.add("org.testng.TestNG");
+        command.add("-d");
+        command.add(shardDir.resolve("testng-output").toString());
+        command.add(suite);
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(shardDir.resolve("output.log").toFile());
+        Map<String, String> env = builder.environment();
+        env.put("TMPDIR", tmpDir.toString());
+        logger.info("Starting shard " + index + "/" + count + " in " + shardDir);
+        return builder.start();
+    }
+
+    private static List<String> forwardedProperties() {
+        List<String> names = new ArrayList<>();
+        Set<String> all = System.getProperties().stringPropertyNames();
+        for (String name : all) {
+            if (LOCAL_PROPERTY_PREFIXES.stream().noneMatch(name::startsWith)) {
+                names.add(name);
+            }
+        }
+        names.sort(null);
+        return names;
+    }
+}
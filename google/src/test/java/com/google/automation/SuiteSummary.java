@@ -0,0 +1,170 @@
+package com.google.automation;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-class counts, metrics and method durations of one suite run
+ * Written as JSON by each shard and merged back into a single summary by ShardResultMerger.
+ */
+public class SuiteSummary {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Map<String, ClassResult> classes = new LinkedHashMap<>();
+    private final Map<String, Long> metrics = new TreeMap<>();
+    private final Map<String, Long> durations = new TreeMap<>();
+    private long elapsedMillis;
+    private int shardIndex;
+    private int shardCount = 1;
+
+    /**
+     * Counts for one test class
+     */
+    public static class ClassResult {
+        private int total;
+        private int passed;
+        private int skipped;
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getPassed() {
+            return passed;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getFailed() {
+            return total - passed - skipped;
+        }
+
+        void recordStart() {
+            total++;
+        }
+
+        void recordPass() {
+            passed++;
+        }
+
+        void recordSkip() {
+            skipped++;
+        }
+    }
+
+    /**
+     * Get the counts for a class, adding it in first-seen order
+     */
+    public ClassResult forClass(String testClass) {
+        return classes.computeIfAbsent(testClass, k -> new ClassResult());
+    }
+
+    public Map<String, ClassResult> getClasses() {
+        return classes;
+    }
+
+    public int getTotal() {
+        return classes.values().stream().mapToInt(ClassResult::getTotal).sum();
+    }
+
+    public int getPassed() {
+        return classes.values().stream().mapToInt(ClassResult::getPassed).sum();
+    }
+
+    public int getSkipped() {
+        return classes.values().stream().mapToInt(ClassResult::getSkipped).sum();
+    }
+
+    public int getFailed() {
+        return getTotal() - getPassed() - getSkipped();
+    }
+
+    public Map<String, Long> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the summed duration in milliseconds of each test method, keyed by TestDurations.key
+     */
+    public Map<String, Long> getDurations() {
+        return durations;
+    }
+
+    public void addMetrics(Map<String, Long> values) {
+        values.forEach((name, value) -> metrics.merge(name, value, Long::sum));
+    }
+
+    public void addDuration(String method, long millis) {
+        durations.merge(method, millis, Long::sum);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShard(int shardIndex, int shardCount) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Add another shard's results to this one
+     * Elapsed time is the slowest shard, since shards run side by side.
+     */
+    public void merge(SuiteSummary other) {
+        other.classes.forEach((name, result) -> {
+            ClassResult merged = forClass(name);
+            merged.total += result.total;
+            merged.passed += result.passed;
+            merged.skipped += result.skipped;
+        });
+        addMetrics(other.metrics);
+        other.durations.forEach(this::addDuration);
+        elapsedMillis = Math.max(elapsedMillis, other.elapsedMillis);
+        shardCount = Math.max(shardCount, other.shardCount);
+    }
+
+    public void write(Path file) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                GSON.toJson(this, writer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write suite summary " + file, e);
+        }
+    }
+
+    public static SuiteSummary read(Path file) {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, SuiteSummary.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read suite summary " + file, e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.google.automation;
+
+import org.openqa.selenium.WebDriver;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compares one browser per test with tests multiplexed into tabs of one browser
+ * Both modes replay the search journey with the same number of concurrent users against the local search
+ * server. Memory is the summed proportional set size of every browser process this JVM started, sampled
+ * each second. Not part of the default suite. Run with: mvn test -Pload
+ *
+ * Options:
+ *   -Dload.users=n            concurrent tests in each mode (default 4)
+ *   -Dtabs.bench.duration=s   run time per mode in seconds (default 30)
+ *
+ * Results per mode are written to target/tabs-benchmark.csv.
+ */
+public class TabMultiplexBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(TabMultiplexBenchmarkTest.class);
+    private static final Path RESULTS_FILE = Paths.get("target", "tabs-benchmark.csv");
+    private static final double GB = 1024.0 * 1024 * 1024;
+
+    private LocalSearchServer server;
+
+    /**
+     * Outcome of one mode
+     */
+    private static class ModeResult {
+        private final String mode;
+        private final int users;
+        private final int journeys;
+        private final double seconds;
+        private final long peakBytes;
+
+        ModeResult(String mode, int users, int journeys, double seconds, long peakBytes) {
+            this.mode = mode;
+            this.users = users;
+            this.journeys = journeys;
+            this.seconds = seconds;
+            this.peakBytes = peakBytes;
+        }
+
+        double throughput() {
+            return journeys / seconds;
+        }
+
+        double testsPerGb() {
+            return peakBytes > 0 ? users / (peakBytes / GB) : 0;
+        }
+    }
+
+    @BeforeClass
+    public void setUpClass() {
+        server = LocalSearchServer.start();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Benchmark: tests per GB and throughput, one process per test against tabs in one browser
+     */
+    @Test(description = "LOAD: Compare tab multiplexing with one browser per test", groups = "load")
+    public void testTabsVersusProcesses() throws InterruptedException, IOException {
+        int users = Integer.getInteger("load.users", 4);
+        long duration = Long.getLong("tabs.bench.duration", 30) * 1000;
+
+        List<String> queries = new ArrayList<>();
+        try (SearchCorpus corpus = SearchCorpus.open()) {
+            while (corpus.hasNext()) {
+                queries.add((String) corpus.next()[0]);
+            }
+        }
+
+        List<ModeResult> results = new ArrayList<>();
+        results.add(runMode("process-per-test", users, duration, queries,
+            () -> LocalDriverFactory.createDriver(LocalDriverFactory.createHeadlessOptions())));
+        try (TabMultiplexer multiplexer = new TabMultiplexer(users,
+                () -> LocalDriverFactory.createDriver(LocalDriverFactory.createHeadlessOptions()))) {
+            results.add(runMode("tabs", users, duration, queries, multiplexer::openTab));
+        }
+
+        for (ModeResult result : results) {
+            logger.info(String.format("%-17s %d users, %.2f journeys/s, peak browser memory %d MB, %.1f tests/GB",
+                result.mode, result.users, result.throughput(), result.peakBytes / (1024 * 1024), result.testsPerGb()));
+        }
+        writeCsv(results);
+
+        for (ModeResult result : results) {
+            assertTrue(result.journeys > 0, "Mode " + result.mode + " should complete at least one journey");
+        }
+    }
+
+    private ModeResult runMode(String mode, int users, long duration, List<String> queries,
+                               Supplier<WebDriver> sessionFactory) throws InterruptedException {
+        logger.info("Benchmark mode " + mode + ": " + users + " users for " + duration / 1000 + "s");
+        LoadGenerator generator = new LoadGenerator(users, 0, duration, duration,
+            new SearchJourney(server.getBaseUrl(), Duration.ofSeconds(10)), sessionFactory, queries);
+
+        MemorySampler sampler = new MemorySampler();
+        sampler.start();
+        try {
+            generator.run();
+        } finally {
+            sampler.interrupt();
+            sampler.join();
+        }
+        generator.logReport();
+        return new ModeResult(mode, users, generator.completedJourneys(), duration / 1000.0, sampler.peakBytes);
+    }
+
+    /**
+     * Samples the memory of every browser process started by this JVM
+     */
+    private static class MemorySampler extends Thread {
+        private volatile long peakBytes;
+
+        MemorySampler() {
+            super("tabs-benchmark-memory");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                long bytes = ProcessHandle.current().descendants().mapToLong(AdmissionController::memoryBytes).sum();
+                peakBytes = Math.max(peakBytes, bytes);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void writeCsv(List<ModeResult> results) throws IOException {
+        Files.createDirectories(RESULTS_FILE.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(RESULTS_FILE))) {
+            out.println("mode,users,journeys,throughputPerSecond,peakBrowserMb,testsPerGb");
+            for (ModeResult result : results) {
+                out.println(String.format("%s,%d,%d,%.3f,%d,%.2f", result.mode, result.users, result.journeys,
+                    result.throughput(), result.peakBytes / (1024 * 1024), result.testsPerGb()));
+            }
+        }
+        logger.info("Tab benchmark written to " + RESULTS_FILE.toAbsolutePath());
+    }
+}
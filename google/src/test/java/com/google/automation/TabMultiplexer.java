@@ -0,0 +1,534 @@
+package com.google.automation;
+
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WindowType;
+import org.openqa.selenium.WrapsElement;
+import org.openqa.selenium.chromium.HasCdp;
+import org.openqa.selenium.interactions.Interactive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs several tests at once in tabs of one shared browser instead of one browser per test
+ *
+ * openTab() opens each tab in a browser context of its own, created with CDP Target.createBrowserContext
+ * and Target.createTarget, and returns a WebDriver bound to it. Like an incognito window, the context has
+ * its own cookies, storage and cache, so tests in different tabs cannot see each other's state. Every
+ * command sent through that driver, or through elements and option objects obtained from it, takes the
+ * browser's lock, switches to the tab if another tab was active and then runs, so commands of different
+ * tabs never interleave on the one driver connection; Actions sequences are dispatched the same way.
+ * quit() and close() dispose the tab's context, which closes the tab; the browser keeps a blank anchor tab
+ * so it survives with no tests running.
+ *
+ * A driver without CDP (HtmlUnit) gets a plain switchTo().newWindow() tab whose cookies are shared with
+ * the other tabs. Window and frame switching are not supported inside a tab, and the tab driver does not
+ * expose CDP.
+ *
+ * Options:
+ *   -Dsession.tabs=true             BaseTest runs full-browser tests in tabs of shared browsers
+ *   -Dsession.tabs.perBrowser=8     tabs per browser before another browser is started
+ */
+public class TabMultiplexer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TabMultiplexer.class);
+    private static final TabMultiplexer INSTANCE = new TabMultiplexer(
+        Integer.getInteger("session.tabs.perBrowser", 8), LocalDriverFactory::createDriver);
+    private static final long NEW_TAB_TIMEOUT_MILLIS = 5000;
+
+    private final int tabsPerBrowser;
+    private final Supplier<WebDriver> factory;
+    private final List<SharedBrowser> browsers = new ArrayList<>();
+    // Threads waiting for a tab slot and browsers being started for them, guarded by the multiplexer
+    private int waiting;
+    private int starting;
+
+    private final AtomicLong tabsOpened = new AtomicLong();
+    private final AtomicLong browsersStarted = new AtomicLong();
+    private final AtomicLong switches = new AtomicLong();
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+    private int peakTabs;
+
+    /**
+     * One browser and the bookkeeping of its tabs
+     */
+    private static class SharedBrowser {
+        private final WebDriver driver;
+        private final String anchorHandle;
+        private final Set<String> tabs = new LinkedHashSet<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private String currentHandle;
+        // Tabs handed out or being opened, guarded by the multiplexer
+        private int reserved;
+
+        SharedBrowser(WebDriver driver) {
+            this.driver = driver;
+            this.anchorHandle = driver.getWindowHandle();
+            this.currentHandle = anchorHandle;
+        }
+    }
+
+    /**
+     * One tab handed to a test
+     */
+    private static class Tab {
+        private final SharedBrowser browser;
+        private final String handle;
+        // Browser context of the tab, or null for a plain tab
+        private final String contextId;
+        private volatile boolean closed;
+
+        Tab(SharedBrowser browser, String handle, String contextId) {
+            this.browser = browser;
+            this.handle = handle;
+            this.contextId = contextId;
+        }
+    }
+
+    public TabMultiplexer(int tabsPerBrowser, Supplier<WebDriver> factory) {
+        if (tabsPerBrowser < 1) {
+            throw new IllegalArgumentException("At least one tab per browser is needed: " + tabsPerBrowser);
+        }
+        this.tabsPerBrowser = tabsPerBrowser;
+        this.factory = factory;
+    }
+
+    public static TabMultiplexer shared() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("session.tabs");
+    }
+
+    /**
+     * Open a tab in a browser with room for it, starting a browser if all are full
+     */
+    public WebDriver openTab() {
+        SharedBrowser browser = reserveBrowser();
+        Tab tab;
+        lock(browser);
+        try {
+            tab = browser.driver instanceof HasCdp ? openIsolated(browser) : openPlain(browser);
+            browser.currentHandle = tab.handle;
+            browser.tabs.add(tab.handle);
+        } catch (RuntimeException e) {
+            release(browser);
+            throw e;
+        } finally {
+            browser.lock.unlock();
+        }
+        tabsOpened.incrementAndGet();
+        return (WebDriver) proxy(tab, browser.driver, WebDriver.class, JavascriptExecutor.class,
+            TakesScreenshot.class, HasCapabilities.class, Interactive.class);
+    }
+
+    /**
+     * Open a tab in a new browser context and switch to it
+     */
+    private static Tab openIsolated(SharedBrowser browser) {
+        HasCdp cdp = (HasCdp) browser.driver;
+        String contextId = (String) cdp.executeCdpCommand("Target.createBrowserContext", Map.of())
+            .get("browserContextId");
+        try {
+            String targetId = (String) cdp.executeCdpCommand("Target.createTarget",
+                Map.of("url", "about:blank", "browserContextId", contextId)).get("targetId");
+            String handle = awaitHandle(browser, targetId);
+            browser.driver.switchTo().window(handle);
+            return new Tab(browser, handle, contextId);
+        } catch (RuntimeException e) {
+            dispose(browser, contextId);
+            throw e;
+        }
+    }
+
+    private static Tab openPlain(SharedBrowser browser) {
+        browser.driver.switchTo().newWindow(WindowType.TAB);
+        return new Tab(browser, browser.driver.getWindowHandle(), null);
+    }
+
+    /**
+     * Find the window handle of a new target; ChromeDriver uses the target id, but may list it a moment late
+     */
+    private static String awaitHandle(SharedBrowser browser, String targetId) {
+        Set<String> known = new HashSet<>(browser.tabs);
+        known.add(browser.anchorHandle);
+        long deadline = System.currentTimeMillis() + NEW_TAB_TIMEOUT_MILLIS;
+        while (true) {
+            Set<String> handles = new HashSet<>(browser.driver.getWindowHandles());
+            if (handles.contains(targetId)) {
+                return targetId;
+            }
+            // Tabs are opened under the browser lock, so a single new handle is the one just created
+            handles.removeAll(known);
+            if (handles.size() == 1) {
+                return handles.iterator().next();
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new WebDriverException("Tab " + targetId + " did not appear among the window handles");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WebDriverException("Interrupted while waiting for tab " + targetId, e);
+            }
+        }
+    }
+
+    /**
+     * Dispose a browser context, closing its tab and dropping its cookies and storage
+     */
+    private static void dispose(SharedBrowser browser, String contextId) {
+        ((HasCdp) browser.driver).executeCdpCommand("Target.disposeBrowserContext",
+            Map.of("browserContextId", contextId));
+    }
+
+    /**
+     * Check whether a driver is a tab of a shared browser
+     */
+    public static boolean isTab(WebDriver driver) {
+        return Proxy.isProxyClass(driver.getClass()) && Proxy.getInvocationHandler(driver) instanceof TabHandler;
+    }
+
+    /**
+     * Reserve a tab slot in the least busy browser with room
+     * When all browsers are full, a new one is started outside the lock, so starting Chrome (and waiting
+     * for admission) never blocks tabs opening or closing in the running browsers. Threads that a browser
+     * already being started will have room for wait for it instead of starting another.
+     */
+    private SharedBrowser reserveBrowser() {
+        synchronized (this) {
+            waiting++;
+            try {
+                while (true) {
+                    SharedBrowser chosen = leastBusy();
+                    if (chosen != null) {
+                        return reserve(chosen);
+                    }
+                    if (starting * tabsPerBrowser < waiting) {
+                        starting++;
+                        break;
+                    }
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a shared browser", e);
+            } finally {
+                waiting--;
+            }
+        }
+
+        SharedBrowser started;
+        try {
+            WebDriver driver = factory.get();
+            // Shared by the tests of all its tabs, so no one test's deadline may kill it
+            ProcessWatchdog.shared().adopt(driver);
+            ProcessWatchdog.shared().heldBy(driver, null);
+            started = new SharedBrowser(driver);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                starting--;
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            starting--;
+            browsers.add(started);
+            browsersStarted.incrementAndGet();
+            logger.info("Started shared browser " + browsers.size() + " for up to " + tabsPerBrowser + " tabs");
+            notifyAll();
+            return reserve(started);
+        }
+    }
+
+    private SharedBrowser leastBusy() {
+        SharedBrowser chosen = null;
+        for (SharedBrowser browser : browsers) {
+            if (browser.reserved < tabsPerBrowser && (chosen == null || browser.reserved < chosen.reserved)) {
+                chosen = browser;
+            }
+        }
+        return chosen;
+    }
+
+    private SharedBrowser reserve(SharedBrowser browser) {
+        browser.reserved++;
+        peakTabs = Math.max(peakTabs, browser.reserved);
+        return browser;
+    }
+
+    private void closeTab(Tab tab) {
+        if (tab.closed) {
+            return;
+        }
+        tab.closed = true;
+        SharedBrowser browser = tab.browser;
+        lock(browser);
+        try {
+            if (browser.tabs.remove(tab.handle)) {
+                if (tab.contextId == null) {
+                    activate(tab);
+                    browser.driver.close();
+                } else {
+                    // Leave the tab before its context goes away with it
+                    park(browser);
+                    dispose(browser, tab.contextId);
+                }
+            }
+        } catch (NoSuchWindowException e) {
+            logger.debug("Tab " + tab.handle + " was already gone");
+        } catch (WebDriverException e) {
+            logger.warn("Could not close tab " + tab.handle + ": " + e.getMessage());
+        } finally {
+            park(browser);
+            browser.lock.unlock();
+        }
+        release(browser);
+    }
+
+    /**
+     * Switch to the anchor tab; the driver has no current window once its tab is closed
+     */
+    private static void park(SharedBrowser browser) {
+        if (browser.anchorHandle.equals(browser.currentHandle)) {
+            return;
+        }
+        try {
+            browser.driver.switchTo().window(browser.anchorHandle);
+            browser.currentHandle = browser.anchorHandle;
+        } catch (WebDriverException e) {
+            browser.currentHandle = null;
+        }
+    }
+
+    private synchronized void release(SharedBrowser browser) {
+        browser.reserved--;
+        // A thread waiting for a browser being started may fit in the freed slot
+        notifyAll();
+    }
+
+    private void lock(SharedBrowser browser) {
+        if (!browser.lock.tryLock()) {
+            long start = System.nanoTime();
+            browser.lock.lock();
+            lockWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private void activate(Tab tab) {
+        if (!tab.handle.equals(tab.browser.currentHandle)) {
+            tab.browser.driver.switchTo().window(tab.handle);
+            tab.browser.currentHandle = tab.handle;
+            switches.incrementAndGet();
+        }
+    }
+
+    /**
+     * Bind the target to the tab, exposing those of the interfaces it implements
+     */
+    private Object proxy(Tab tab, Object target, Class<?>... interfaces) {
+        Class<?>[] implemented = Arrays.stream(interfaces)
+            .filter(type -> type.isInstance(target) || type == WrapsElement.class)
+            .toArray(Class<?>[]::new);
+        return Proxy.newProxyInstance(TabMultiplexer.class.getClassLoader(), implemented, new TabHandler(tab, target));
+    }
+
+    /**
+     * Dispatches one object's calls to its tab under the browser lock
+     */
+    private class TabHandler implements InvocationHandler {
+        private final Tab tab;
+        private final Object target;
+
+        TabHandler(Tab tab, Object target) {
+            this.tab = tab;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            int argCount = args == null ? 0 : args.length;
+            if (method.getDeclaringClass() == Object.class) {
+                switch (name) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "Tab " + tab.handle + ": " + target;
+                }
+            }
+            if (method.getDeclaringClass() == WrapsElement.class) {
+                // Actions send the real element as a pointer origin
+                return target;
+            }
+            if (target instanceof WebDriver && argCount == 0) {
+                switch (name) {
+                    case "quit":
+                    case "close":
+                        closeTab(tab);
+                        return null;
+                    case "getWindowHandle":
+                        return tab.handle;
+                    case "getWindowHandles":
+                        return tab.closed ? Collections.emptySet() : Collections.singleton(tab.handle);
+                    case "switchTo":
+                        throw new UnsupportedOperationException("Tests in a shared browser tab cannot switch windows or frames");
+                    default:
+                        break;
+                }
+            }
+            if (tab.closed) {
+                throw new NoSuchWindowException("Tab " + tab.handle + " has been closed");
+            }
+
+            Object result;
+            lock(tab.browser);
+            try {
+                activate(tab);
+                result = method.invoke(target, unwrap(args));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                tab.browser.lock.unlock();
+            }
+            return wrap(result, method.getReturnType());
+        }
+
+        /**
+         * Bind elements and option objects to the tab, so calls on them are dispatched the same way
+         */
+        private Object wrap(Object value, Class<?> type) {
+            if (value instanceof WebElement) {
+                return proxy(tab, value, WebElement.class, TakesScreenshot.class, WrapsElement.class);
+            }
+            if (value instanceof List) {
+                List<Object> wrapped = new ArrayList<>();
+                for (Object item : (List<?>) value) {
+                    wrapped.add(wrap(item, Object.class));
+                }
+                return wrapped;
+            }
+            if (value instanceof Map) {
+                Map<Object, Object> wrapped = new LinkedHashMap<>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    wrapped.put(entry.getKey(), wrap(entry.getValue(), Object.class));
+                }
+                return wrapped;
+            }
+            if (value != null && type.isInterface() && type.getName().startsWith("org.openqa.selenium.")) {
+                return proxy(tab, value, type);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Replace tab proxies in call arguments, such as elements passed to executeScript, by the real objects
+     */
+    private static Object[] unwrap(Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        // A clone keeps the array's component type, e.g. CharSequence[] for sendKeys
+        Object[] unwrapped = args.clone();
+        for (int i = 0; i < args.length; i++) {
+            unwrapped[i] = unwrap(args[i]);
+        }
+        return unwrapped;
+    }
+
+    private static Object unwrap(Object value) {
+        if (value != null && Proxy.isProxyClass(value.getClass())
+                && Proxy.getInvocationHandler(value) instanceof TabHandler) {
+            return ((TabHandler) Proxy.getInvocationHandler(value)).target;
+        }
+        if (value instanceof Object[]) {
+            return unwrap((Object[]) value);
+        }
+        if (value instanceof List) {
+            List<Object> unwrapped = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                unwrapped.add(unwrap(item));
+            }
+            return unwrapped;
+        }
+        return value;
+    }
+
+    /**
+     * Quit every shared browser
+     */
+    @Override
+    public void close() {
+        List<SharedBrowser> open;
+        synchronized (this) {
+            open = new ArrayList<>(browsers);
+            browsers.clear();
+        }
+        for (SharedBrowser browser : open) {
+            if (!ProcessWatchdog.quit(browser.driver)) {
+                logger.warn("Shared browser did not quit cleanly");
+            }
+        }
+    }
+
+    /**
+     * Start counting a new run; the shared browsers stay up
+     */
+    public synchronized void reset() {
+        tabsOpened.set(0);
+        browsersStarted.set(0);
+        switches.set(0);
+        lockWaitNanos.set(0);
+        peakTabs = 0;
+    }
+
+    /**
+     * Report tabs, browsers, tab switches and time spent waiting for the lock
+     * The browsers stay up; BaseTest quits them after the suite unless they are kept for the next run.
+     */
+    public Map<String, Long> finish() {
+        Map<String, Long> stats = new TreeMap<>();
+        if (tabsOpened.get() == 0) {
+            return stats;
+        }
+        long lockWaitMillis = TimeUnit.NANOSECONDS.toMillis(lockWaitNanos.get());
+        logger.info(String.format("Tab multiplexing: %d tabs in %d browsers, peak %d tabs per browser, "
+                + "%d tab switches, %d ms waiting for the browser lock",
+            tabsOpened.get(), browsersStarted.get(), peakTabs, switches.get(), lockWaitMillis));
+        stats.put("tabsOpened", tabsOpened.get());
+        stats.put("tabsBrowsers", browsersStarted.get());
+        stats.put("tabsPeakPerBrowser", (long) peakTabs);
+        stats.put("tabsSwitches", switches.get());
+        stats.put("tabsLockWaitMs", lockWaitMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,57 @@
+package com.google.automation;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.interactions.Actions;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Dispatch of tab drivers of TabMultiplexer, checked on HtmlUnit instead of Chrome
+ */
+public class TabMultiplexerTest {
+    private LocalSearchServer server;
+
+    @BeforeClass
+    public void startServer() {
+        server = LocalSearchServer.start();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Test: An Actions sequence runs in the tab it was built for, even after another tab was used
+     */
+    @Test(description = "Perform Actions on a tab driver")
+    public void testActionsOnTab() {
+        TabMultiplexer tabs = new TabMultiplexer(2, () -> new HtmlUnitDriver(true));
+        try {
+            WebDriver first = tabs.openTab();
+            WebDriver second = tabs.openTab();
+            first.get(server.getBaseUrl());
+            second.get(server.getBaseUrl());
+            WebElement firstBox = first.findElement(By.name("q"));
+            WebElement secondBox = second.findElement(By.name("q"));
+
+            new Actions(second).click(secondBox).sendKeys("second tab").perform();
+            new Actions(first).click(firstBox).sendKeys("first tab").perform();
+
+            assertEquals(firstBox.getAttribute("value"), "first tab");
+            assertEquals(secondBox.getAttribute("value"), "second tab");
+            first.quit();
+            second.quit();
+        } finally {
+            tabs.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestNGMethod;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Historical duration of each test method, used to balance shards
+ * Kept outside target/ so it survives mvn clean; CI should cache it between runs.
+ *
+ * Options:
+ *   -Dtest.durations.file=path   history file (default test-durations.properties)
+ */
+public final class TestDurations {
+    private static final Logger logger = LoggerFactory.getLogger(TestDurations.class);
+
+    private TestDurations() {
+    }
+
+    public static Path file() {
+        return Paths.get(System.getProperty("test.durations.file", "test-durations.properties"));
+    }
+
+    /**
+     * Get the history key of a method, e.g. com.google.automation.GoogleSearchTest.testGoogleSearch
+     */
+    public static String key(ITestNGMethod method) {
+        return method.getRealClass().getName() + "." + method.getMethodName();
+    }
+
+    /**
+     * Load the recorded durations in milliseconds; an absent file gives an empty history
+     */
+    public static Map<String, Long> load(Path file) {
+        Map<String, Long> durations = new TreeMap<>();
+        if (!Files.exists(file)) {
+            return durations;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            logger.warn("Cannot read test durations from " + file + ": " + e.getMessage());
+            return durations;
+        }
+        for (String name : properties.stringPropertyNames()) {
+            try {
+                durations.put(name, Long.parseLong(properties.getProperty(name).trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring bad duration for " + name);
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Get the SHA-256 of the history file as hex, the same as sha256sum prints; an absent file counts as empty
+     */
+    public static String checksum(Path file) {
+        try {
+            byte[] content = Files.exists(file) ? Files.readAllBytes(file) : new byte[0];
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read test durations from " + file, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fold the latest durations into the history file
+     * Uses an even moving average so one slow run does not reshuffle every shard.
+     */
+    public static void update(Path file, Map<String, Long> latest) {
+        if (latest.isEmpty()) {
+            return;
+        }
+        Map<String, Long> history = load(file);
+        latest.forEach((method, millis) -> history.merge(method, millis, (old, now) -> (old + now) / 2));
+
+        StringBuilder sb = new StringBuilder("# Test method durations in ms, maintained by TestResultsListener\n");
+        history.forEach((method, millis) -> sb.append(method).append('=').append(millis).append('\n'));
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "durations", ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(sb.toString());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Updated " + latest.size() + " test durations in " + file);
+        } catch (IOException e) {
+            logger.warn("Cannot write test durations to " + file + ": " + e.getMessage());
+        }
+    }
+}
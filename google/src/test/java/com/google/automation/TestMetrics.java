@@ -0,0 +1,73 @@
+package com.google.automation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-test counters collected on the test thread
+ * TestResultsListener resets them when a test's first setUp starts, or the test itself when it has none,
+ * and reports them when it finishes
+ */
+public final class TestMetrics {
+    public static final String ELEMENT_LOOKUPS = "elementLookups";
+    public static final String ELEMENT_CACHE_HITS = "elementCacheHits";
+    public static final String WAIT_TIMEOUTS = "waitTimeouts";
+    public static final String WAIT_TIMEOUT_MS = "waitTimeoutMs";
+    public static final String WAIT_EXTENSIONS = "waitExtensions";
+
+    private static final ThreadLocal<Map<String, Long>> CURRENT =
+        ThreadLocal.withInitial(LinkedHashMap::new);
+
+    private TestMetrics() {
+    }
+
+    /**
+     * Increment a counter for the current test
+     */
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Add a value to a counter for the current test
+     */
+    public static void add(String name, long delta) {
+        CURRENT.get().merge(name, delta, Long::sum);
+    }
+
+    /**
+     * Get a counter value for the current test
+     */
+    public static long get(String name) {
+        return CURRENT.get().getOrDefault(name, 0L);
+    }
+
+    /**
+     * Get a copy of all counters for the current test
+     */
+    public static Map<String, Long> snapshot() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(CURRENT.get()));
+    }
+
+    /**
+     * Clear all counters for the current test
+     */
+    public static void reset() {
+        CURRENT.get().clear();
+    }
+
+    /**
+     * Format counters as "name=value, name=value"
+     */
+    public static String format(Map<String, Long> metrics) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : metrics.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.google.automation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning one phase of a test on the thread that ran it
+ * Phases are setUp and tearDown (before and after method configuration), body (the test method) and
+ * class or suite for the other configuration methods, whose test fields are left empty.
+ */
+@Name("com.google.automation.TestPhase")
+@Label("Test Phase")
+@Category({"Test Automation"})
+@Description("A setUp, body or tearDown phase of a test")
+@StackTrace(false)
+public class TestPhaseEvent extends jdk.jfr.Event {
+    @Label("Test Class")
+    String testClass;
+
+    @Label("Test Method")
+    String testMethod;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Method")
+    @Description("The test or configuration method that ran")
+    String method;
+
+    @Label("Status")
+    String status;
+}
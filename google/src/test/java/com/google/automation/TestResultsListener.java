@@ -7,7 +7,7 @@ import java.util.*;
  * Custom TestNG Listener to display formatted test results
  * Shows test names with status in real-time and summary at the end
  */
-public class TestResultsListener implements ITestListener, ISuiteListener {
+public class TestResultsListener implements ITestListener, ISuiteListener, IInvokedMethodListener {
     private static final String RESET = "\u001B[0m";
     private static final String GREEN = "\u001B[32m";
     private static final String RED = "\u001B[31m";
@@ -15,16 +15,12 @@ public class TestResultsListener implements ITestListener, ISuiteListener {
     private static final String CYAN = "\u001B[36m";
     private static final String BOLD = "\u001B[1m";
 
-    private Map<String, Integer> classTestCount = new HashMap<>();
-    private Map<String, Integer> classPassCount = new HashMap<>();
-    private Map<String, Integer> classSkipCount = new HashMap<>();
-    private List<String> allTestClasses = new ArrayList<>();
-    private int totalTests = 0;
-    private int totalPassed = 0;
-    private int totalSkipped = 0;
+    private final SuiteSummary summary = new SuiteSummary();
+    // Whether the last method invoked on the thread was a setUp, so a test's setUps reset its metrics only once
+    private final ThreadLocal<Boolean> inSetUp = ThreadLocal.withInitial(() -> false);
     private long suiteStartTime = 0;
 
-    private String repeatString(String str, int count) {
+    private static String repeatString(String str, int count) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < count; i++) {
             sb.append(str);
@@ -35,6 +31,19 @@ public class TestResultsListener implements ITestListener, ISuiteListener {
     @Override
     public void onStart(ISuite suite) {
         suiteStartTime = System.currentTimeMillis();
+        // The warm runner daemon runs suite after suite in one JVM; each reports only its own counts
+        ProcessWatchdog.shared().reset();
+        DriverTiers.shared().reset();
+        BrowserHealth.shared().reset();
+        TabMultiplexer.shared().reset();
+        AdmissionController.shared().reset();
+        ProfileTemplate.reset();
+        DiagnosticRetry.reset();
+        LocatorAnalyzer.shared().reset();
+        CommandLog.reset();
+        EmulationProfile.reset();
+        FlightProfiler.shared().start();
+        RunDashboard.shared().suiteStarted(suite);
         System.out.println("\n" + BOLD + CYAN + "═══════════════════════════════════════════════" + RESET);
         System.out.println(BOLD + CYAN + "          TEST EXECUTION STARTED" + RESET);
         System.out.println(BOLD + CYAN + "═══════════════════════════════════════════════" + RESET + "\n");
@@ -42,9 +51,39 @@ public class TestResultsListener implements ITestListener, ISuiteListener {
 
     @Override
     public void onFinish(ISuite suite) {
-        long suiteEndTime = System.currentTimeMillis();
-        long totalTime = (suiteEndTime - suiteStartTime) / 1000;
-        int totalFailed = totalTests - totalPassed - totalSkipped;
+        summary.setElapsedMillis(System.currentTimeMillis() - suiteStartTime);
+        RunDashboard.shared().suiteFinished();
+        summary.addMetrics(ProcessWatchdog.shared().finish());
+        summary.addMetrics(DriverTiers.shared().finish());
+        summary.addMetrics(BrowserHealth.shared().finish());
+        summary.addMetrics(TabMultiplexer.shared().finish());
+        summary.addMetrics(AdmissionController.shared().finish());
+        summary.addMetrics(ProfileTemplate.finish());
+        summary.addMetrics(DiagnosticRetry.finish());
+        summary.addMetrics(LocatorAnalyzer.shared().finish());
+        summary.addMetrics(CommandLog.finish());
+        summary.addMetrics(EmulationProfile.finish());
+        summary.addMetrics(FlightProfiler.shared().finish());
+        printSummary(summary);
+
+        if (ShardConfig.isSharded()) {
+            // Shards run side by side, so only the merge step touches the shared duration history
+            summary.setShard(ShardConfig.index(), ShardConfig.count());
+            summary.write(ShardConfig.shardDir(ShardConfig.index()).resolve("summary.json"));
+        } else {
+            TestDurations.update(TestDurations.file(), summary.getDurations());
+        }
+    }
+
+    /**
+     * Print the per-class table, overall results and metrics of a suite or of merged shards
+     */
+    public static void printSummary(SuiteSummary summary) {
+        long totalTime = summary.getElapsedMillis() / 1000;
+        int totalTests = summary.getTotal();
+        int totalPassed = summary.getPassed();
+        int totalSkipped = summary.getSkipped();
+        int totalFailed = summary.getFailed();
 
         System.out.println("\n" + BOLD + CYAN + "═══════════════════════════════════════════════" + RESET);
         System.out.println(BOLD + CYAN + "          FINAL TEST RESULTS" + RESET);
@@ -55,11 +94,12 @@ public class TestResultsListener implements ITestListener, ISuiteListener {
         System.out.println(String.format("%-50s | %s | %s | %s", "Test Class", "Passed", "Skipped", "Failed"));
         System.out.println(repeatString("─", 80));
 
-        for (String testClass : allTestClasses) {
-            int passed = classPassCount.getOrDefault(testClass, 0);
-            int skipped = classSkipCount.getOrDefault(testClass, 0);
-            int total = classTestCount.getOrDefault(testClass, 0);
-            int failed = total - passed - skipped;
+        for (Map.Entry<String, SuiteSummary.ClassResult> entry : summary.getClasses().entrySet()) {
+            String testClass = entry.getKey();
+            int passed = entry.getValue().getPassed();
+            int skipped = entry.getValue().getSkipped();
+            int total = entry.getValue().getTotal();
+            int failed = entry.getValue().getFailed();
 
             String status = failed == 0 ? (GREEN + "✅" + RESET) : (RED + "❌" + RESET);
             String passStr = GREEN + passed + "/" + total + RESET;
@@ -85,61 +125,191 @@ public class TestResultsListener implements ITestListener, ISuiteListener {
         System.out.println(String.format("Success Rate:    %s %.1f%% %s", GREEN, 
             testCount > 0 ? (totalPassed * 100.0 / testCount) : 0, RESET));
         System.out.println(String.format("Total Time:      %d seconds", totalTime));
+        if (summary.getShardCount() > 1) {
+            System.out.println(String.format("Shards:          %d", summary.getShardCount()));
+        }
+
+        Map<String, Long> metrics = summary.getMetrics();
+        if (metrics.containsKey("tierLightSessions")) {
+            System.out.println("\n" + BOLD + "Driver Tiers:" + RESET);
+            System.out.println(repeatString("─", 80));
+            for (String tier : new String[]{"Light", "Full"}) {
+                long sessions = metrics.getOrDefault("tier" + tier + "Sessions", 0L);
+                long sessionMs = metrics.getOrDefault("tier" + tier + "SessionMs", 0L);
+                System.out.println(String.format("%-8s %4d sessions, %6d ms mean start and quit", tier + ":",
+                    sessions, sessions > 0 ? sessionMs / sessions : 0));
+            }
+            long saved = DriverTiers.savedMillis(metrics);
+            System.out.println(String.format("Light tier saved: %s, %d rerun on a full browser",
+                saved >= 0 ? "~" + saved + " ms" : "unknown (no full sessions)",
+                metrics.getOrDefault("tierLightFallbacks", 0L)));
+        }
+
+        if (metrics.containsKey("healthSamples")) {
+            System.out.println("\n" + BOLD + "Browser Health:" + RESET);
+            System.out.println(repeatString("─", 80));
+            System.out.println(String.format("Samples:          %d, %d sessions retired",
+                metrics.get("healthSamples"), metrics.getOrDefault("healthSessionsRetired", 0L)));
+            System.out.println(String.format("Peak:             %d KB JS heap, %d DOM nodes",
+                metrics.getOrDefault("healthPeakHeapKb", 0L), metrics.getOrDefault("healthPeakNodes", 0L)));
+            System.out.println(String.format("Growth per test:  %+d KB JS heap, %+d DOM nodes (reused sessions)",
+                metrics.getOrDefault("healthHeapGrowthKbPerTest", 0L), metrics.getOrDefault("healthNodeGrowthPerTest", 0L)));
+        }
+
+        if (metrics.containsKey(ElementWaits.OBSERVER_WAITS) || metrics.containsKey(ElementWaits.POLL_WAITS)) {
+            System.out.println("\n" + BOLD + "Element Waits:" + RESET);
+            System.out.println(repeatString("─", 80));
+            printWaits("Observer:", metrics.getOrDefault(ElementWaits.OBSERVER_WAITS, 0L),
+                metrics.getOrDefault(ElementWaits.OBSERVER_ROUND_TRIPS, 0L), metrics.getOrDefault(ElementWaits.OBSERVER_WAIT_MS, 0L));
+            printWaits("Polling:", metrics.getOrDefault(ElementWaits.POLL_WAITS, 0L),
+                metrics.getOrDefault(ElementWaits.POLL_ROUND_TRIPS, 0L), metrics.getOrDefault(ElementWaits.POLL_WAIT_MS, 0L));
+        }
+
+        if (metrics.containsKey("locatorsAnalyzed")) {
+            System.out.println("\n" + BOLD + "Locators:" + RESET);
+            System.out.println(repeatString("─", 80));
+            System.out.println(String.format("%d analyzed, %d slow, %d over-broad, %d with a faster equivalent",
+                metrics.get("locatorsAnalyzed"), metrics.getOrDefault("locatorsSlow", 0L),
+                metrics.getOrDefault("locatorsBroad", 0L), metrics.getOrDefault("locatorsWithFasterEquivalent", 0L)));
+            System.out.println("Ranked report: locator-report.csv in target/ (or each shard's results directory)");
+        }
+
+        if (metrics.keySet().stream().anyMatch(key -> key.startsWith("emulation."))) {
+            System.out.println("\n" + BOLD + "Emulation Profiles:" + RESET);
+            System.out.println(repeatString("─", 80));
+            System.out.println(String.format("%-16s | %s | %s | %s | %s", "Profile", "Passed", "Failed", "Skipped", "Mean ms"));
+            for (String key : metrics.keySet()) {
+                if (key.startsWith("emulation.") && key.endsWith(".passed")) {
+                    String prefix = key.substring(0, key.length() - "passed".length());
+                    long passed = metrics.get(key);
+                    long failed = metrics.getOrDefault(prefix + "failed", 0L);
+                    long ran = passed + failed;
+                    System.out.println(String.format("%-16s | %6d | %6d | %7d | %7d", prefix.substring("emulation.".length(), prefix.length() - 1),
+                        passed, failed, metrics.getOrDefault(prefix + "skipped", 0L),
+                        ran > 0 ? metrics.getOrDefault(prefix + "ms", 0L) / ran : 0));
+                }
+            }
+        }
+
+        if (metrics.containsKey("jfrCpuSamples")) {
+            System.out.println("\n" + BOLD + "Flight Recording:" + RESET);
+            System.out.println(repeatString("─", 80));
+            System.out.println(String.format("%-16s | %s | %s", "Component", "CPU samples", "Allocated KB"));
+            for (String key : metrics.keySet()) {
+                if (key.startsWith("jfr.") && key.endsWith(".cpuSamples")) {
+                    String component = key.substring("jfr.".length(), key.length() - ".cpuSamples".length());
+                    System.out.println(String.format("%-16s | %11d | %12d", component, metrics.get(key),
+                        metrics.getOrDefault("jfr." + component + ".allocatedKb", 0L)));
+                }
+            }
+            System.out.println("Per-test attribution and hotspots: flight-profile.txt in target/ (or each shard's results directory)");
+        }
+
+        if (!summary.getMetrics().isEmpty()) {
+            System.out.println("\n" + BOLD + "Test Metrics:" + RESET);
+            System.out.println(repeatString("─", 80));
+            for (Map.Entry<String, Long> entry : summary.getMetrics().entrySet()) {
+                System.out.println(String.format("%-25s %d", entry.getKey() + ":", entry.getValue()));
+            }
+        }
         System.out.println("\n" + BOLD + passStatus + " " + passResult + RESET);
         System.out.println(BOLD + CYAN + "═══════════════════════════════════════════════" + RESET + "\n");
     }
 
     @Override
-    public void onTestStart(ITestResult result) {
+    public synchronized void onTestStart(ITestResult result) {
         String testClass = result.getTestClass().getRealClass().getSimpleName();
         String testMethod = result.getMethod().getMethodName();
 
-        if (!allTestClasses.contains(testClass)) {
-            allTestClasses.add(testClass);
-        }
-
-        classTestCount.put(testClass, classTestCount.getOrDefault(testClass, 0) + 1);
-        totalTests++;
+        summary.forClass(testClass).recordStart();
+        RunDashboard.shared().testStarted(result.getMethod());
 
+        String profile = EmulationProfile.nameFor(result.getTestContext());
         System.out.print(CYAN + "▶ [" + testClass + "] " + RESET);
-        System.out.println(testMethod + "...");
+        System.out.println(testMethod + (EmulationProfile.NONE.equals(profile) ? "" : " [" + profile + "]") + "...");
     }
 
     @Override
-    public void onTestSuccess(ITestResult result) {
+    public synchronized void onTestSuccess(ITestResult result) {
+        EmulationProfile.testFinished(result);
+        RunDashboard.shared().testFinished(result.getMethod(), result.getStatus());
         String testClass = result.getTestClass().getRealClass().getSimpleName();
         String testMethod = result.getMethod().getMethodName();
         long duration = result.getEndMillis() - result.getStartMillis();
 
-        classPassCount.put(testClass, classPassCount.getOrDefault(testClass, 0) + 1);
-        totalPassed++;
+        summary.forClass(testClass).recordPass();
+        summary.addDuration(TestDurations.key(result.getMethod()), duration);
 
         System.out.println(GREEN + "  ✅ PASSED - " + testMethod + " (" + duration + "ms)" + RESET);
+        recordMetrics(result);
     }
 
     @Override
-    public void onTestFailure(ITestResult result) {
+    public synchronized void onTestFailure(ITestResult result) {
+        EmulationProfile.testFinished(result);
+        RunDashboard.shared().testFinished(result.getMethod(), result.getStatus());
         String testClass = result.getTestClass().getRealClass().getSimpleName();
         String testMethod = result.getMethod().getMethodName();
 
+        summary.addDuration(TestDurations.key(result.getMethod()), result.getEndMillis() - result.getStartMillis());
+
         System.out.println(RED + "  ❌ FAILED - " + testMethod + RESET);
         Throwable throwable = result.getThrowable();
         if (throwable != null) {
             System.out.println(RED + "  Error: " + throwable.getMessage() + RESET);
         }
+        recordMetrics(result);
     }
 
     @Override
-    public void onTestSkipped(ITestResult result) {
+    public synchronized void onTestSkipped(ITestResult result) {
+        EmulationProfile.testFinished(result);
+        RunDashboard.shared().testFinished(result.getMethod(), result.getStatus());
         String testClass = result.getTestClass().getRealClass().getSimpleName();
         String testMethod = result.getMethod().getMethodName();
 
-        classSkipCount.put(testClass, classSkipCount.getOrDefault(testClass, 0) + 1);
-        totalSkipped++;
+        summary.forClass(testClass).recordSkip();
 
         System.out.println(YELLOW + "  ⊘ SKIPPED - " + testMethod + RESET);
     }
 
+    private static void printWaits(String label, long waits, long roundTrips, long millis) {
+        if (waits == 0) {
+            return;
+        }
+        System.out.println(String.format("%-10s %5d waits, %.2f round-trips and %d ms per wait",
+            label, waits, (double) roundTrips / waits, millis / waits));
+    }
+
+    /**
+     * Attach the per-test metrics to the result, print them and add them to the suite totals
+     */
+    private void recordMetrics(ITestResult result) {
+        Object diagnostics = result.getAttribute(DiagnosticRetry.ATTRIBUTE);
+        if (diagnostics != null) {
+            System.out.println(CYAN + "     diagnostics: " + diagnostics + RESET);
+        }
+        Object health = result.getAttribute(BrowserHealth.ATTRIBUTE);
+        if (health instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Long> sample = (Map<String, Long>) health;
+            System.out.println(CYAN + "     browser: " + TestMetrics.format(sample) + RESET);
+        }
+        Object traces = result.getAttribute(PerformanceTrace.ATTRIBUTE);
+        if (traces instanceof List) {
+            for (Object trace : (List<?>) traces) {
+                System.out.println(CYAN + "     trace " + trace.toString().replace("\n", "\n     ") + RESET);
+            }
+        }
+        Map<String, Long> metrics = TestMetrics.snapshot();
+        if (metrics.isEmpty()) {
+            return;
+        }
+        result.setAttribute("metrics", metrics);
+        System.out.println(CYAN + "     " + TestMetrics.format(metrics) + RESET);
+        summary.addMetrics(metrics);
+    }
+
     @Override
     public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
     }
@@ -151,4 +321,31 @@ public class TestResultsListener implements ITestListener, ISuiteListener {
     @Override
     public void onFinish(ITestContext context) {
     }
+
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+        // TestNG runs @BeforeMethod before onTestStart and @AfterMethod after onTestSuccess, so the
+        // deadline follows each invocation to cover setUp and tearDown as well
+        ProcessWatchdog.shared().invocationStarted();
+        resetMetrics(method.getTestMethod());
+        FlightProfiler.shared().phaseStarted(method, testResult);
+    }
+
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+        FlightProfiler.shared().phaseFinished(testResult);
+        ProcessWatchdog.shared().invocationFinished();
+    }
+
+    /**
+     * Clear the per-test counters when a test's first setUp starts, or the test when it has no setUp,
+     * so what setUp measures (admission waits, profile copies) is reported with its test
+     */
+    private void resetMetrics(ITestNGMethod method) {
+        boolean setUp = method.isBeforeMethodConfiguration();
+        if ((setUp || method.isTest()) && !inSetUp.get()) {
+            TestMetrics.reset();
+        }
+        inSetUp.set(setUp);
+    }
 }
@@ -0,0 +1,181 @@
+package com.google.automation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Learns how long each wait usually takes and derives its timeout from that history
+ *
+ * Every wait records how long the condition took to become true, keyed by the driver type, the host of
+ * the site and the condition name (normally the locator), so a fast local server does not train the
+ * timeouts of a real site. Once a key has enough samples its timeout becomes a high percentile of those
+ * samples plus a margin, never above the page's configured timeout. A wait that outlasts its learned
+ * timeout keeps waiting up to the configured one and records what it observed, so a timeout learned too
+ * short recovers. Waits are neither learned from nor shortened while CommandLog replays a recording.
+ * The history is saved when the JVM exits so the next run starts with it.
+ *
+ * Options:
+ *   -Dwait.adaptive=false           always use the page's configured timeout
+ *   -Dwait.history.file=path        history file (default wait-history.properties)
+ *   -Dwait.percentile=0.99          percentile of past wait times used as the base
+ *   -Dwait.marginMs=500             added on top of the percentile
+ *   -Dwait.minMs=1000               lower bound for a learned timeout
+ */
+public final class WaitPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(WaitPolicy.class);
+    private static final int MAX_SAMPLES = 100;
+    private static final int MIN_SAMPLES = 5;
+
+    private static WaitPolicy shared;
+
+    private final Path file;
+    private final Map<String, Deque<Long>> samples = new ConcurrentHashMap<>();
+    private final Set<String> updated = ConcurrentHashMap.newKeySet();
+
+    private WaitPolicy(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the policy for this JVM, loading the history on first use
+     */
+    public static synchronized WaitPolicy shared() {
+        if (shared == null) {
+            WaitPolicy policy = new WaitPolicy(Paths.get(System.getProperty("wait.history.file", "wait-history.properties")));
+            policy.load(policy.samples);
+            Runtime.getRuntime().addShutdownHook(new Thread(policy::save, "wait-history-save"));
+            shared = policy;
+        }
+        return shared;
+    }
+
+    public static boolean isAdaptive() {
+        return !"false".equalsIgnoreCase(System.getProperty("wait.adaptive"));
+    }
+
+    /**
+     * Get the timeout for a wait, falling back to the ceiling until enough history exists
+     */
+    public Duration timeoutFor(String site, String name, Duration ceiling) {
+        if (!isAdaptive() || CommandLog.isReplaying()) {
+            return ceiling;
+        }
+        Deque<Long> history = samples.get(key(site, name));
+        if (history == null) {
+            return ceiling;
+        }
+        List<Long> sorted;
+        synchronized (history) {
+            if (history.size() < MIN_SAMPLES) {
+                return ceiling;
+            }
+            sorted = new ArrayList<>(history);
+        }
+        sorted.sort(null);
+        double percentile = Double.parseDouble(System.getProperty("wait.percentile", "0.99"));
+        int rank = (int) Math.ceil(percentile * sorted.size());
+        long base = sorted.get(Math.max(0, Math.min(sorted.size(), rank) - 1));
+        long learned = Math.max(Long.getLong("wait.minMs", 1000), base + Long.getLong("wait.marginMs", 500));
+        return learned < ceiling.toMillis() ? Duration.ofMillis(learned) : ceiling;
+    }
+
+    /**
+     * Record how long a wait took, or how long it was given when it timed out at the ceiling
+     * A timeout is a lower bound of the real wait time; recording it raises the learned timeout.
+     */
+    public void record(String site, String name, long millis) {
+        if (CommandLog.isReplaying()) {
+            // Replayed waits take no time and say nothing about the site
+            return;
+        }
+        String key = key(site, name);
+        Deque<Long> history = samples.computeIfAbsent(key, k -> new ArrayDeque<>());
+        synchronized (history) {
+            history.addLast(millis);
+            while (history.size() > MAX_SAMPLES) {
+                history.removeFirst();
+            }
+        }
+        updated.add(key);
+    }
+
+    private static String key(String site, String name) {
+        return System.getProperty("driver", "local") + "|" + site + "|" + name;
+    }
+
+    private void load(Map<String, Deque<Long>> target) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            logger.warn("Cannot read wait history from " + file + ": " + e.getMessage());
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            Deque<Long> history = new ArrayDeque<>();
+            for (String value : properties.getProperty(key).split(",")) {
+                try {
+                    history.addLast(Long.parseLong(value.trim()));
+                } catch (NumberFormatException e) {
+                    // skip damaged entries
+                }
+            }
+            target.put(key, history);
+        }
+    }
+
+    /**
+     * Write the history, keeping entries that other JVMs saved in the meantime
+     */
+    public synchronized void save() {
+        if (updated.isEmpty()) {
+            return;
+        }
+        Map<String, Deque<Long>> merged = new ConcurrentHashMap<>();
+        load(merged);
+        for (String key : updated) {
+            merged.put(key, samples.get(key));
+        }
+
+        Properties properties = new Properties();
+        merged.forEach((key, history) -> {
+            synchronized (history) {
+                properties.setProperty(key, history.stream().map(String::valueOf).collect(Collectors.joining(",")));
+            }
+        });
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "wait-history", ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Wait times in ms per driver, site and condition, maintained by WaitPolicy");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Saved wait history for " + updated.size() + " conditions to " + file);
+        } catch (IOException e) {
+            logger.warn("Cannot write wait history to " + file + ": " + e.getMessage());
+        }
+    }
+}